@@ -0,0 +1,120 @@
+/**
+ * The fighters due to act on each of the next ticks, for the event-driven turns of a Simulation
+ * (see Simulation.setActionIntervals): a timing wheel of SIZE buckets, where bucket (tick mod SIZE) lists
+ * the slots of the fighters whose next activation is at that tick. Every fighter acts again less than
+ * SIZE ticks later, so a bucket only ever holds the fighters of one tick.
+ *
+ * Scheduling, taking the due fighters of a tick and removing a fighter all cost O(1) per fighter,
+ * so a tick costs as much as the activations that are due then, not the whole population.
+ * The wheel follows the swap-remove of the FighterStore (see remove), so its entries stay valid slots.
+ */
+
+import java.util.Arrays;
+
+public class ActivationWheel {
+    public static final int SIZE = 128; // A power of two
+    public static final int MAX_INTERVAL = SIZE - 1; // Longest time between two activations of a fighter
+    private static final int MASK = SIZE - 1;
+
+    private final int[][] buckets = new int[SIZE][];
+    private final int[] bucketSizes = new int[SIZE];
+    // For each slot: its bucket (or -1 when the fighter is not scheduled) and where it stands in the bucket
+    private int[] bucketOf = new int[0];
+    private int[] indexOf = new int[0];
+
+    public ActivationWheel() {
+        for (int bucket = 0; bucket < SIZE; bucket++) {
+            buckets[bucket] = new int[16];
+        }
+    }
+
+    /**
+     * Makes room for the slots [0, capacity).
+    */
+    public void ensureCapacity(int capacity) {
+        if (capacity > bucketOf.length) {
+            int oldLength = bucketOf.length;
+            bucketOf = Arrays.copyOf(bucketOf, Math.max(capacity, oldLength + (oldLength >> 1)));
+            indexOf = Arrays.copyOf(indexOf, bucketOf.length);
+            Arrays.fill(bucketOf, oldLength, bucketOf.length, -1);
+        }
+    }
+
+    /**
+     * Schedules the fighter at slot, which must not be scheduled, to act at tick.
+     * Makes room for the slot if it is past the capacity.
+    */
+    public void schedule(int slot, long tick) {
+        if (slot >= bucketOf.length) {
+            ensureCapacity(slot + 1);
+        }
+        int bucket = (int) (tick & MASK);
+        if (bucketSizes[bucket] == buckets[bucket].length) {
+            buckets[bucket] = Arrays.copyOf(buckets[bucket], buckets[bucket].length * 2);
+        }
+        indexOf[slot] = bucketSizes[bucket];
+        bucketOf[slot] = bucket;
+        buckets[bucket][bucketSizes[bucket]++] = slot;
+    }
+
+    /**
+     * The number of fighters due at tick.
+    */
+    public int dueCount(long tick) {
+        return bucketSizes[(int) (tick & MASK)];
+    }
+
+    /**
+     * Takes the fighters due at tick out of the wheel and writes their slots into due, which must have room
+     * for dueCount(tick) of them. Returns their number. The slots are in the order in which they were
+     * scheduled, so the caller decides the order in which they act.
+    */
+    public int take(long tick, int[] due) {
+        int bucket = (int) (tick & MASK);
+        int count = bucketSizes[bucket];
+        System.arraycopy(buckets[bucket], 0, due, 0, count);
+        for (int i = 0; i < count; i++) {
+            bucketOf[due[i]] = -1;
+        }
+        bucketSizes[bucket] = 0;
+        return count;
+    }
+
+    /**
+     * Follows FighterStore.remove(slot) with lastSlot its last slot: the fighter at slot leaves the wheel
+     * and the one at lastSlot, which the store moves into slot, keeps its activation under its new slot.
+    */
+    public void remove(int slot, int lastSlot) {
+        unschedule(slot);
+        if (lastSlot != slot && bucketOf[lastSlot] >= 0) {
+            int bucket = bucketOf[lastSlot];
+            int index = indexOf[lastSlot];
+            buckets[bucket][index] = slot;
+            bucketOf[slot] = bucket;
+            indexOf[slot] = index;
+            bucketOf[lastSlot] = -1;
+        }
+    }
+
+    private void unschedule(int slot) {
+        int bucket = bucketOf[slot];
+        if (bucket < 0) {
+            return;
+        }
+        // Swap-remove within the bucket: its last entry takes the freed place
+        int index = indexOf[slot];
+        int last = buckets[bucket][--bucketSizes[bucket]];
+        buckets[bucket][index] = last;
+        indexOf[last] = index;
+        bucketOf[slot] = -1;
+    }
+
+    /**
+     * The number of ticks from tick until the fighter at slot acts (0 if it acts at tick), or -1 if it is not scheduled.
+     * tick must not be after its activation.
+    */
+    public int delayOf(int slot, long tick) {
+        int bucket = bucketOf[slot];
+        return bucket < 0 ? -1 : (int) ((bucket - tick) & MASK);
+    }
+}
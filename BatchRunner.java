@@ -0,0 +1,337 @@
+/**
+ * Plays many complete games without any front end, to answer balance questions with statistics
+ * (for example: do the Knights, which move in 4 directions, lose to the Monsters, which move in 8?).
+ * Game i is played on the map size i % sizes and with the seed firstSeed + i, so a batch is reproducible
+ * and any single game of it can be played again with the same size and seed.
+ *
+ * The games are independent tasks on a work-stealing ForkJoinPool: each game runs on one thread
+ * from start to end, and a thread that finishes its games takes waiting ones, so long and short games
+ * keep every core busy. Each finished game is written at once as a CSV row or a JSON object, and the
+ * batch ends with a summary per map size and the throughput in games per second.
+ * A game that throws an exception (including a map without room for the player) is reported on System.err,
+ * marked FAILED and left out of the summary; its row only holds its number, size, seed and the "failed" winner.
+ */
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+public class BatchRunner {
+    // Output formats
+    public static final int CSV = 0;
+    public static final int JSON = 1;
+
+    public static final byte NO_WINNER = -1; // The game reached maxTurns before a team was eliminated
+    public static final byte FAILED = -2; // The game threw an exception before it ended
+
+    private static final String CSV_HEADER = "game,width,height,seed,turns,winner,knights,monsters,"
+            + "knightsHealth,monstersHealth,knightsKilled,monstersKilled,millis";
+
+    private final int[] widths; // The map sizes, used in turn by the games
+    private final int[] heights;
+    private final int games;
+    private final long firstSeed;
+    private final long maxTurns;
+    private final int threads;
+    private Writer out; // Where each game is written when it ends, or null
+    private int format;
+    private TurnMetrics metrics; // Shared by all the games, or null
+    private int flowInterval; // Turns between refreshes of the fighters' flow field (0 for random walks)
+    private int cruiseInterval; // Turns between moves of the fighters far from any enemy (0 when all are active)
+    private CombatKernel combatKernel = CombatKernel.SCALAR; // Shared by all the games
+    private int knightInterval; // Ticks between two activations of a Knight (0 without event-driven turns)
+    private int monsterInterval;
+    private int terrainStyle = TerrainGenerator.SCATTERED;
+
+    // Results, one entry per game; each is written by the thread that played the game
+    private final long[] turns;
+    private final byte[] winners;
+    private final int[] survivors; // Fighters of the winning team (or of both teams without a winner) at the end
+    private final int[] survivingHealth; // Their total health
+    private final int[] knightsKilled;
+    private final int[] monstersKilled;
+    private long elapsedNanos;
+    private int written; // Games written to the output so far (guarded by out)
+    private IOException outputError; // The first error writing the output (guarded by out)
+
+    public BatchRunner(int[] widths, int[] heights, int games, long firstSeed, long maxTurns, int threads) {
+        if (widths.length == 0 || widths.length != heights.length) {
+            throw new IllegalArgumentException("Give at least one map size.");
+        }
+        this.widths = widths;
+        this.heights = heights;
+        this.games = games;
+        this.firstSeed = firstSeed;
+        this.maxTurns = maxTurns;
+        this.threads = Math.max(threads, 1);
+        this.turns = new long[games];
+        this.winners = new byte[games];
+        this.survivors = new int[games];
+        this.survivingHealth = new int[games];
+        this.knightsKilled = new int[games];
+        this.monstersKilled = new int[games];
+    }
+
+    /**
+     * Sets where the results of each game are written as soon as it ends (CSV or JSON).
+     * The rows come in the order the games end; their first column is the game number.
+    */
+    public void setOutput(Writer out, int format) {
+        this.out = out;
+        this.format = format;
+    }
+
+    /**
+     * Sets the metrics every game of the batch records into (see TurnMetrics).
+    */
+    public void setMetrics(TurnMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Makes the fighters of every game follow a flow field refreshed every interval turns (0 for random walks).
+     * See Simulation.setFlowInterval.
+    */
+    public void setFlowInterval(int interval) {
+        this.flowInterval = interval;
+    }
+
+    /**
+     * Lets the fighters far from any enemy move only every interval turns (0 keeps them all active).
+     * See Simulation.setCruiseInterval.
+    */
+    public void setCruiseInterval(int interval) {
+        this.cruiseInterval = interval;
+    }
+
+    /**
+     * Sets the back end that works out the attacks of every game. See Simulation.setCombatKernel.
+    */
+    public void setCombatKernel(CombatKernel kernel) {
+        this.combatKernel = kernel;
+    }
+
+    /**
+     * Plays every game with event-driven turns, at these paces (0 and 0 for normal turns).
+     * See Simulation.setActionIntervals.
+    */
+    public void setActionIntervals(int knightInterval, int monsterInterval) {
+        this.knightInterval = knightInterval;
+        this.monsterInterval = monsterInterval;
+    }
+
+    /**
+     * Sets the terrain of the maps of the games (TerrainGenerator.SCATTERED or TerrainGenerator.NOISE).
+    */
+    public void setTerrainStyle(int terrainStyle) {
+        this.terrainStyle = terrainStyle;
+    }
+
+    /**
+     * Plays all the games and waits for them. Throws IOException if the output could not be written.
+    */
+    public void run() throws IOException, InterruptedException {
+        if (out != null) {
+            out.write(format == CSV ? CSV_HEADER + "\n" : "[\n");
+        }
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        for (int game = 0; game < games; game++) {
+            final int index = game;
+            pool.execute(() -> {
+                long gameStart = System.nanoTime();
+                try {
+                    play(index);
+                } catch (RuntimeException e) {
+                    // Caught here rather than left to the pool, which would only print it
+                    winners[index] = FAILED; // Its other results are not used
+                    System.err.println("Game " + index + " failed: " + e);
+                    if (out != null) {
+                        writeFailed(index, (System.nanoTime() - gameStart) / 1_000_000);
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        elapsedNanos = System.nanoTime() - start;
+        if (out != null) {
+            synchronized (out) {
+                if (outputError != null) {
+                    throw outputError;
+                }
+                out.write(format == CSV ? "" : "\n]\n");
+                out.flush();
+            }
+        }
+    }
+
+    /**
+     * Plays one game to the end (or to maxTurns) on the calling thread and records its results.
+    */
+    private void play(int game) {
+        long start = System.nanoTime();
+        int width = widths[game % widths.length];
+        int height = heights[game % heights.length];
+        // Throws IllegalStateException for a map without room for the player, which makes the game fail
+        Simulation simulation = new Simulation(width, height, firstSeed + game, terrainStyle);
+        simulation.setMetrics(metrics);
+        simulation.setFlowInterval(flowInterval);
+        simulation.setCruiseInterval(cruiseInterval);
+        simulation.setCombatKernel(combatKernel);
+        simulation.setActionIntervals(knightInterval, monsterInterval);
+        int knights = simulation.getKnightsCount();
+        int monsters = simulation.getMonstersCount();
+        turns[game] = simulation.runUntilDone(maxTurns);
+
+        knightsKilled[game] = knights - simulation.getKnightsCount();
+        monstersKilled[game] = monsters - simulation.getMonstersCount();
+        int knightsHealth = simulation.getTotalHealth(FighterStore.KNIGHT);
+        int monstersHealth = simulation.getTotalHealth(FighterStore.MONSTER);
+        if (simulation.getMonstersCount() == 0 && simulation.getKnightsCount() > 0) {
+            winners[game] = FighterStore.KNIGHT;
+        } else if (simulation.getKnightsCount() == 0 && simulation.getMonstersCount() > 0) {
+            winners[game] = FighterStore.MONSTER;
+        } else {
+            winners[game] = NO_WINNER;
+        }
+        survivors[game] = simulation.getKnightsCount() + simulation.getMonstersCount();
+        survivingHealth[game] = knightsHealth + monstersHealth;
+        if (out != null) {
+            write(game, width, height, simulation, knightsHealth, monstersHealth, (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    /**
+     * Writes the results of one game as a CSV row or a JSON object.
+    */
+    private void write(int game, int width, int height, Simulation simulation, int knightsHealth, int monstersHealth, long millis) {
+        String winner = winnerName(winners[game]);
+        String row;
+        if (format == CSV) {
+            row = game + "," + width + "," + height + "," + simulation.getSeed() + "," + turns[game] + "," + winner + ","
+                    + simulation.getKnightsCount() + "," + simulation.getMonstersCount() + "," + knightsHealth + ","
+                    + monstersHealth + "," + knightsKilled[game] + "," + monstersKilled[game] + "," + millis + "\n";
+        } else {
+            row = "{\"game\":" + game + ",\"width\":" + width + ",\"height\":" + height + ",\"seed\":" + simulation.getSeed()
+                    + ",\"turns\":" + turns[game] + ",\"winner\":\"" + winner + "\",\"knights\":" + simulation.getKnightsCount()
+                    + ",\"monsters\":" + simulation.getMonstersCount() + ",\"knightsHealth\":" + knightsHealth
+                    + ",\"monstersHealth\":" + monstersHealth + ",\"knightsKilled\":" + knightsKilled[game]
+                    + ",\"monstersKilled\":" + monstersKilled[game] + ",\"millis\":" + millis + "}";
+        }
+        writeRow(row);
+    }
+
+    /**
+     * Writes the row of a game that failed: its number, map size and seed, the winner "failed" and the time it ran,
+     * with the results it does not have left empty (CSV) or null (JSON).
+    */
+    private void writeFailed(int game, long millis) {
+        int width = widths[game % widths.length];
+        int height = heights[game % heights.length];
+        long seed = firstSeed + game;
+        String row;
+        if (format == CSV) {
+            row = game + "," + width + "," + height + "," + seed + ",,failed,,,,,,," + millis + "\n";
+        } else {
+            row = "{\"game\":" + game + ",\"width\":" + width + ",\"height\":" + height + ",\"seed\":" + seed
+                    + ",\"turns\":null,\"winner\":\"failed\",\"knights\":null,\"monsters\":null,\"knightsHealth\":null"
+                    + ",\"monstersHealth\":null,\"knightsKilled\":null,\"monstersKilled\":null,\"millis\":" + millis + "}";
+        }
+        writeRow(row);
+    }
+
+    private void writeRow(String row) {
+        synchronized (out) {
+            if (outputError != null) {
+                return;
+            }
+            try {
+                out.write(format == JSON && written > 0 ? ",\n" + row : row);
+                written++;
+            } catch (IOException e) {
+                outputError = e;
+            }
+        }
+    }
+
+    private static String winnerName(byte winner) {
+        switch (winner) {
+            case FighterStore.KNIGHT: return "knights";
+            case FighterStore.MONSTER: return "monsters";
+            case FAILED: return "failed";
+            default: return "none";
+        }
+    }
+
+    /**
+     * Prints, for each map size, the win rates, the mean game length, the surviving fighters and health
+     * and the kills of the games that did not fail, then the number of failed games and the throughput of the whole batch.
+    */
+    public void printSummary(PrintStream out) {
+        out.printf("%-11s %6s %8s %8s %8s %10s %10s %9s %11s %11s%n", "map", "games", "knights", "monsters", "no winner",
+                "mean turns", "survivors", "health", "knights", "monsters");
+        out.printf("%-11s %6s %8s %8s %8s %10s %10s %9s %11s %11s%n", "", "", "won", "won", "", "", "(mean)", "(mean)",
+                "killed", "killed");
+        int failed = 0;
+        for (int size = 0; size < widths.length && size < games; size++) {
+            int count = 0;
+            int[] wins = new int[3]; // Knights, Monsters, no winner
+            long totalTurns = 0;
+            long totalSurvivors = 0;
+            long totalHealth = 0;
+            long totalKnightsKilled = 0;
+            long totalMonstersKilled = 0;
+            for (int game = size; game < games; game += widths.length) {
+                if (winners[game] == FAILED) {
+                    failed++;
+                    continue;
+                }
+                count++;
+                wins[winners[game] == NO_WINNER ? 2 : winners[game]]++;
+                totalTurns += turns[game];
+                totalSurvivors += survivors[game];
+                totalHealth += survivingHealth[game];
+                totalKnightsKilled += knightsKilled[game];
+                totalMonstersKilled += monstersKilled[game];
+            }
+            if (count == 0) {
+                out.printf("%-11s %6d%n", widths[size] + "x" + heights[size], count);
+                continue;
+            }
+            out.printf("%-11s %6d %7.1f%% %7.1f%% %7.1f%% %10.1f %10.1f %9.1f %11d %11d%n", widths[size] + "x" + heights[size],
+                    count, 100.0 * wins[0] / count, 100.0 * wins[1] / count, 100.0 * wins[2] / count,
+                    (double) totalTurns / count, (double) totalSurvivors / count, (double) totalHealth / count,
+                    totalKnightsKilled, totalMonstersKilled);
+        }
+        if (failed > 0) {
+            out.printf("%d game(s) failed and are left out (see the errors above)%n", failed);
+        }
+        double seconds = elapsedNanos / 1e9;
+        out.printf("%d games in %.3f s on %d thread(s): %.1f games/s%n", games, seconds, threads,
+                seconds > 0 ? games / seconds : 0.0);
+    }
+
+    // Getters of the results of a game
+    public long getTurns(int game) {
+        return turns[game];
+    }
+
+    public byte getWinner(int game) {
+        return winners[game];
+    }
+
+    public int getKnightsKilled(int game) {
+        return knightsKilled[game];
+    }
+
+    public int getMonstersKilled(int game) {
+        return monstersKilled[game];
+    }
+
+    public double getGamesPerSecond() {
+        return elapsedNanos > 0 ? games / (elapsedNanos / 1e9) : 0.0;
+    }
+}
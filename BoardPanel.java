@@ -1,18 +1,40 @@
 /**
  * BoardPanel is a custom JPanel responsible for drawing the game map and all entities
  * (Player, Knights, Monsters) on a Swing GUI.
+ * It draws a BoardSnapshot (published by a SimulationRunner), so painting never waits for a turn.
+ * It is meant to be shown in a JScrollPane: it only draws the tiles inside the area being repainted
+ * (the visible part of the board), and finds the entities on them through the snapshot's cell codes.
+ * The terrain never changes, so it is drawn once into a cached image with one pixel per cell
+ * (copied into a VolatileImage when the screen supports it) and scaled up to the tiles when painted.
+ * The board can be zoomed. Below DETAIL_TILE_SIZE pixels per cell it becomes a minimap, where each pixel
+ * (or small square) shows a cell or a block of cells with the colour of whoever stands there.
+ * When a new snapshot is shown, only the tiles whose content changed are repainted.
  */
 
 import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.GraphicsConfiguration;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.util.List;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
 import javax.swing.JPanel;
 
 class BoardPanel extends JPanel {
-    private Map map;
-    private final Player player;
-    private List<Fighter> fighters;
+    private Map map; // Only its terrain is read, which never changes
+    private BoardSnapshot snapshot; // The entities to draw, or null before the first snapshot
+    private TurnMetrics metrics; // Times the frames, or null
+
+    private final BufferedImage terrainImage; // The terrain, one pixel per cell
+    private VolatileImage terrainVolatile; // A copy of terrainImage in video memory, or null
+    private BufferedImage minimapImage; // Reused buffer for the minimap pixels of the repainted area
+    private int[] minimapRow; // Reused buffer for one row of those pixels, as wide as minimapImage
+
+    private int zoomLevel; // Index in ZOOM_LEVELS
+    private int tileSize; // Pixels per cell (1 in the zoom levels with blocks)
+    private int blockSize; // Cells per pixel in each direction (1 in the zoom levels with tiles)
 
     // Colors for drawing (replace with ImageIcons for sprites)
     private static final Color EARTH_COLOR = new Color(139, 69, 19); // SaddleBrown
@@ -22,69 +44,297 @@ class BoardPanel extends JPanel {
     private static final Color MONSTER_COLOR = Color.RED;
     private static final Color PLAYER_COLOR = Color.YELLOW;
 
+    private static final int[] TERRAIN_RGB = new int[3]; // RGB of each terrain type, indexed by Map.EARTH, TREES, WATER
+    static {
+        TERRAIN_RGB[Map.EARTH] = EARTH_COLOR.getRGB();
+        TERRAIN_RGB[Map.TREES] = TREE_COLOR.getRGB();
+        TERRAIN_RGB[Map.WATER] = WATER_COLOR.getRGB();
+    }
+
+    // Zoom levels from the closest to the farthest: a positive value is the pixels per cell,
+    // a negative value -n draws blocks of n x n cells as one pixel.
+    private static final int[] ZOOM_LEVELS = {64, 40, 24, 16, 8, 4, 2, 1, -2, -4, -8, -16};
+    private static final int DETAIL_TILE_SIZE = 8; // Smallest tile size drawn with shapes; below it the minimap is drawn
+    private static final int TEXT_TILE_SIZE = 16; // Smallest tile size with the fighters' health written on them
+
+    // Larger images are kept in the BufferedImage only, as many graphics cards cannot hold them.
+    private static final int MAX_VOLATILE_SIZE = 4096;
+
     /**
-     * Constructor for BoardPanel.
+     * Constructor for BoardPanel. The board starts at GameGUI.TILE_SIZE pixels per cell.
      */
-    public BoardPanel(Map map, Player player, List<Fighter> fighters) {
+    public BoardPanel(Map map) {
+        this(map, null);
+    }
+
+    /**
+     * Constructor for a board that records the time of every frame it draws in metrics (see TurnMetrics).
+     */
+    public BoardPanel(Map map, TurnMetrics metrics) {
         this.map = map;
-        this.player = player;
-        this.fighters = fighters;
+        this.metrics = metrics;
+        this.terrainImage = renderTerrain(map);
         setDoubleBuffered(true); // Enables double buffering for smoother animation (if any)
+        int level = 0;
+        while (level < ZOOM_LEVELS.length - 1 && ZOOM_LEVELS[level] > GameGUI.TILE_SIZE) {
+            level++;
+        }
+        setZoomLevel(level);
+    }
+
+    /**
+     * Draws the terrain of the map into an image with one pixel per cell, a row at a time.
+     */
+    private static BufferedImage renderTerrain(Map map) {
+        BufferedImage image = new BufferedImage(map.getWidth(), map.getHeight(), BufferedImage.TYPE_INT_RGB);
+        TerrainGrid terrain = map.getTerrain();
+        int[] row = new int[map.getWidth()];
+        for (int y = 0; y < map.getHeight(); y++) {
+            for (int x = 0; x < map.getWidth(); x++) {
+                row[x] = TERRAIN_RGB[terrain.get(x, y)];
+            }
+            image.getRaster().setDataElements(0, y, map.getWidth(), 1, row);
+        }
+        return image;
+    }
+
+    /**
+     * Shows the cells bigger. Returns false if the board is already at the closest zoom level.
+     */
+    public boolean zoomIn() {
+        if (zoomLevel == 0) {
+            return false;
+        }
+        setZoomLevel(zoomLevel - 1);
+        return true;
+    }
+
+    /**
+     * Shows the cells smaller (down to the minimap). Returns false if the board is already at the farthest zoom level.
+     */
+    public boolean zoomOut() {
+        if (zoomLevel == ZOOM_LEVELS.length - 1) {
+            return false;
+        }
+        setZoomLevel(zoomLevel + 1);
+        return true;
+    }
+
+    private void setZoomLevel(int level) {
+        zoomLevel = level;
+        tileSize = Math.max(ZOOM_LEVELS[level], 1);
+        blockSize = Math.max(-ZOOM_LEVELS[level], 1);
+        // The board is as large as the whole map; the scroll pane shows the visible part of it
+        setPreferredSize(new Dimension(ceilDiv(map.getWidth(), blockSize) * tileSize,
+                ceilDiv(map.getHeight(), blockSize) * tileSize));
+        revalidate();
+        repaint();
+    }
+
+    /**
+     * Returns true when the board is drawn as a minimap (one pixel or a small square per cell or block of cells).
+     */
+    public boolean isMinimap() {
+        return tileSize < DETAIL_TILE_SIZE;
+    }
+
+    /**
+     * The area of the board in pixels where the cell (x,y) is drawn.
+     */
+    public Rectangle getCellBounds(int x, int y) {
+        return new Rectangle(x / blockSize * tileSize, y / blockSize * tileSize, tileSize, tileSize);
+    }
+
+    /**
+     * Shows a new snapshot, repainting each tile that changed since the previous one with its own repaint(Rectangle).
+     * Swing clips each repaint to the visible part of the board, so tiles out of view cost nothing to draw.
+     * Must be called on the Event Dispatch Thread.
+     */
+    public void setSnapshot(BoardSnapshot snapshot) {
+        boolean first = this.snapshot == null;
+        this.snapshot = snapshot;
+        if (first || snapshot.isAllChanged()) {
+            repaint();
+            return;
+        }
+        int width = map.getWidth();
+        for (int i = 0; i < snapshot.getChangedCount(); i++) {
+            int cell = snapshot.getChangedCell(i);
+            repaint(getCellBounds(cell % width, cell / width));
+        }
     }
 
     @Override
     protected void paintComponent(Graphics g) {
+        long start = System.nanoTime();
         super.paintComponent(g); // Calls JPanel's paintComponent method first
-        Graphics2D g2d = (Graphics2D) g; // Casts to Graphics2D for more advanced drawing
+        paintBoard((Graphics2D) g); // Casts to Graphics2D for more advanced drawing
+        if (metrics != null) {
+            metrics.recordRender(System.nanoTime() - start);
+        }
+    }
 
-        // Draws the map terrain
-        for (int y = 0; y < map.getHeight(); y++) {
-            for (int x = 0; x < map.getWidth(); x++) {
-                char terrainChar = map.getGrid()[y][x]; // Assuming Map class has a getGrid() method
+    /**
+     * Draws the terrain and the entities of the repainted area.
+     */
+    private void paintBoard(Graphics2D g2d) {
+        // Only the tiles inside the repainted area are drawn (culling)
+        Rectangle clip = g2d.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(getPreferredSize());
+        }
+        if (isMinimap()) {
+            paintMinimap(g2d, clip);
+            return;
+        }
+        int fromX = Math.max(clip.x / tileSize, 0);
+        int fromY = Math.max(clip.y / tileSize, 0);
+        int toX = Math.min(ceilDiv(clip.x + clip.width, tileSize), map.getWidth());
+        int toY = Math.min(ceilDiv(clip.y + clip.height, tileSize), map.getHeight());
+        if (fromX >= toX || fromY >= toY) {
+            return;
+        }
 
-                Color tileColor;
+        // Draws the map terrain: the cached cells, scaled up to the tile size
+        g2d.drawImage(terrain(), fromX * tileSize, fromY * tileSize,
+                toX * tileSize, toY * tileSize, fromX, fromY, toX, toY, null);
+        if (terrainVolatile != null && terrainVolatile.contentsLost()) {
+            repaint(); // The video memory was lost while drawing; draws again from the restored copy
+        }
 
-                switch (terrainChar) {
-                    case '.': tileColor = EARTH_COLOR; break;
-                    case '~': tileColor = WATER_COLOR; break;
-                    case '%': tileColor = TREE_COLOR; break;
-                    default: tileColor = Color.BLACK; // Default for unknown terrain
+        if (snapshot == null) {
+            return;
+        }
+        // Draws entities on top of the terrain, looking up who stands on each visible tile
+        for (int y = fromY; y < toY; y++) {
+            for (int x = fromX; x < toX; x++) {
+                byte code = snapshot.getCell(x, y);
+                if (code == BoardSnapshot.PLAYER) {
+                    drawPlayer(g2d, x, y);
+                } else if (BoardSnapshot.isFighter(code) && BoardSnapshot.healthOf(code) > 0) { // Only draw if alive
+                    drawFighter(g2d, BoardSnapshot.teamOf(code), BoardSnapshot.healthOf(code), x, y);
                 }
+            }
+        }
+    }
 
-                // Draws solid color rectangle for terrain
-                g2d.setColor(tileColor);
-                g2d.fillRect(x * GameGUI.TILE_SIZE, y * GameGUI.TILE_SIZE, GameGUI.TILE_SIZE, GameGUI.TILE_SIZE);
+    /**
+     * Draws the minimap of the repainted area: one colour per cell or block of cells, written into
+     * an image and then drawn in a single call (scaled up to tileSize when tileSize > 1).
+     */
+    private void paintMinimap(Graphics2D g2d, Rectangle clip) {
+        int fromX = Math.max(clip.x / tileSize, 0); // In units of tileSize pixels, each showing a block
+        int fromY = Math.max(clip.y / tileSize, 0);
+        int toX = Math.min(ceilDiv(clip.x + clip.width, tileSize), ceilDiv(map.getWidth(), blockSize));
+        int toY = Math.min(ceilDiv(clip.y + clip.height, tileSize), ceilDiv(map.getHeight(), blockSize));
+        if (fromX >= toX || fromY >= toY) {
+            return;
+        }
+        int columns = toX - fromX;
+        int rows = toY - fromY;
+        if (minimapImage == null || minimapImage.getWidth() < columns || minimapImage.getHeight() < rows) {
+            minimapImage = new BufferedImage(columns, rows, BufferedImage.TYPE_INT_RGB);
+            minimapRow = new int[columns];
+        }
+        int[] row = minimapRow;
+        for (int y = fromY; y < toY; y++) {
+            for (int x = fromX; x < toX; x++) {
+                row[x - fromX] = blockColor(x * blockSize, y * blockSize);
             }
+            minimapImage.getRaster().setDataElements(0, y - fromY, columns, 1, row);
         }
+        g2d.drawImage(minimapImage, fromX * tileSize, fromY * tileSize, toX * tileSize, toY * tileSize,
+                0, 0, columns, rows, null);
+    }
 
-        // Draws entities on top of the terrain
-        // Draws Player
-        if (player != null) {
-            g2d.setColor(PLAYER_COLOR);
-            // Draws a circle for the player
-            g2d.fillOval(player.getX() * GameGUI.TILE_SIZE + GameGUI.TILE_SIZE / 4,
-                         player.getY() * GameGUI.TILE_SIZE + GameGUI.TILE_SIZE / 4,
-                         GameGUI.TILE_SIZE / 2, GameGUI.TILE_SIZE / 2);
+    /**
+     * The minimap colour of the block of cells starting at (x,y): the player if it stands there,
+     * else the team with the most fighters in the block, else the terrain of its first cell.
+     */
+    private int blockColor(int x, int y) {
+        int toX = Math.min(x + blockSize, map.getWidth());
+        int toY = Math.min(y + blockSize, map.getHeight());
+        int knights = 0;
+        int monsters = 0;
+        for (int cy = y; cy < toY; cy++) {
+            for (int cx = x; cx < toX; cx++) {
+                byte code = snapshot == null ? BoardSnapshot.EMPTY : snapshot.getCell(cx, cy);
+                if (code == BoardSnapshot.PLAYER) {
+                    return PLAYER_COLOR.getRGB();
+                } else if (BoardSnapshot.isFighter(code)) {
+                    if (BoardSnapshot.teamOf(code) == FighterStore.KNIGHT) {
+                        knights++;
+                    } else {
+                        monsters++;
+                    }
+                }
+            }
+        }
+        if (knights + monsters == 0) {
+            return TERRAIN_RGB[map.getTerrain().get(x, y)];
         }
+        return knights >= monsters ? KNIGHT_COLOR.getRGB() : MONSTER_COLOR.getRGB();
+    }
 
-        // Draws Fighters (Knights and Monsters)
-        for (Fighter fighter : fighters) {
-            if (fighter.isAlive()) { // Only draw if alive
-                int drawX = fighter.getX() * GameGUI.TILE_SIZE;
-                int drawY = fighter.getY() * GameGUI.TILE_SIZE;
+    /**
+     * Draws Player
+     */
+    private void drawPlayer(Graphics2D g2d, int x, int y) {
+        g2d.setColor(PLAYER_COLOR);
+        // Draws a circle for the player
+        g2d.fillOval(x * tileSize + tileSize / 4,
+                     y * tileSize + tileSize / 4,
+                     tileSize / 2, tileSize / 2);
+    }
 
-                if (fighter instanceof Knight) {
-                    g2d.setColor(KNIGHT_COLOR);
-                } else if (fighter instanceof Monster) {
-                    g2d.setColor(MONSTER_COLOR);
-                }
+    /**
+     * Draws Fighters (Knights and Monsters)
+     */
+    private void drawFighter(Graphics2D g2d, byte team, int health, int x, int y) {
+        int drawX = x * tileSize;
+        int drawY = y * tileSize;
 
-                // Draws filled rectangle for fighters (or image)
-                g2d.fillRect(drawX + GameGUI.TILE_SIZE / 8, drawY + GameGUI.TILE_SIZE / 8,
-                             GameGUI.TILE_SIZE * 3 / 4, GameGUI.TILE_SIZE * 3 / 4);
-                g2d.setColor(Color.WHITE); // Health text color
-                g2d.drawString(String.valueOf(fighter.getHealth()), drawX + GameGUI.TILE_SIZE / 3, drawY + GameGUI.TILE_SIZE * 2 / 3);
-            }
+        if (team == FighterStore.KNIGHT) {
+            g2d.setColor(KNIGHT_COLOR);
+        } else {
+            g2d.setColor(MONSTER_COLOR);
+        }
+
+        // Draws filled rectangle for fighters (or image)
+        g2d.fillRect(drawX + tileSize / 8, drawY + tileSize / 8,
+                     tileSize * 3 / 4, tileSize * 3 / 4);
+        if (tileSize >= TEXT_TILE_SIZE) {
+            g2d.setColor(Color.WHITE); // Health text color
+            g2d.drawString(String.valueOf(health), drawX + tileSize / 3, drawY + tileSize * 2 / 3);
+        }
+    }
+
+    /**
+     * The terrain image to draw: the VolatileImage when the panel is on screen and it fits in video memory,
+     * restored from terrainImage whenever its contents were lost, otherwise terrainImage itself.
+     */
+    private Image terrain() {
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        if (gc == null || terrainImage.getWidth() > MAX_VOLATILE_SIZE || terrainImage.getHeight() > MAX_VOLATILE_SIZE) {
+            return terrainImage; // Not on screen (for example painted offscreen), or too large
         }
+        int status = terrainVolatile == null ? VolatileImage.IMAGE_INCOMPATIBLE : terrainVolatile.validate(gc);
+        if (status == VolatileImage.IMAGE_INCOMPATIBLE) {
+            terrainVolatile = gc.createCompatibleVolatileImage(terrainImage.getWidth(), terrainImage.getHeight());
+            copyTerrain();
+        } else if (status == VolatileImage.IMAGE_RESTORED) {
+            copyTerrain();
+        }
+        return terrainVolatile;
+    }
+
+    private void copyTerrain() {
+        Graphics2D g = terrainVolatile.createGraphics();
+        g.drawImage(terrainImage, 0, 0, null);
+        g.dispose();
+    }
+
+    private static int ceilDiv(int a, int b) {
+        return (a + b - 1) / b;
     }
 }
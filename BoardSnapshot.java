@@ -0,0 +1,200 @@
+/**
+ * What the GUI needs to draw one moment of a game: a code per cell (nobody, the player, or a fighter's
+ * team and health), the counters shown under the board and the state of the SimulationRunner.
+ * A SimulationRunner fills snapshots on its own thread and publishes them through a TripleBuffer;
+ * once the GUI has taken one it does not change until the GUI takes the next.
+ * A snapshot also lists the cells that changed since the snapshot the GUI took before it,
+ * so the board repaints only those.
+ */
+
+public class BoardSnapshot {
+    public static final byte EMPTY = 0; // Cell code when nobody stands on the cell
+    public static final byte PLAYER = 1; // Cell code of the player's cell
+    private static final byte FIGHTER = 2; // A fighter's code is FIGHTER + team * 4 + health
+
+    private final int width;
+    private final int height;
+    private final byte[] cells; // Code of each cell, as y * width + x
+
+    private int[] changedCells = new int[64]; // Cells changed since the previous snapshot the GUI took
+    private int changedCount;
+    private boolean allChanged; // Too many cells changed to list them
+
+    private long version; // Increases with every published snapshot
+    private long turn;
+    private int knightsCount;
+    private int monstersCount;
+    private int knightsHealth; // Only filled in while paused (it is shown in the pause information)
+    private int monstersHealth;
+    private int playerX;
+    private int playerY;
+    private long blockedMoves; // How many player moves were refused so far
+    private boolean paused;
+    private boolean done;
+    private int mode; // SimulationRunner.RUNNING, FAST_FORWARD or STEP
+    private int ticksPerSecond;
+
+    public BoardSnapshot(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.cells = new byte[width * height];
+    }
+
+    /**
+     * A complete snapshot of the simulation as it is now, for drawing a board without a SimulationRunner.
+    */
+    public static BoardSnapshot capture(Simulation simulation) {
+        Map map = simulation.getMap();
+        BoardSnapshot snapshot = new BoardSnapshot(map.getWidth(), map.getHeight());
+        snapshot.copyAll(map);
+        snapshot.setCounters(simulation, false);
+        snapshot.allChanged = true;
+        return snapshot;
+    }
+
+    /**
+     * The code of the cell at (x,y) on the map right now.
+    */
+    static byte codeAt(Map map, int x, int y) {
+        int slot = map.getFighterAt(x, y);
+        if (slot == -2) {
+            return PLAYER;
+        }
+        if (slot < 0) {
+            return EMPTY;
+        }
+        FighterStore fighters = map.getFighters();
+        return (byte) (FIGHTER + fighters.getTeam(slot) * 4 + fighters.getHealth(slot));
+    }
+
+    // Decoding of the cell codes
+    public static boolean isFighter(byte code) {
+        return code >= FIGHTER;
+    }
+
+    public static byte teamOf(byte code) {
+        return (byte) ((code - FIGHTER) / 4);
+    }
+
+    public static int healthOf(byte code) {
+        return (code - FIGHTER) % 4;
+    }
+
+    // Filling, done by the thread that owns the snapshot before publishing it
+    void copyAll(Map map) {
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                cells[y * width + x] = codeAt(map, x, y);
+            }
+        }
+    }
+
+    void copyCell(Map map, int cell) {
+        cells[cell] = codeAt(map, cell % width, cell / width);
+    }
+
+    void setChanged(int[] cells, int count, boolean all) {
+        allChanged = all;
+        changedCount = all ? 0 : count;
+        if (changedCount > changedCells.length) {
+            changedCells = new int[Math.max(changedCount, changedCells.length * 2)];
+        }
+        System.arraycopy(cells, 0, changedCells, 0, changedCount);
+    }
+
+    void setCounters(Simulation simulation, boolean withHealth) {
+        turn = simulation.getTurn();
+        knightsCount = simulation.getKnightsCount();
+        monstersCount = simulation.getMonstersCount();
+        knightsHealth = withHealth ? simulation.getTotalHealth(FighterStore.KNIGHT) : 0;
+        monstersHealth = withHealth ? simulation.getTotalHealth(FighterStore.MONSTER) : 0;
+        playerX = simulation.getPlayer().getX();
+        playerY = simulation.getPlayer().getY();
+        done = simulation.isDone();
+    }
+
+    void setRunnerState(long version, long blockedMoves, boolean paused, int mode, int ticksPerSecond) {
+        this.version = version;
+        this.blockedMoves = blockedMoves;
+        this.paused = paused;
+        this.mode = mode;
+        this.ticksPerSecond = ticksPerSecond;
+    }
+
+    // Getters
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public byte getCell(int x, int y) {
+        return cells[y * width + x];
+    }
+
+    public int getChangedCount() {
+        return changedCount;
+    }
+
+    public int getChangedCell(int i) {
+        return changedCells[i];
+    }
+
+    public boolean isAllChanged() {
+        return allChanged;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getTurn() {
+        return turn;
+    }
+
+    public int getKnightsCount() {
+        return knightsCount;
+    }
+
+    public int getMonstersCount() {
+        return monstersCount;
+    }
+
+    public int getKnightsHealth() {
+        return knightsHealth;
+    }
+
+    public int getMonstersHealth() {
+        return monstersHealth;
+    }
+
+    public int getPlayerX() {
+        return playerX;
+    }
+
+    public int getPlayerY() {
+        return playerY;
+    }
+
+    public long getBlockedMoves() {
+        return blockedMoves;
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    public int getMode() {
+        return mode;
+    }
+
+    public int getTicksPerSecond() {
+        return ticksPerSecond;
+    }
+}
@@ -0,0 +1,356 @@
+/**
+ * The terrain and the occupancy of a chunked map, kept in chunks of 64 by 64 cells that only exist while they are used.
+ * A chunk is made the first time one of its cells is looked at (to check if it is walkable, to place or move
+ * an entity there, or to draw it): a TerrainGenerator fills it from the map's terrain key, so it holds exactly
+ * the cells a whole TerrainGrid filled with the same key would.
+ *
+ * At most maxResident chunks are kept. When a new chunk takes the number above that, the chunks that were used
+ * least recently and that nobody stands on are dropped; they are made again, the same, when they are needed.
+ * Chunks with an entity on them are never dropped, so the fighters only keep the chunks around them alive
+ * and a map can be far larger than the memory, as long as its entities stay in a part of it.
+ * A chunk only has an occupancy array while entities stand on it: the last one to leave gives the array
+ * back to a few spares, which the next chunks to be entered take before any new one is made.
+ *
+ * The chunks are found by their position in an open-addressing table of primitive keys, kept in least recently
+ * used order by a list through the chunks themselves, and the occupied ones are also kept in an array sorted in
+ * row-major order, so that looking up a cell and walking the occupied chunks create no object.
+ *
+ * Not thread-safe: a chunked map plays its turns on one thread.
+ */
+
+import java.util.Arrays;
+
+public class ChunkCache {
+    public static final int CHUNK_SHIFT = 6;
+    public static final int CHUNK_SIZE = 1 << CHUNK_SHIFT; // 64 cells, one passability word per chunk row
+    private static final int CELL_MASK = CHUNK_SIZE - 1;
+    public static final int DEFAULT_MAX_RESIDENT = 4096; // About 6 MB of terrain, besides the occupied chunks
+    private static final int MAX_SPARE_OCCUPANTS = 64; // Occupancy arrays kept for reuse (16 KB each)
+
+    /**
+     * One chunk: its terrain, laid out like a TerrainGrid 64 cells wide, and who stands on its cells.
+    */
+    static final class Chunk {
+        final int chunkX; // Position of the chunk, in chunks
+        final int chunkY;
+        final long[] types = new long[CHUNK_SIZE * 2]; // 2 type words per row, 2 bits per cell
+        final long[] passable = new long[CHUNK_SIZE]; // 1 passability word per row
+        int[] occupants; // Map occupancy values (EMPTY, PLAYER or slot + 1) by (y * 64 + x), or null while nobody stands on it
+        int occupied; // Number of cells with an entity on them. The chunk cannot be dropped while it is above 0.
+        Chunk older; // The neighbours of the chunk in the least recently used order, or null at its ends
+        Chunk newer;
+
+        Chunk(int chunkX, int chunkY) {
+            this.chunkX = chunkX;
+            this.chunkY = chunkY;
+        }
+
+        long key() {
+            return ChunkCache.key(chunkX, chunkY);
+        }
+    }
+
+    private final int width;
+    private final int height;
+    private final TerrainGenerator generator;
+    private final int maxResident;
+    // The resident chunks by key, in an open-addressing table with linear probing (a null chunk is a free entry)
+    private long[] tableKeys = new long[128];
+    private Chunk[] tableChunks = new Chunk[128];
+    private int residentCount;
+    private Chunk oldest; // The ends of the least recently used order of the resident chunks
+    private Chunk newest;
+    private Chunk last; // The chunk of the last lookup, checked before the table
+    // The chunks with entities on them and their keys, sorted by key (so in row-major order)
+    private Chunk[] occupiedChunks = new Chunk[16];
+    private long[] occupiedKeys = new long[16];
+    private int occupiedCount;
+    private Chunk[] visiting = new Chunk[16]; // The occupied chunks listed by forEachOccupiedChunk, reused
+    private long made; // Chunks made so far, counting the ones made again after being dropped
+    private long dropped; // Chunks dropped so far
+    private final int[][] spareOccupants = new int[MAX_SPARE_OCCUPANTS][]; // Empty occupancy arrays, for the next chunks entered
+    private int spareCount;
+
+    public ChunkCache(int width, int height, TerrainGenerator generator, int maxResident) {
+        if (maxResident < 1) {
+            throw new IllegalArgumentException("At least one chunk must be kept.");
+        }
+        this.width = width;
+        this.height = height;
+        this.generator = generator;
+        this.maxResident = maxResident;
+    }
+
+    /**
+     * The chunk of the cell (x,y), made if it is not resident. (x,y) must be inside the map.
+    */
+    Chunk chunk(int x, int y) {
+        Chunk chunk = find(x >> CHUNK_SHIFT, y >> CHUNK_SHIFT);
+        return chunk != null ? chunk : make(x >> CHUNK_SHIFT, y >> CHUNK_SHIFT);
+    }
+
+    /**
+     * The chunk of (chunkX, chunkY) if it is resident, or null.
+    */
+    private Chunk find(int chunkX, int chunkY) {
+        Chunk chunk = last;
+        if (chunk != null && chunk.chunkX == chunkX && chunk.chunkY == chunkY) {
+            return chunk;
+        }
+        chunk = tableGet(key(chunkX, chunkY));
+        if (chunk != null) {
+            last = chunk;
+            if (chunk != newest) {
+                unlink(chunk); // Now the most recently used one
+                append(chunk);
+            }
+        }
+        return chunk;
+    }
+
+    private Chunk make(int chunkX, int chunkY) {
+        Chunk chunk = new Chunk(chunkX, chunkY);
+        int fromX = chunkX << CHUNK_SHIFT;
+        int fromY = chunkY << CHUNK_SHIFT;
+        generator.fillChunk(chunk.types, chunk.passable, fromX, fromY,
+                Math.min(fromX + CHUNK_SIZE, width), Math.min(fromY + CHUNK_SIZE, height));
+        tablePut(chunk);
+        append(chunk);
+        made++;
+        last = chunk;
+        if (residentCount > maxResident) {
+            dropUnused();
+        }
+        return chunk;
+    }
+
+    /**
+     * Drops the least recently used chunks nobody stands on, until no more than maxResident are left
+     * (or only chunks with entities on them). The chunk just made is the most recently used one and stays.
+    */
+    private void dropUnused() {
+        Chunk chunk = oldest;
+        while (residentCount > maxResident && chunk != null) {
+            Chunk next = chunk.newer;
+            if (chunk.occupied == 0 && chunk != last) {
+                unlink(chunk);
+                tableRemove(chunk.key());
+                dropped++;
+            }
+            chunk = next;
+        }
+    }
+
+    /**
+     * The key of a chunk: its row in the high half and its column in the low half, so keys sort in row-major order.
+    */
+    private static long key(int chunkX, int chunkY) {
+        return ((long) chunkY << 32) | (chunkX & 0xFFFFFFFFL);
+    }
+
+    // The least recently used order
+    private void append(Chunk chunk) {
+        chunk.older = newest;
+        chunk.newer = null;
+        if (newest != null) {
+            newest.newer = chunk;
+        } else {
+            oldest = chunk;
+        }
+        newest = chunk;
+    }
+
+    private void unlink(Chunk chunk) {
+        if (chunk.older != null) {
+            chunk.older.newer = chunk.newer;
+        } else {
+            oldest = chunk.newer;
+        }
+        if (chunk.newer != null) {
+            chunk.newer.older = chunk.older;
+        } else {
+            newest = chunk.older;
+        }
+        chunk.older = null;
+        chunk.newer = null;
+    }
+
+    // The table of the resident chunks
+    private int home(long key) {
+        return (int) GameRandom.mix64(key) & (tableChunks.length - 1);
+    }
+
+    private Chunk tableGet(long key) {
+        int mask = tableChunks.length - 1;
+        for (int i = home(key); tableChunks[i] != null; i = (i + 1) & mask) {
+            if (tableKeys[i] == key) {
+                return tableChunks[i];
+            }
+        }
+        return null;
+    }
+
+    private void tablePut(Chunk chunk) {
+        if ((residentCount + 1) * 2 > tableChunks.length) {
+            // At most half full, so that the probes stay short
+            Chunk[] chunks = tableChunks;
+            tableKeys = new long[chunks.length * 2];
+            tableChunks = new Chunk[chunks.length * 2];
+            for (Chunk resident : chunks) {
+                if (resident != null) {
+                    insert(resident);
+                }
+            }
+        }
+        insert(chunk);
+        residentCount++;
+    }
+
+    private void insert(Chunk chunk) {
+        long key = chunk.key();
+        int mask = tableChunks.length - 1;
+        int i = home(key);
+        while (tableChunks[i] != null) {
+            i = (i + 1) & mask;
+        }
+        tableKeys[i] = key;
+        tableChunks[i] = chunk;
+    }
+
+    /**
+     * Removes the chunk of key, which must be in the table, and moves back the entries after it that
+     * would no longer be found past the freed entry (so the table needs no deletion marks).
+    */
+    private void tableRemove(long key) {
+        int mask = tableChunks.length - 1;
+        int hole = home(key);
+        while (tableKeys[hole] != key || tableChunks[hole] == null) {
+            hole = (hole + 1) & mask;
+        }
+        for (int i = (hole + 1) & mask; tableChunks[i] != null; i = (i + 1) & mask) {
+            // The entry at i can fill the hole if its home is not between the hole and i
+            if (((i - home(tableKeys[i])) & mask) >= ((i - hole) & mask)) {
+                tableKeys[hole] = tableKeys[i];
+                tableChunks[hole] = tableChunks[i];
+                hole = i;
+            }
+        }
+        tableChunks[hole] = null;
+        residentCount--;
+    }
+
+    // The sorted array of the occupied chunks
+    private void addOccupied(Chunk chunk) {
+        long key = chunk.key();
+        int index = -Arrays.binarySearch(occupiedKeys, 0, occupiedCount, key) - 1;
+        if (occupiedCount == occupiedChunks.length) {
+            occupiedChunks = Arrays.copyOf(occupiedChunks, occupiedCount * 2);
+            occupiedKeys = Arrays.copyOf(occupiedKeys, occupiedCount * 2);
+        }
+        System.arraycopy(occupiedChunks, index, occupiedChunks, index + 1, occupiedCount - index);
+        System.arraycopy(occupiedKeys, index, occupiedKeys, index + 1, occupiedCount - index);
+        occupiedChunks[index] = chunk;
+        occupiedKeys[index] = key;
+        occupiedCount++;
+    }
+
+    private void removeOccupied(Chunk chunk) {
+        int index = Arrays.binarySearch(occupiedKeys, 0, occupiedCount, chunk.key());
+        occupiedCount--;
+        System.arraycopy(occupiedChunks, index + 1, occupiedChunks, index, occupiedCount - index);
+        System.arraycopy(occupiedKeys, index + 1, occupiedKeys, index, occupiedCount - index);
+        occupiedChunks[occupiedCount] = null;
+    }
+
+    /**
+     * Checks if the cell (x,y) inside the map is walkable (earth).
+    */
+    public boolean isPassable(int x, int y) {
+        return (chunk(x, y).passable[y & CELL_MASK] >>> (x & CELL_MASK) & 1) != 0;
+    }
+
+    /**
+     * The terrain type (EARTH, TREES or WATER) of the cell (x,y) inside the map.
+    */
+    public byte get(int x, int y) {
+        long word = chunk(x, y).types[((y & CELL_MASK) << 1) + ((x & CELL_MASK) >>> 5)];
+        return (byte) (word >>> ((x & 31) << 1) & 3);
+    }
+
+    /**
+     * Who stands on the cell (x,y) inside the map (an occupancy value of Map).
+     * A chunk that is not resident has nobody on it, so it is not made just to be looked at.
+    */
+    int getOccupant(int x, int y) {
+        Chunk chunk = find(x >> CHUNK_SHIFT, y >> CHUNK_SHIFT);
+        if (chunk == null || chunk.occupants == null) {
+            return Map.EMPTY;
+        }
+        return chunk.occupants[((y & CELL_MASK) << CHUNK_SHIFT) | (x & CELL_MASK)];
+    }
+
+    /**
+     * Sets who stands on the cell (x,y) inside the map, and keeps the count of the chunk's entities.
+    */
+    void setOccupant(int x, int y, int occupant) {
+        Chunk chunk = chunk(x, y);
+        if (chunk.occupants == null) {
+            if (occupant == Map.EMPTY) {
+                return; // Already empty
+            }
+            chunk.occupants = spareCount > 0 ? spareOccupants[--spareCount] : new int[CHUNK_SIZE * CHUNK_SIZE];
+        }
+        int cell = ((y & CELL_MASK) << CHUNK_SHIFT) | (x & CELL_MASK);
+        if (chunk.occupants[cell] == Map.EMPTY) {
+            if (occupant != Map.EMPTY && chunk.occupied++ == 0) {
+                addOccupied(chunk);
+            }
+        } else if (occupant == Map.EMPTY) {
+            chunk.occupied--;
+        }
+        chunk.occupants[cell] = occupant;
+        if (chunk.occupied == 0) {
+            removeOccupied(chunk);
+            // Every cell is EMPTY again, so the array can be given to another chunk as it is
+            if (spareCount < MAX_SPARE_OCCUPANTS) {
+                spareOccupants[spareCount++] = chunk.occupants;
+            }
+            chunk.occupants = null;
+        }
+    }
+
+    /**
+     * Runs the work on every chunk that has an entity on it, one after the other, in row-major order of the chunks.
+     * The chunks are listed before the work starts: a chunk the work moves the first entity onto is not visited.
+    */
+    public void forEachOccupiedChunk(TileScheduler.TileWork work) {
+        if (visiting.length < occupiedCount) {
+            visiting = new Chunk[occupiedChunks.length];
+        }
+        int count = occupiedCount;
+        System.arraycopy(occupiedChunks, 0, visiting, 0, count);
+        for (int i = 0; i < count; i++) {
+            Chunk chunk = visiting[i];
+            int fromX = chunk.chunkX << CHUNK_SHIFT;
+            int fromY = chunk.chunkY << CHUNK_SHIFT;
+            work.process(-1, fromX, fromY, Math.min(fromX + CHUNK_SIZE, width), Math.min(fromY + CHUNK_SIZE, height));
+        }
+    }
+
+    // Getters
+    public int getResidentCount() {
+        return residentCount;
+    }
+
+    public int getMaxResident() {
+        return maxResident;
+    }
+
+    public long getMadeCount() {
+        return made;
+    }
+
+    public long getDroppedCount() {
+        return dropped;
+    }
+}
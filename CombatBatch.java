@@ -0,0 +1,84 @@
+/**
+ * The adjacent pairs of fighters found on one tile, in the order they interact, with the stats their attacks
+ * are worked out from, copied into int columns so that a CombatKernel can read them lane by lane.
+ * Pair i is made of first[i], second[i], neighbour[i], ... like the columns of a FighterStore.
+ *
+ * The attack rule only depends on attackPower and defence, which never change, so all the damages of a
+ * batch can be worked out at once before the pairs are played one after the other.
+ */
+
+import java.util.Arrays;
+
+public class CombatBatch {
+    // The pairs
+    int[] first; // Slot of the fighter whose cell comes first in row-major order
+    int[] second; // Slot of its neighbour
+    int[] neighbour; // Which of the first fighter's later neighbours the second one is (an index into the pair stencil)
+    // The stats of the attacks
+    int[] firstPower;
+    int[] firstDefence;
+    int[] secondPower;
+    int[] secondDefence;
+    // Filled by the CombatKernel: the damage each fighter of the pair deals to the other one, or -1 if it does not attack
+    int[] firstDamage;
+    int[] secondDamage;
+    private int size;
+
+    public CombatBatch(int initialCapacity) {
+        int capacity = (Math.max(initialCapacity, 16) + 15) & ~15;
+        first = new int[capacity];
+        second = new int[capacity];
+        neighbour = new int[capacity];
+        firstPower = new int[capacity];
+        firstDefence = new int[capacity];
+        secondPower = new int[capacity];
+        secondDefence = new int[capacity];
+        firstDamage = new int[capacity];
+        secondDamage = new int[capacity];
+    }
+
+    /**
+     * Adds the pair of the fighters at slots a and b of fighters, b being neighbour n of a.
+    */
+    public void add(FighterStore fighters, int a, int b, int n) {
+        if (size == first.length) {
+            grow();
+        }
+        int pair = size++;
+        first[pair] = a;
+        second[pair] = b;
+        neighbour[pair] = n;
+        firstPower[pair] = fighters.attackPower[a];
+        firstDefence[pair] = fighters.defence[a];
+        secondPower[pair] = fighters.attackPower[b];
+        secondDefence[pair] = fighters.defence[b];
+    }
+
+    private void grow() {
+        int newCapacity = first.length * 2;
+        first = Arrays.copyOf(first, newCapacity);
+        second = Arrays.copyOf(second, newCapacity);
+        neighbour = Arrays.copyOf(neighbour, newCapacity);
+        firstPower = Arrays.copyOf(firstPower, newCapacity);
+        firstDefence = Arrays.copyOf(firstDefence, newCapacity);
+        secondPower = Arrays.copyOf(secondPower, newCapacity);
+        secondDefence = Arrays.copyOf(secondDefence, newCapacity);
+        firstDamage = Arrays.copyOf(firstDamage, newCapacity);
+        secondDamage = Arrays.copyOf(secondDamage, newCapacity);
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The capacity of the columns, a multiple of 16, so that a kernel can read whole vectors past size().
+    */
+    public int capacity() {
+        return first.length;
+    }
+}
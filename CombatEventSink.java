@@ -0,0 +1,36 @@
+/**
+ * Where a CombatLog sends its events. The CombatLog calls a sink from its own consumer thread only,
+ * so a sink may be slow (console, file) without slowing down the turns.
+ * Every event has the same primitive fields; the ones an event type does not use are 0:
+ * ATTACK: the attacker (team, x, y), the target (otherTeam, otherX, otherY), the damage and the target's health after it.
+ * HEAL: the receiver (team, x, y), the giver (otherX, otherY), amount 1 and the receiver's health after it.
+ * DEATH: the defeated fighter (team, x, y).
+ * MOVE: the fighter (team) from (x, y) to (otherX, otherY).
+*/
+
+import java.io.IOException;
+
+public interface CombatEventSink {
+    /**
+     * A sink that drops every event (the CombatLog still counts them).
+    */
+    CombatEventSink NONE = new CombatEventSink() {
+        @Override
+        public void event(int type, long turn, byte team, int x, int y, byte otherTeam, int otherX, int otherY,
+                int amount, int health) {
+        }
+    };
+
+    void event(int type, long turn, byte team, int x, int y, byte otherTeam, int otherX, int otherY,
+            int amount, int health) throws IOException;
+
+    /**
+     * Called after each batch of events, so that buffered output reaches its destination.
+    */
+    default void flush() throws IOException {}
+
+    /**
+     * Called once, after the last event.
+    */
+    default void close() throws IOException {}
+}
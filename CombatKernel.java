@@ -0,0 +1,49 @@
+/**
+ * Works out the attacks of a CombatBatch: for every pair, whether each fighter attacks the other one
+ * (its attackPower >= the other's) and for how much damage (attackPower - the other's defence, at least 0),
+ * as Fighter.attack does. The pairs are then played by the Simulation, which applies the damages in order.
+ *
+ * SCALAR does it one pair at a time and works everywhere. The vector back end (VectorCombatKernel, built by
+ * the vector module) does it several pairs at a time with the JDK Vector API, which is still an incubator
+ * module: it is only there when its jar is on the classpath and the JVM runs with
+ * --add-modules jdk.incubator.vector. Both give the same damages, so the game does not depend on the back end.
+ * A kernel keeps no state, so one can be shared by all the threads and games.
+ */
+
+public interface CombatKernel {
+    CombatKernel SCALAR = new CombatKernel() {
+        @Override
+        public void resolve(CombatBatch batch) {
+            for (int pair = 0; pair < batch.size(); pair++) {
+                int firstPower = batch.firstPower[pair];
+                int secondPower = batch.secondPower[pair];
+                batch.firstDamage[pair] = firstPower >= secondPower ? Math.max(firstPower - batch.secondDefence[pair], 0) : -1;
+                batch.secondDamage[pair] = secondPower >= firstPower ? Math.max(secondPower - batch.firstDefence[pair], 0) : -1;
+            }
+        }
+
+        @Override
+        public String getName() {
+            return "scalar";
+        }
+    };
+
+    /**
+     * Fills firstDamage and secondDamage for the pairs [0, batch.size()).
+    */
+    void resolve(CombatBatch batch);
+
+    String getName();
+
+    /**
+     * The vector back end if it can run here, or else SCALAR.
+    */
+    static CombatKernel vectorOrScalar() {
+        try {
+            return (CombatKernel) Class.forName("VectorCombatKernel").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // Not on the classpath, or jdk.incubator.vector was not added to the JVM
+            return SCALAR;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/**
+ * Structured, asynchronous log of the combat events of a Simulation (attacks, heals, deaths and moves).
+ * The turn loop records each event as a few primitive fields in a preallocated ring buffer:
+ * recording allocates nothing, takes no lock and never waits for I/O. When the ring is full the event
+ * is dropped and counted instead of blocking the turn (getDropped()).
+ * A background thread drains the ring in batches and hands the events to a CombatEventSink
+ * (ConsoleEventSink, BinaryEventSink or CombatEventSink.NONE).
+ *
+ * Several threads may record at once (a parallel Simulation): each event claims its slot with a CAS
+ * and marks it as written when its fields are in place, so the consumer never reads a half-written event.
+ * Each event type can be sampled (setSampling): only about one in n events of that type is kept,
+ * chosen from the turn and the position, so the same game keeps the same events.
+ */
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+public class CombatLog {
+    // Event types
+    public static final int ATTACK = 0;
+    public static final int HEAL = 1;
+    public static final int DEATH = 2;
+    public static final int MOVE = 3;
+    private static final int TYPE_COUNT = 4;
+
+    private static final int FIELDS = 4; // longs per event in the ring
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1); // Consumer pause when the ring is empty
+
+    private final long[] ring; // FIELDS longs per event: turn, packed type/teams/amount/health, (x, y), (otherX, otherY)
+    private final AtomicLongArray written; // For each slot, the sequence number + 1 of the event written there
+    private final int mask; // Capacity - 1 (the capacity is a power of two)
+    private final AtomicLong head = new AtomicLong(); // Sequence number of the next event to record
+    private final AtomicLong tail = new AtomicLong(); // Sequence number of the next event to consume
+    private final AtomicLong dropped = new AtomicLong(); // Events lost because the ring was full
+    private final long[] recorded = new long[TYPE_COUNT]; // Events given to the sink, per type (consumer thread only)
+    private final int[] sampling = {1, 1, 1, 1}; // Keep one in n events of each type; 0 keeps none
+
+    private final CombatEventSink sink;
+    private final Thread consumer;
+    private volatile boolean closed;
+
+    /**
+     * Creates a log with room for capacity events waiting for the consumer (rounded up to a power of two)
+     * and starts its consumer thread.
+    */
+    public CombatLog(CombatEventSink sink, int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.ring = new long[size * FIELDS];
+        this.written = new AtomicLongArray(size);
+        this.mask = size - 1;
+        this.sink = sink;
+        this.consumer = new Thread(this::consume, "combat-log");
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    /**
+     * Keeps about one in oneIn events of the given type (1 keeps all of them, 0 none).
+     * Set it before the game starts.
+    */
+    public void setSampling(int type, int oneIn) {
+        sampling[type] = Math.max(oneIn, 0);
+    }
+
+    // Recording, called from the turn loop
+    public void attack(long turn, byte team, int x, int y, byte targetTeam, int targetX, int targetY, int damage, int targetHealth) {
+        record(ATTACK, turn, team, x, y, targetTeam, targetX, targetY, damage, targetHealth);
+    }
+
+    public void heal(long turn, byte team, int x, int y, int giverX, int giverY, int health) {
+        record(HEAL, turn, team, x, y, team, giverX, giverY, 1, health);
+    }
+
+    public void death(long turn, byte team, int x, int y) {
+        record(DEATH, turn, team, x, y, (byte) 0, 0, 0, 0, 0);
+    }
+
+    public void move(long turn, byte team, int fromX, int fromY, int toX, int toY) {
+        record(MOVE, turn, team, fromX, fromY, (byte) 0, toX, toY, 0, 0);
+    }
+
+    /**
+     * Returns true if events of this type are recorded at all, so the caller can skip preparing them.
+    */
+    public boolean isEnabled(int type) {
+        return sampling[type] != 0;
+    }
+
+    private void record(int type, long turn, byte team, int x, int y, byte otherTeam, int otherX, int otherY, int amount, int health) {
+        int oneIn = sampling[type];
+        if (oneIn != 1 && (oneIn == 0 || GameRandom.hash(turn, x, y * 4L + type, oneIn) != 0)) {
+            return; // Not sampled
+        }
+        long sequence;
+        do {
+            sequence = head.get();
+            if (sequence - tail.get() > mask) {
+                dropped.incrementAndGet(); // Full: the turn does not wait for the consumer
+                return;
+            }
+        } while (!head.compareAndSet(sequence, sequence + 1));
+
+        int slot = (int) sequence & mask;
+        int i = slot * FIELDS;
+        ring[i] = turn;
+        ring[i + 1] = type | (team & 0xFFL) << 8 | (otherTeam & 0xFFL) << 16 | (amount & 0xFFFFL) << 24 | (health & 0xFFFFL) << 40;
+        ring[i + 2] = (long) x << 32 | (y & 0xFFFFFFFFL);
+        ring[i + 3] = (long) otherX << 32 | (otherY & 0xFFFFFFFFL);
+        written.lazySet(slot, sequence + 1); // Publishes the fields above to the consumer
+    }
+
+    /**
+     * The consumer thread: hands the recorded events to the sink in batches until the log is closed.
+    */
+    private void consume() {
+        try {
+            while (!closed) {
+                if (drain() == 0) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+            }
+            drain(); // The events recorded before close()
+            sink.close();
+        } catch (IOException e) {
+            System.err.println("Combat log stopped: " + e);
+        }
+    }
+
+    /**
+     * Gives every event written so far to the sink, then flushes it. Returns the number of events.
+    */
+    private int drain() throws IOException {
+        long next = tail.get();
+        int count = 0;
+        while (true) {
+            int slot = (int) next & mask;
+            if (written.get(slot) != next + 1) {
+                break; // Not recorded yet, or still being written
+            }
+            int i = slot * FIELDS;
+            long packed = ring[i + 1];
+            int type = (int) (packed & 0xFF);
+            sink.event(type, ring[i], (byte) (packed >>> 8), (int) (ring[i + 2] >> 32), (int) ring[i + 2],
+                    (byte) (packed >>> 16), (int) (ring[i + 3] >> 32), (int) ring[i + 3],
+                    (int) (packed >>> 24) & 0xFFFF, (int) (packed >>> 40) & 0xFFFF);
+            recorded[type]++;
+            next++;
+            count++;
+            tail.lazySet(next); // Frees the slot for the recorders
+        }
+        if (count > 0) {
+            sink.flush();
+        }
+        return count;
+    }
+
+    /**
+     * Waits until the consumer has handed every event recorded so far to the sink.
+     * For front ends that want the events of a turn shown before they draw the next frame; never called by the turn loop.
+    */
+    public void flush() {
+        long target = head.get();
+        while (tail.get() < target && consumer.isAlive()) {
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS / 10);
+        }
+    }
+
+    /**
+     * Stops the consumer after it has handed the remaining events to the sink, and closes the sink.
+    */
+    public void close() {
+        closed = true;
+        try {
+            consumer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Events lost because the consumer could not keep up.
+    */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Events of a type given to the sink so far. Exact once the log is closed.
+    */
+    public long getRecorded(int type) {
+        return recorded[type];
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * Writes combat events as text lines, in the same words the front ends used to print.
+ * Each line is built into one reused StringBuilder and the lines of a batch are written together,
+ * on the CombatLog's consumer thread.
+*/
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+public class ConsoleEventSink implements CombatEventSink {
+    private final Writer out;
+    private final StringBuilder line = new StringBuilder(128);
+
+    public ConsoleEventSink(OutputStream out) {
+        this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    @Override
+    public void event(int type, long turn, byte team, int x, int y, byte otherTeam, int otherX, int otherY,
+            int amount, int health) throws IOException {
+        line.setLength(0);
+        char symbol = FighterStore.symbolOf(team);
+        char otherSymbol = FighterStore.symbolOf(otherTeam);
+        switch (type) {
+            case CombatLog.ATTACK:
+                appendAt(symbol, x, y).append(" attacked ");
+                appendAt(otherSymbol, otherX, otherY);
+                if (amount > 0) {
+                    line.append(" for ").append(amount).append(" damage. ").append(otherSymbol).append(" health: ").append(health);
+                } else {
+                    line.append(" but dealt no damage.");
+                }
+                break;
+            case CombatLog.HEAL:
+                appendAt(symbol, otherX, otherY).append(" gave medicine to ");
+                appendAt(symbol, x, y).append(". ").append(symbol).append(" Health: ").append(health);
+                break;
+            case CombatLog.DEATH:
+                appendAt(symbol, x, y).append(" was defeated!");
+                break;
+            case CombatLog.MOVE:
+                appendAt(symbol, x, y).append(" moved to (").append(otherX).append(",").append(otherY).append(")");
+                break;
+            default:
+                return;
+        }
+        line.append('\n');
+        out.append(line);
+    }
+
+    private StringBuilder appendAt(char symbol, int x, int y) {
+        return line.append(symbol).append(" at (").append(x).append(",").append(y).append(")");
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.flush(); // The stream itself (for example System.out) stays open
+    }
+}
@@ -1,24 +1,37 @@
 /** 
  * Inherits from the Entity class. It represents entities that fight.
  * It includes attackPower, defence and medicine fields.
+ * The fighters of a running game are kept in the map's FighterStore; the methods here
+ * only go through getters and setters, so they work the same on a FighterView.
 */
 
-import java.util.Random;
-
 public abstract class Fighter extends Entity {
     protected int attackPower; // [1-3]
     protected int defence; // [1-2]
     protected int medicine; // [0-2]
     
     public Fighter(int x, int y) {
+        this(x, y, GameRandom.current());
+    }
+
+    // Constructor that rolls the fighter's stats from the given generator (for reproducible games).
+    public Fighter(int x, int y, GameRandom rand) {
         super(x, y); // Inherites x and y fields from the Entity class.
-        Random rand = new Random();
         this.health = 3; // Fighters initially have health level 3
         this.attackPower = rand.nextInt(3) + 1; // Gets a random number between [1-3]
         this.defence = rand.nextInt(2) + 1; // Gets a random number between [1-2]
         this.medicine = rand.nextInt(3); // Gets a random number between [0-2]
     }
 
+    // Constructor with given stats (for example for views of fighters kept in a FighterStore).
+    protected Fighter(int x, int y, int health, int attackPower, int defence, int medicine) {
+        super(x, y);
+        this.health = health;
+        this.attackPower = attackPower;
+        this.defence = defence;
+        this.medicine = medicine;
+    }
+
     // Getters
     public int getAttackPower() {
         return attackPower;
@@ -45,22 +58,40 @@ public abstract class Fighter extends Entity {
         this.medicine = medicine;
     }
 
+    /** 
+     * The fighter's team (FighterStore.KNIGHT or FighterStore.MONSTER). 
+    */
+    public abstract byte getTeam();
+
+    /** 
+     * Number of directions the fighter can move to (Knights 4, Monsters 8). 
+    */
+    public abstract int getDirectionCount();
+
+    /** 
+     * Moves one cell in the given direction [0, getDirectionCount()).
+     * The random move(Map) picks the direction itself; the Simulation picks it from its seed.
+     * Only a fighter on the map (a FighterView) can move; see Map.moveEntity. 
+    */
+    public abstract void move(Map map, int direction);
+
     /** 
      * Uses the getsDamage method to decrease the health of the entity that gets attacked.
-     * Systems out the appropriate message.
+     * Returns the damage that was dealt (0 if the defence absorbed it) or -1 if no attack happened.
+     * It prints nothing; messages are left to the front ends.
     */
-    public void attack(Fighter target) {
+    public int attack(Fighter target) {
         // The entity attacks only if it's attackPower >= attackPower of the other entity.
-        if (this.attackPower >= target.getAttackPower()) {
-            int damage = this.attackPower - target.getDefence();
+        if (getAttackPower() >= target.getAttackPower()) {
+            int damage = getAttackPower() - target.getDefence();
             if (damage > 0) {
                 // If the damage is more than 0 then the health of the attacked entity decreases
                 target.getsDamage(damage);
-                System.out.println(this.getSymbol() + " at (" + this.x + "," + this.y + ") attacked " + target.getSymbol() + " at (" + target.getX() + "," + target.getY() + ") for " + damage + " damage. " + target.getSymbol() + " health: " + target.getHealth());
-            } else {
-                System.out.println(this.getSymbol() + " at (" + this.x + "," + this.y + ") attacked " + target.getSymbol() + " at (" + target.getX() + "," + target.getY() + ") but dealt no damage.");
+                return damage;
             }
+            return 0;
         }
+        return -1;
     }
 
     /** 
@@ -68,19 +99,20 @@ public abstract class Fighter extends Entity {
      * For each attack that an entity gets, it's health level decreases.
     */
     public void getsDamage(int damage) {
-        this.health -= damage;
-        if (this.health < 0) {
-            this.health = 0;
+        int newHealth = getHealth() - damage;
+        if (newHealth < 0) {
+            newHealth = 0;
         }
+        setHealth(newHealth);
     }
 
     /** 
      * Method for applying medicine to another entity that is part of the same team. 
     */
     public void useMedicine() {
-        if (this.medicine > 0) {
-            this.health ++;
-            this.medicine--;
+        if (getMedicine() > 0) {
+            setHealth(getHealth() + 1);
+            setMedicine(getMedicine() - 1);
         }
     }
 
@@ -89,6 +121,6 @@ public abstract class Fighter extends Entity {
      * When an entity's health is equal or less than 0, it disappears from the map.
     */
     public boolean isAlive() {
-        return this.health > 0;
+        return getHealth() > 0;
     }
 }
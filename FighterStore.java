@@ -0,0 +1,168 @@
+/**
+ * Stores all the fighters of a map as parallel primitive arrays (structure of arrays)
+ * instead of one Knight or Monster object per fighter.
+ * A fighter is a slot index; its fields are the values at that index in each column.
+ * Each fighter costs 14 bytes: x and y (int), and team, health, attackPower, defence, medicine
+ * and the move mark (byte).
+ *
+ * Slots are dense: remove(slot) moves the last fighter into the freed slot (swap-remove),
+ * so the fighters are always the slots [0, size()).
+ * view(slot) gives a Fighter object backed by these columns for code that works with Fighter objects.
+ */
+
+import java.util.Arrays;
+
+public class FighterStore {
+    public static final byte KNIGHT = 0; // Team of the Knights
+    public static final byte MONSTER = 1; // Team of the Monsters
+
+    // The columns. Fighter i is made of x[i], y[i], team[i], ...
+    int[] x;
+    int[] y;
+    byte[] team;
+    byte[] health;
+    byte[] attackPower;
+    byte[] defence;
+    byte[] medicine;
+    byte[] moveMark; // Low byte of the last turn in which the fighter moved
+    private int size;
+
+    public FighterStore(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 16);
+        x = new int[capacity];
+        y = new int[capacity];
+        team = new byte[capacity];
+        health = new byte[capacity];
+        attackPower = new byte[capacity];
+        defence = new byte[capacity];
+        medicine = new byte[capacity];
+        moveMark = new byte[capacity];
+    }
+
+    /**
+     * Adds a fighter and returns its slot.
+    */
+    public int add(byte team, int x, int y, int health, int attackPower, int defence, int medicine) {
+        ensureCapacity(size + 1);
+        int slot = size++;
+        this.x[slot] = x;
+        this.y[slot] = y;
+        this.team[slot] = team;
+        this.health[slot] = (byte) health;
+        this.attackPower[slot] = (byte) attackPower;
+        this.defence[slot] = (byte) defence;
+        this.medicine[slot] = (byte) medicine;
+        this.moveMark[slot] = 0;
+        return slot;
+    }
+
+    /**
+     * Removes the fighter at slot by moving the last fighter into it.
+     * Returns the old slot of the fighter that was moved into slot, or -1 if slot was the last one.
+    */
+    public int remove(int slot) {
+        int last = --size;
+        if (slot == last) {
+            return -1;
+        }
+        x[slot] = x[last];
+        y[slot] = y[last];
+        team[slot] = team[last];
+        health[slot] = health[last];
+        attackPower[slot] = attackPower[last];
+        defence[slot] = defence[last];
+        medicine[slot] = medicine[last];
+        moveMark[slot] = moveMark[last];
+        return last;
+    }
+
+    /**
+     * Sets the number of fighters, for code that fills the columns directly (loading a SaveFile).
+     * The columns must have room for size fighters (ensureCapacity).
+    */
+    void setSize(int size) {
+        this.size = size;
+    }
+
+    /**
+     * Makes room for at least capacity fighters.
+    */
+    public void ensureCapacity(int capacity) {
+        if (capacity <= x.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, x.length + (x.length >> 1)); // Grows by 50%
+        x = Arrays.copyOf(x, newCapacity);
+        y = Arrays.copyOf(y, newCapacity);
+        team = Arrays.copyOf(team, newCapacity);
+        health = Arrays.copyOf(health, newCapacity);
+        attackPower = Arrays.copyOf(attackPower, newCapacity);
+        defence = Arrays.copyOf(defence, newCapacity);
+        medicine = Arrays.copyOf(medicine, newCapacity);
+        moveMark = Arrays.copyOf(moveMark, newCapacity);
+    }
+
+    /**
+     * Returns a Fighter backed by the fighter at slot. It stays valid until a fighter is removed.
+    */
+    public FighterView view(int slot) {
+        return new FighterView(this, slot);
+    }
+
+    /**
+     * The map symbol of a team ('K' for Knights, 'M' for Monsters).
+    */
+    public static char symbolOf(byte team) {
+        return team == KNIGHT ? 'K' : 'M';
+    }
+
+    // Getters
+    public int size() {
+        return size;
+    }
+
+    public int getX(int slot) {
+        return x[slot];
+    }
+
+    public int getY(int slot) {
+        return y[slot];
+    }
+
+    public byte getTeam(int slot) {
+        return team[slot];
+    }
+
+    public int getHealth(int slot) {
+        return health[slot];
+    }
+
+    public int getAttackPower(int slot) {
+        return attackPower[slot];
+    }
+
+    public int getDefence(int slot) {
+        return defence[slot];
+    }
+
+    public int getMedicine(int slot) {
+        return medicine[slot];
+    }
+
+    // Setters (positions only change through the Map, which keeps its occupancy grid up to date)
+    public void setHealth(int slot, int health) {
+        this.health[slot] = (byte) health;
+    }
+
+    public void setAttackPower(int slot, int attackPower) {
+        this.attackPower[slot] = (byte) attackPower;
+    }
+
+    public void setDefence(int slot, int defence) {
+        this.defence[slot] = (byte) defence;
+    }
+
+    public void setMedicine(int slot, int medicine) {
+        this.medicine[slot] = (byte) medicine;
+    }
+}
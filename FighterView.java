@@ -0,0 +1,127 @@
+/**
+ * A Fighter whose fields live in a FighterStore slot instead of in the object itself.
+ * It lets Fighter-style code (attack, getsDamage, move, the front ends' listeners) work on stored fighters.
+ * The view holds no state of its own, so one view can be pointed at different fighters with at(slot).
+ * Removing a fighter from the store moves another fighter into its slot, so views are only valid
+ * until the next removal.
+ */
+
+public class FighterView extends Fighter {
+    private final FighterStore store;
+    private int slot;
+
+    public FighterView(FighterStore store, int slot) {
+        super(0, 0, 0, 0, 0, 0);
+        this.store = store;
+        this.slot = slot;
+    }
+
+    /**
+     * Points this view at another fighter of the same store and returns it.
+    */
+    public FighterView at(int slot) {
+        this.slot = slot;
+        return this;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    // Getters and setters read and write the store's columns.
+    @Override
+    public int getX() {
+        return store.getX(slot);
+    }
+
+    @Override
+    public int getY() {
+        return store.getY(slot);
+    }
+
+    @Override
+    public int getHealth() {
+        return store.getHealth(slot);
+    }
+
+    @Override
+    public char getSymbol() {
+        return FighterStore.symbolOf(store.getTeam(slot));
+    }
+
+    @Override
+    public int getAttackPower() {
+        return store.getAttackPower(slot);
+    }
+
+    @Override
+    public int getDefence() {
+        return store.getDefence(slot);
+    }
+
+    @Override
+    public int getMedicine() {
+        return store.getMedicine(slot);
+    }
+
+    @Override
+    public byte getTeam() {
+        return store.getTeam(slot);
+    }
+
+    /**
+     * Positions are owned by the map; a view is moved with move(map, direction) or Map.moveEntity.
+    */
+    @Override
+    public void setX(int x) {
+        throw new UnsupportedOperationException("Stored fighters are moved through the Map");
+    }
+
+    @Override
+    public void setY(int y) {
+        throw new UnsupportedOperationException("Stored fighters are moved through the Map");
+    }
+
+    @Override
+    public void setHealth(int health) {
+        store.setHealth(slot, health);
+    }
+
+    @Override
+    public void setSymbol(char symbol) {
+        throw new UnsupportedOperationException("The symbol of a stored fighter comes from its team");
+    }
+
+    @Override
+    public void setAttackPower(int attackPower) {
+        store.setAttackPower(slot, attackPower);
+    }
+
+    @Override
+    public void setDefence(int defence) {
+        store.setDefence(slot, defence);
+    }
+
+    @Override
+    public void setMedicine(int medicine) {
+        store.setMedicine(slot, medicine);
+    }
+
+    // Moves follow the rules of the fighter's team.
+    @Override
+    public int getDirectionCount() {
+        return getTeam() == FighterStore.KNIGHT ? Knight.MOVES_X.length : Monster.MOVES_X.length;
+    }
+
+    @Override
+    public void move(Map map) {
+        move(map, GameRandom.current().nextInt(getDirectionCount())); // For randomly move on map.
+    }
+
+    @Override
+    public void move(Map map, int direction) {
+        int[] movesX = getTeam() == FighterStore.KNIGHT ? Knight.MOVES_X : Monster.MOVES_X;
+        int[] movesY = getTeam() == FighterStore.KNIGHT ? Knight.MOVES_Y : Monster.MOVES_Y;
+        map.moveEntity(this, getX() + movesX[direction], getY() + movesY[direction]);
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Flow fields that lead the fighters of each team towards the nearest enemy, so they march into battle
+ * instead of walking randomly.
+ * For each team, every cell holds the move (an index into Knight.MOVES_X/Y or Monster.MOVES_X/Y) that takes
+ * a fighter standing there one step closer to the nearest enemy, found with a breadth-first search that
+ * starts from all the enemies at once (multi-source BFS) and only crosses walkable terrain.
+ * Each team's search uses its own moves, so Knights get 4-way paths and Monsters 8-way ones.
+ *
+ * A refresh is not incremental: it searches the whole map again, for O(cells), once every few turns
+ * (see Simulation.setFlowInterval), reusing the same buffers; steering a fighter is then one array lookup.
+ * Between two refreshes the fields stay those of the positions at the last one. The other fighters are not
+ * obstacles for the search: a fighter whose move is blocked falls back to a random one.
+ */
+
+import java.util.Arrays;
+
+public class FlowField {
+    public static final byte NONE = -1; // No enemy can be reached from this cell (or the cell is not walkable)
+    public static final byte HOLD = -2; // An enemy is adjacent (8 neighbours): stay and fight
+    private static final byte ENEMY = -3; // A cell of an enemy, while the search starts
+
+    private final TerrainGrid terrain;
+    private final int width;
+    private final int height;
+    // Package-private so that a SaveFile can copy them in bulk
+    final byte[] knightMoves; // For each cell: the move of a Knight standing there, NONE or HOLD
+    final byte[] monsterMoves; // For each cell: the move of a Monster standing there, NONE or HOLD
+    private final int[] queue; // The cells of the search, in the order they were reached
+    // For each move of a team: the offset of the cell a fighter comes from with it
+    private final int[] knightFrom;
+    private final int[] monsterFrom;
+
+    public FlowField(TerrainGrid terrain) {
+        this.terrain = terrain;
+        this.width = terrain.getWidth();
+        this.height = terrain.getHeight();
+        int cells = width * height;
+        this.knightMoves = new byte[cells];
+        this.monsterMoves = new byte[cells];
+        this.queue = new int[cells];
+        this.knightFrom = fromOffsets(Knight.MOVES_X, Knight.MOVES_Y);
+        this.monsterFrom = fromOffsets(Monster.MOVES_X, Monster.MOVES_Y);
+        Arrays.fill(knightMoves, NONE);
+        Arrays.fill(monsterMoves, NONE);
+    }
+
+    private int[] fromOffsets(int[] movesX, int[] movesY) {
+        int[] from = new int[movesX.length];
+        for (int move = 0; move < movesX.length; move++) {
+            from[move] = -movesY[move] * width - movesX[move];
+        }
+        return from;
+    }
+
+    /**
+     * Searches again from where the fighters stand now, for both teams.
+    */
+    public void refresh(FighterStore fighters) {
+        search(fighters, FighterStore.MONSTER, knightMoves, Knight.MOVES_X, Knight.MOVES_Y, knightFrom);
+        search(fighters, FighterStore.KNIGHT, monsterMoves, Monster.MOVES_X, Monster.MOVES_Y, monsterFrom);
+    }
+
+    /**
+     * Fills moves with the way to the nearest fighter of enemyTeam for a fighter that moves with movesX/Y
+     * (from holds the offsets of the cells it comes from with each move).
+     * The cells next to an enemy get HOLD and start the search; a cell reached from cell c through
+     * move d gets d, the move that leads back to c. The search visits the cells in a fixed order,
+     * so the field only depends on the terrain and where the fighters stand.
+    */
+    private void search(FighterStore fighters, byte enemyTeam, byte[] moves, int[] movesX, int[] movesY, int[] from) {
+        Arrays.fill(moves, NONE);
+        for (int slot = 0; slot < fighters.size(); slot++) {
+            if (fighters.team[slot] == enemyTeam) {
+                moves[fighters.y[slot] * width + fighters.x[slot]] = ENEMY;
+            }
+        }
+        // The enemies are taken in row-major order rather than slot order, so that the search spreads over
+        // the map in roughly the order of the cells, which keeps its memory accesses close together.
+        // Their own cells become HOLD, so they are never entered.
+        int tail = 0;
+        for (int cell = 0; cell < moves.length; cell++) {
+            if (moves[cell] != ENEMY) {
+                continue;
+            }
+            moves[cell] = HOLD;
+            int cellY = cell / width;
+            int cellX = cell - cellY * width;
+            for (int y = cellY - 1; y <= cellY + 1; y++) {
+                for (int x = cellX - 1; x <= cellX + 1; x++) {
+                    if (isOpen(x, y, moves)) {
+                        moves[y * width + x] = HOLD;
+                        queue[tail++] = y * width + x;
+                    }
+                }
+            }
+        }
+        long[] passable = terrain.passable;
+        for (int head = 0; head < tail; head++) {
+            int cell = queue[head];
+            int cellY = cell / width;
+            int cellX = cell - cellY * width;
+            for (int move = 0; move < movesX.length; move++) {
+                int x = cellX - movesX[move]; // A fighter at (x,y) reaches the cell with this move
+                int y = cellY - movesY[move];
+                int next = cell + from[move];
+                if (x >= 0 && x < width && y >= 0 && y < height && moves[next] == NONE
+                        && (passable[next >>> 6] & (1L << next)) != 0) {
+                    moves[next] = (byte) move;
+                    queue[tail++] = next;
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks if (x,y) is inside the map, walkable and not reached yet by the search.
+    */
+    private boolean isOpen(int x, int y, byte[] moves) {
+        return x >= 0 && x < width && y >= 0 && y < height && moves[y * width + x] == NONE && terrain.isPassable(x, y);
+    }
+
+    /**
+     * The move of a fighter of team standing at cell (y * width + x): a move index, NONE or HOLD.
+    */
+    public int getMove(byte team, int cell) {
+        return team == FighterStore.KNIGHT ? knightMoves[cell] : monsterMoves[cell];
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * The set of free cells of a map (walkable and empty), kept as a dense array with swap-remove
+ * plus the position of each cell in that array.
+ * Adding a cell, removing a cell and taking a uniformly random free cell are all O(1),
+ * whatever the size of the map and however full it is.
+ */
+
+import java.util.stream.IntStream;
+
+public class FreeCellIndex {
+    private static final int BLOCK_WORDS = 1024; // Bitmap words (64 cells each) handled by one task of addAll
+    private final int[] cells; // The free cells, in the slots [0, size)
+    private final int[] positions; // For each cell of the map: its slot in cells + 1, or 0 if it is not free (no fill needed)
+    private int size;
+
+    public FreeCellIndex(int cellCount) {
+        this.cells = new int[cellCount];
+        this.positions = new int[cellCount];
+    }
+
+    /**
+     * Marks a cell as free. Does nothing if it is already free.
+    */
+    public void add(int cell) {
+        if (positions[cell] != 0) {
+            return;
+        }
+        cells[size++] = cell;
+        positions[cell] = size;
+    }
+
+    /**
+     * Adds every walkable cell of a passability bitmap (see TerrainGrid), in cell order, to an empty index.
+     * Blocks of words are counted in parallel, then each block fills its part of the index from the
+     * counts of the blocks before it, also in parallel.
+    */
+    public void addAll(long[] passable) {
+        if (size != 0) {
+            throw new IllegalStateException("The index is not empty.");
+        }
+        int blocks = (passable.length + BLOCK_WORDS - 1) / BLOCK_WORDS;
+        int[] starts = new int[blocks + 1]; // Where the cells of each block go in cells
+        blocks(blocks).forEach(block -> {
+            int count = 0;
+            for (int word = block * BLOCK_WORDS; word < Math.min((block + 1) * BLOCK_WORDS, passable.length); word++) {
+                count += Long.bitCount(passable[word]);
+            }
+            starts[block + 1] = count;
+        });
+        for (int block = 0; block < blocks; block++) {
+            starts[block + 1] += starts[block];
+        }
+        blocks(blocks).forEach(block -> {
+            int position = starts[block];
+            for (int word = block * BLOCK_WORDS; word < Math.min((block + 1) * BLOCK_WORDS, passable.length); word++) {
+                for (long bits = passable[word]; bits != 0; bits &= bits - 1) {
+                    int cell = (word << 6) + Long.numberOfTrailingZeros(bits);
+                    cells[position++] = cell;
+                    positions[cell] = position;
+                }
+            }
+        });
+        size = starts[blocks];
+    }
+
+    private static IntStream blocks(int blocks) {
+        IntStream range = IntStream.range(0, blocks);
+        return blocks > 1 ? range.parallel() : range;
+    }
+
+    /**
+     * Marks a cell as not free (taken or not walkable). Does nothing if it is not free.
+    */
+    public void remove(int cell) {
+        int position = positions[cell];
+        if (position == 0) {
+            return;
+        }
+        int last = cells[--size];
+        cells[position - 1] = last; // Moves the last free cell into the freed slot
+        positions[last] = position;
+        positions[cell] = 0;
+    }
+
+    /**
+     * Records that an entity moved from the cell 'from' (which becomes free) to the free cell 'to'.
+     * The freed cell takes the slot of the taken one, so the move only writes the entries of these two cells.
+     * Moves in different tiles of the same colour touch different cells, so the turn loop can call this
+     * from several threads at once, and the result does not depend on the order of the moves.
+    */
+    public void move(int from, int to) {
+        int position = positions[to];
+        cells[position - 1] = from;
+        positions[from] = position;
+        positions[to] = 0;
+    }
+
+    /**
+     * Removes a uniformly random free cell and returns it, or returns -1 if there is none.
+    */
+    public int takeRandom(GameRandom rand) {
+        if (size == 0) {
+            return -1;
+        }
+        int cell = cells[rand.nextInt(size)];
+        remove(cell);
+        return cell;
+    }
+
+    public boolean contains(int cell) {
+        return positions[cell] != 0;
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -3,26 +3,36 @@
  * It manages the entities and their interactions, the map and the game flow.
  */
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Random;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Scanner;
-import java.util.concurrent.TimeUnit;
 
 public class Game {
-    private Map map;
-    private Player player;
-    private List<Fighter> fighters; // A list of Knights and Monsters
-    private int knightsCount;
-    private int monstersCount;
+    private Simulation simulation; // Runs the turns. This class only handles the console input and output.
     private Scanner scanner;
     private boolean gameOver;
     private boolean paused;
+    private TerminalRenderer renderer; // Draws the map and the game information in one write per frame
+    private boolean windows; // The Windows console is cleared with cls instead of the ANSI escape
+    private CombatLog combatLog; // Prints the combat events from its own thread
+    private Path replayDirectory; // Where the game is recorded (see ReplayRecorder), or null
+    private ReplayRecorder recorder;
+    private TurnMetrics metrics; // Times the turns and the frames and counts the combat events
+
+    private static final int FRAMES_PER_SECOND = 5; // At most 5 frames per second (a frame every 200 ms)
+    private static final int COMBAT_LOG_CAPACITY = 1 << 16; // Events waiting to be printed before new ones are dropped
     
     // Constructor
     public Game() {
+        this(null, new TurnMetrics());
+    }
+
+    // Constructor for a game that is recorded in replayDirectory (if not null), so it can be replayed (see ReplayPlayer),
+    // and whose turns and frames are measured in metrics
+    public Game(Path replayDirectory, TurnMetrics metrics) {
+        this.replayDirectory = replayDirectory;
+        this.metrics = metrics;
         scanner = new Scanner(System.in); // Initializes a Scanner to read user input from the console.
-        fighters = new ArrayList<>(); // Initializes an empty list to hold all active Knight and Monster objects.
         gameOver = false; // Sets the game over flag to false initially.
         paused = false; // Sets the paused flag to false initially.
     }
@@ -39,66 +49,34 @@ public class Game {
         int height = scanner.nextInt();
         scanner.nextLine(); // Cleaning buffer
 
-        // Creates a new Map object with the specified dimensions given by the user.
-        map = new Map(width, height) {
-            @Override // Overrides the getEntityAt method from the Map class to provide access to the Game's enity lists.
-            public Entity getEntityAt(int x, int y) {
-                // Checks if the player is at the given coordinates.
-                if (player.getX() == x && player.getY() == y) {
-                    return player;
-                }
-                // Checks if any fighter is at the given coordinates
-                for (Fighter fighter : fighters) {
-                    if (fighter.getX() == x && fighter.getY() == y) {
-                        return fighter;
-                    }
-                }
-                return null; // No entity found at these coordinates
-            }
-        };
-        // Calls the method for initialize and place the game entities on the map
-        initializeEntities(width, height);
-        // Calls the method for starting the main game loop
-        gameLoop();
-    }
-
-    /** 
-     * Initializes the entities and places them on the map. 
-    */
-    private void initializeEntities(int width, int height) {
-        // Creates and places the player avatar.
-        player = new Player(0, 0); // Initial coordinates are placeholders, placeEntityOnMap will update them.
-        if (!map.placeEntityOnMap(player)) { // Tries to Place the player on a random free spot.
-            System.err.println("Player couldn't be placed on the map. The game will be terminated");
+        // Creates the simulation: the map with the specified dimensions, the player and the fighters.
+        try {
+            simulation = new Simulation(width, height, System.nanoTime());
+        } catch (IllegalStateException e) {
+            System.err.println(e.getMessage() + " The game will be terminated");
             System.exit(1); // Exits the program if the player can't be placed.
         }
-
-        // Calculates the maximum number of fighters for each team based on map size.
-        // (width * height) / 15 ensures that each team has a maximum of 1/15th of the map's total cells.
-        int maxFighters = (width * height) / 15;
-        Random rand = new Random();
-
-        knightsCount = 0;
-        monstersCount = 0;
-
-        // Places Knights and Monsters. It tries to keep the counts balanced (knightsCount <= monstersCount).
-        for (int i = 0; i < maxFighters; i++) {
-            if (knightsCount <= monstersCount) { // If Knights are less than or equal to Monsters, add a Knight.
-                Knight knight = new Knight(0, 0); // Creates a new Knight object with coordinates placeholder.
-                if (map.placeEntityOnMap(knight)) { // Tries to place the knight on the map.
-                    fighters.add(knight); // If successful, adds the knight to the main fighters list.
-                    knightsCount++; // Increments Knight count.
-                }
-            } else {
-                Monster monster = new Monster(0, 0);
-                if (map.placeEntityOnMap(monster)) {
-                    fighters.add(monster);
-                    monstersCount++;
-                }
+        combatLog = new CombatLog(new ConsoleEventSink(System.out), COMBAT_LOG_CAPACITY); // Prints the attacks, heals and defeats of each turn
+        combatLog.setSampling(CombatLog.MOVE, 0); // Moves are not printed
+        simulation.setCombatLog(combatLog);
+        simulation.setMetrics(metrics);
+        if (replayDirectory != null) {
+            try {
+                recorder = new ReplayRecorder(replayDirectory, simulation, ReplayRecorder.DEFAULT_KEYFRAME_INTERVAL);
+                simulation.setRecorder(recorder);
+                System.out.println("Recording the game in " + replayDirectory);
+            } catch (IOException e) {
+                System.err.println("The game cannot be recorded: " + e);
             }
         }
+        windows = System.getProperty("os.name").contains("Windows");
+        renderer = new TerminalRenderer(simulation.getMap(), TerminalRenderer.standardOutput(),
+                windows ? TerminalRenderer.PLAIN : TerminalRenderer.FULL, FRAMES_PER_SECOND);
+        System.out.println("Seed: " + simulation.getSeed()); // The same seed replays the same game
         System.out.println("First placement of entities: ");
-        System.out.println("Knights: " + knightsCount + ", Monsters: " + monstersCount);
+        System.out.println("Knights: " + simulation.getKnightsCount() + ", Monsters: " + simulation.getMonstersCount());
+        // Calls the method for starting the main game loop
+        gameLoop();
     }
 
     /** 
@@ -106,11 +84,10 @@ public class Game {
     */
     private void gameLoop() {
         while (!gameOver) {
-            clearConsole(); // Clears the console for a clean display in each turn.
-            map.updateMap(getAllEntities()); // Updates the map's internal array with the current positions. of the entities.
-            map.display();
-            System.out.println("Total Knights: " + knightsCount + ", total Monsters: " + monstersCount);
-            System.out.println("Player is at position: (" + player.getX() + ", " + player.getY() + ")");
+            // Clears the console and draws the map and the game information in one write
+            Player player = simulation.getPlayer();
+            render("Total Knights: " + simulation.getKnightsCount() + ", total Monsters: " + simulation.getMonstersCount() + "\n"
+                    + "Player is at position: (" + player.getX() + ", " + player.getY() + ")\n");
 
             if (!paused) { // If the game is not paused, allow player movement and game progression.
                 // Player's move (w:up, s:down, a:left, d:right)
@@ -141,15 +118,20 @@ public class Game {
             }
             if (!gameOver && !paused) {
                 // Fighters turn to move
-                fightersTurn();
+                simulation.step();
+                combatLog.flush(); // The turn's events are printed before the next frame
                 checkGameEnd();
             }
             try {
-                TimeUnit.MILLISECONDS.sleep(200); // Delays for visuals
+                renderer.awaitNextFrame(); // Delays for visuals: at most FRAMES_PER_SECOND frames per second
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
             }
         }
+        combatLog.close();
+        if (recorder != null) {
+            recorder.close();
+        }
         System.out.println("Game over!");
     }
 
@@ -157,99 +139,20 @@ public class Game {
      * Moves player 
     */
     private void movePlayer(int dy, int dx) {
-        int newX = player.getX() + dx; // Calculates potential new X position.
-        int newY = player.getY() + dy; // Calculates potential new Y position.
-
-        // Calls the player's own movePlayer method, which checks validity and updates position.
-        if (player.movePlayer(newX, newY, map)) {
-            // Player successfully moved! Logic here will be handled in the gameLoop().
-        } else {
+        // The simulation calls the player's own movePlayer method, which checks validity and updates position.
+        if (!simulation.movePlayer(dx, dy)) {
             System.out.println("Tou cannot move there!");
         }
     }
 
-    /** 
-     * Fighter turn.
-     * Moves the Fighters (Knights and Monsters). It includes movements and interactions 
-    */
-    private void fightersTurn() {
-        List<Fighter> fightersToRemove = new ArrayList<>(); // List to store fighters that are defeated in this turn.
-        Random rand = new Random();
-
-        // Fighter's movement
-        // Iterates through all active fighters and make them move accordingly with their rules.
-        for (Fighter fighter : fighters) {
-            fighter.move(map); // Calls the polymorphic move() method
-        }
-
-        // Interactions (attack or heal)
-        for (Fighter fighter : fighters) {
-            if (!fighter.isAlive()) {
-                continue; // Skip interactions if the fighter is already defeated
-            }
-            // Checks positions around the fighter for interaction
-            for (int dy = -1; dy <= 1; dy++) {
-                for (int dx = -1; dx <= 1; dx++) {
-                    if (dx == 0 && dy == 0) {
-                        continue; // Skips the fighter's own position.
-                    }
-                    int neighborX = fighter.getX() + dx;
-                    int neighborY = fighter.getY() + dy;
-
-                    // Ensures the neighbor position is within map boundaries.
-                    if (map.isValidPosition(neighborX, neighborY)) {
-                        Entity neighbor = map.getEntityAt(neighborX, neighborY); // Get entity at neighbor position.
-
-                        if (neighbor instanceof Fighter) {
-                            Fighter target = (Fighter) neighbor;
-
-                            if (fighter.getClass().equals(target.getClass())) {
-                                
-                                // Same team - Interaction: Healing
-                                // A fighter can heal if its health is not full (health < 3) and it has medicine.
-                                if (fighter.getHealth() < 3 && fighter.getMedicine() > 0) {
-                                    if (rand.nextBoolean()) { // Random medicine
-                                        fighter.useMedicine();
-                                        target.setMedicine(target.getMedicine() - 1); // Heals the fighter (health increases, medicine decreases for the giver).
-                                        System.out.println(fighter.getSymbol() + " at (" + fighter.getX()  + ", " + fighter.getY() + ") received medicine from " + target.getSymbol() + ". Health: " + fighter.getHealth());
-                                    }
-                                }
-                            } else {
-                                // Opposite team - Interaction: attack
-                                if (fighter.getAttackPower() >= target.getAttackPower()) {
-                                    fighter.attack(target); // Calls the attack method on the attacker.
-                                    if (!target.isAlive()) {
-                                        fightersToRemove.add(target);
-                                    }
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-        }
-
-        // Removes dead Fighters
-        // Iterate through the list of fighters marked for removal and remove them from the main list.
-        for (Fighter deadFighter : fightersToRemove) {
-            fighters.remove(deadFighter);
-            if (deadFighter instanceof Knight) {
-                knightsCount--;
-            } else if (deadFighter instanceof Monster) {
-                monstersCount--;
-            }
-            System.out.println(deadFighter.getSymbol() + " at (" + deadFighter.getX() + ", " + deadFighter.getY() +  ") was defeated!");
-        }
-    }
-
     /** 
      * Checks if the game is over 
     */
     private void checkGameEnd() {
-        if (knightsCount == 0) {
+        if (simulation.getKnightsCount() == 0) {
             System.out.println("All knights have been defeated! Monsters have WON!");
             gameOver = true;
-        } else if (monstersCount == 0) {
+        } else if (simulation.getMonstersCount() == 0) {
             System.out.println("All monsters have been defeated! Knights have WON!");
             gameOver = true;
 
@@ -261,6 +164,7 @@ public class Game {
     */
     private void togglePause() {
         paused = !paused;
+        simulation.recordPause(paused);
         System.out.println(paused ? "Game is on pause." : "Game continues.");
     }
 
@@ -268,21 +172,13 @@ public class Game {
      * Displays info when game is on pause. 
     */
     private void displayPauseInfo() {
-        int totalMonsterHealth = 0;
-        int totalKnightHealth = 0;
-
-        // Calculates total health for each team by iterating through active fighters.
-        for (Fighter fighter : fighters) {
-            if (fighter instanceof Monster) {
-                totalMonsterHealth += fighter.getHealth();
-            } else if (fighter instanceof Knight) {
-                totalKnightHealth += fighter.getHealth();
-            }
-        }
+        // Calculates total health for each team over the active fighters.
+        int totalMonsterHealth = simulation.getTotalHealth(FighterStore.MONSTER);
+        int totalKnightHealth = simulation.getTotalHealth(FighterStore.KNIGHT);
 
         System.out.println("\n--- Game info ---");
-        System.out.println("Active Monsters: " + monstersCount);
-        System.out.println("Active Knights: " + knightsCount);
+        System.out.println("Active Monsters: " + simulation.getMonstersCount());
+        System.out.println("Active Knights: " + simulation.getKnightsCount());
         System.out.println("Total health of Monsters: " + totalMonsterHealth);
         System.out.println("Total health of Knights: " + totalKnightHealth);
         System.out.println("-------------------------------\n");    
@@ -297,29 +193,21 @@ public class Game {
     }
 
     /** 
-     * Returns a list with all active entties (Players and Fighters). 
+     * Draws a frame: the map and the given game information.
+     * Elsewhere the frame starts with the ANSI clear escape; the Windows console is cleared with cls first. 
     */
-    private List<Entity> getAllEntities() {
-        List<Entity> allEntities = new ArrayList<>(fighters);
-        allEntities.add(player);
-        return allEntities;
-    }
-
-    /** 
-     * Clears console 
-    */
-    private void clearConsole() {
+    private void render(String info) {
         try {
-            final String os = System.getProperty("os.name");
-            if (os.contains("Windows")) {
+            if (windows) {
                 new ProcessBuilder("cmd", "/c", "cls").inheritIO().start().waitFor();
-            } else {
-                System.out.print("\\033[H\\033[2J");
-                System.out.flush();
             }
-        } catch (final Exception e) {
+            long start = System.nanoTime();
+            renderer.render(info);
+            metrics.recordRender(System.nanoTime() - start);
+        } catch (final IOException e) {
             System.err.println("exception: " + e);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 }
-
@@ -1,48 +1,67 @@
 /** 
  * This class manages the game logic for the Swing-based Graphical User Interface (GUI).
  * It orchestrates the map, entities, game loop, and user interactions.
+ * The turns are played by a SimulationRunner on its own thread; this class sends it the keystrokes
+ * and draws the snapshots it publishes, FRAMES_PER_SECOND times per second, however long a turn takes.
  */
 
 import java.awt.*;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Random;
+import java.io.IOException;
+import java.nio.file.Path;
 import javax.swing.*;
 
 public class GameGUI extends JFrame {
 
-    private Map map;
-    private Player player;
-    private List<Fighter> fighters;
-    private int knightsCount;
-    private int monstersCount;
+    private SimulationRunner runner; // Plays the turns on its own thread. This class only handles the Swing input and output.
+    private Map map; // Only its size and terrain are read here
+    private BoardSnapshot snapshot; // The last snapshot drawn
+    private int previousPlayerX; // Values of the last snapshot drawn, kept apart because its buffer is reused
+    private int previousPlayerY;
+    private long previousBlockedMoves;
+    private Timer frameTimer; // Draws the newest snapshot on every frame
+    private CombatLog combatLog; // Prints the combat events from its own thread
+    private ReplayRecorder recorder; // Records the game so it can be replayed (see ReplayPlayer), or null
+    private TurnMetrics metrics; // Times the turns and the frames and counts the combat events
     private boolean gameOver;
     private boolean paused;
 
     private BoardPanel boardPanel; // Custom JPanel for drawing the game board
+    private JScrollPane boardScroll; // Viewport over the board, which follows the player
     private JLabel infoLabel;      // Label to display game information (counts, player position)
     private JLabel pauseInfoLabel; // Label to display pause information (total health)
     private JPanel controlPanel;   // Panel for game information and controls
 
     // Constants for rendering (adjust as needed for desired tile size)
-    public static final int TILE_SIZE = 40; // Size of each cell/tile in pixels
+    public static final int TILE_SIZE = 40; // Initial size of each cell/tile in pixels (+ and - zoom in and out)
+    private static final double MAX_SCREEN_SHARE = 0.8; // The viewport takes at most this share of the screen
+    private static final int FRAMES_PER_SECOND = 60;
+    private static final int TICKS_PER_SECOND = 5; // Initial speed of the game ([ and ] halve and double it)
+    private static final int COMBAT_LOG_CAPACITY = 1 << 16; // Events waiting to be printed before new ones are dropped
 
     /**
      * Constructor for the GameGUI class.
      * Initializes the game state and sets up the Swing GUI.
      */
     public GameGUI() {
+        this(null, new TurnMetrics());
+    }
+
+    /**
+     * Constructor for a game that is recorded in replayDirectory (or not recorded if it is null)
+     * and whose turns and frames are measured in metrics.
+     */
+    public GameGUI(Path replayDirectory, TurnMetrics metrics) {
+        this.metrics = metrics;
         // Initialize game state variables
-        fighters = new ArrayList<>();
         gameOver = false;
         paused = false;
 
         // Set up the JFrame (main window)
         setTitle("Knights vs. Monsters");
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE); // Closes operation
-        setResizable(false); // Prevents resizing for simpler layout management
+        setResizable(true); // The board scrolls, so the window can take any size
 
         // Get map dimensions from user via a dialog
         int width = 0;
@@ -73,28 +92,31 @@ public class GameGUI extends JFrame {
         }
 
 
-        // Initialize the Map object.
-        // The Map's getEntityAt method is overridden here to allow it to query entities from Game.
-        map = new Map(width, height) {
-            @Override
-            public Entity getEntityAt(int x, int y) {
-                // Checks if the player is at the given coordinates
-                if (player != null && player.getX() == x && player.getY() == y) {
-                    return player;
-                }
-                // Checks if any fighter (Knight or Monster) is at the given coordinates
-                for (Fighter fighter : fighters) {
-                    if (fighter.getX() == x && fighter.getY() == y) {
-                        return fighter;
-                    }
-                }
-                return null; // No entity found at these coordinates
+        // Initializes the simulation: the map, the player and the fighters (Knights and Monsters).
+        Simulation simulation = null;
+        try {
+            simulation = new Simulation(width, height, System.nanoTime());
+        } catch (IllegalStateException e) {
+            JOptionPane.showMessageDialog(this, "unable to place player. GAME OVER!", "Error", JOptionPane.ERROR_MESSAGE);
+            System.exit(1);
+        }
+        combatLog = new CombatLog(new ConsoleEventSink(System.out), COMBAT_LOG_CAPACITY); // Prints the attacks, heals and defeats of each turn
+        combatLog.setSampling(CombatLog.MOVE, 0); // Moves are not printed
+        simulation.setCombatLog(combatLog);
+        simulation.setMetrics(metrics);
+        if (replayDirectory != null) {
+            try {
+                recorder = new ReplayRecorder(replayDirectory, simulation, ReplayRecorder.DEFAULT_KEYFRAME_INTERVAL);
+                simulation.setRecorder(recorder); // Written from the simulation thread after every turn
+                System.out.println("Recording the game in " + replayDirectory);
+            } catch (IOException e) {
+                System.err.println("The game cannot be recorded: " + e);
             }
-        };
-        map.placingElementsOnMap(); // Initializes terrain elements on the map once.
-
-        // Initializes entities (player, knights, monsters)
-        initializeEntities(width, height);
+        }
+        map = simulation.getMap();
+        runner = new SimulationRunner(simulation, TICKS_PER_SECOND);
+        System.out.println("Seed: " + simulation.getSeed()); // The same seed replays the same game
+        System.out.println("Initial placement of entities: Knights: " + simulation.getKnightsCount() + ", Monsters: " + simulation.getMonstersCount());
 
         // Sets up the GUI components
         setupGUI();
@@ -109,45 +131,17 @@ public class GameGUI extends JFrame {
         setLocationRelativeTo(null); // Centers the window on the screen
         setVisible(true);
 
-        // Initials display update
+        // Initials display update, then the turns and the frames start
+        snapshot = runner.getSnapshot();
+        previousPlayerX = snapshot.getPlayerX();
+        previousPlayerY = snapshot.getPlayerY();
+        previousBlockedMoves = snapshot.getBlockedMoves();
+        boardPanel.setSnapshot(snapshot);
         updateDisplay();
-    }
-
-    /**
-     * Initializes the entities (Knights, Monsters, Player) and places them on the map.
-     */
-    private void initializeEntities(int width, int height) {
-        // Creates and places the player avatar.
-        player = new Player(0, 0); // Initials coordinates are placeholders for placeEntityOnMap
-        if (!map.placeEntityOnMap(player)) {
-            JOptionPane.showMessageDialog(this, "unable to place player. GAME OVER!", "Error", JOptionPane.ERROR_MESSAGE);
-            System.exit(1);
-        }
-
-        // Calculates the maximum number of fighters for each team based on map size.
-        int maxFighters = (width * height) / 15;
-        Random rand = new Random();
-
-        knightsCount = 0;
-        monstersCount = 0;
-
-        // Loops to place Knights and Monsters, balancing their counts.
-        for (int i = 0; i < maxFighters; i++) {
-            if (knightsCount <= monstersCount) {
-                Knight knight = new Knight(0, 0);
-                if (map.placeEntityOnMap(knight)) {
-                    fighters.add(knight);
-                    knightsCount++;
-                }
-            } else {
-                Monster monster = new Monster(0, 0);
-                if (map.placeEntityOnMap(monster)) {
-                    fighters.add(monster);
-                    monstersCount++;
-                }
-            }
-        }
-        System.out.println("Initial placement of entities: Knights: " + knightsCount + ", Monsters: " + monstersCount);
+        followPlayer();
+        runner.start();
+        frameTimer = new Timer(1000 / FRAMES_PER_SECOND, e -> nextFrame());
+        frameTimer.start();
     }
 
     /**
@@ -156,10 +150,19 @@ public class GameGUI extends JFrame {
     private void setupGUI() {
         setLayout(new BorderLayout()); // Uses BorderLayout for main frame
 
-        // Creates the custom drawing panel (BoardPanel)
-        boardPanel = new BoardPanel(map, player, fighters);
-        boardPanel.setPreferredSize(new Dimension(map.getWidth() * TILE_SIZE, map.getHeight() * TILE_SIZE));
-        add(boardPanel, BorderLayout.CENTER); // Adds board to the center of the frame
+        // Creates the custom drawing panel (BoardPanel) inside a scrollable viewport.
+        // The board is as large as the map, but only its visible part is drawn.
+        boardPanel = new BoardPanel(map, metrics);
+        boardScroll = new JScrollPane(boardPanel);
+        boardScroll.setFocusable(false); // Keys go to the frame
+        boardScroll.getVerticalScrollBar().setUnitIncrement(TILE_SIZE);
+        boardScroll.getHorizontalScrollBar().setUnitIncrement(TILE_SIZE);
+        Dimension screen = Toolkit.getDefaultToolkit().getScreenSize();
+        Dimension board = boardPanel.getPreferredSize();
+        boardScroll.getViewport().setPreferredSize(new Dimension(
+                Math.min(board.width, (int) (screen.width * MAX_SCREEN_SHARE)),
+                Math.min(board.height, (int) (screen.height * MAX_SCREEN_SHARE))));
+        add(boardScroll, BorderLayout.CENTER); // Adds board to the center of the frame
 
         // Creates a panel for information labels at the bottom
         controlPanel = new JPanel();
@@ -178,21 +181,49 @@ public class GameGUI extends JFrame {
     }
 
     /**
-     * Updates the display elements (board and info labels).
+     * Shows the newest snapshot of the runner, if there is one: repaints the tiles that changed,
+     * updates the labels, follows the player and reacts to refused moves and to the end of the game.
+     */
+    private void nextFrame() {
+        BoardSnapshot next = runner.getSnapshot(); // From here on, the previous snapshot may be refilled by the runner
+        if (next == snapshot) {
+            return; // Nothing happened since the last frame
+        }
+        boolean playerMoved = next.getPlayerX() != previousPlayerX || next.getPlayerY() != previousPlayerY;
+        boolean moveBlocked = next.getBlockedMoves() != previousBlockedMoves;
+        snapshot = next;
+        previousPlayerX = next.getPlayerX();
+        previousPlayerY = next.getPlayerY();
+        previousBlockedMoves = next.getBlockedMoves();
+
+        boardPanel.setSnapshot(next);
+        if (playerMoved) {
+            followPlayer(); // The viewport follows the player
+        }
+        updateDisplay();
+        if (moveBlocked) {
+            JOptionPane.showMessageDialog(GameGUI.this, "You can't move there!", "Invalid Movement", JOptionPane.WARNING_MESSAGE);
+        }
+        checkGameEnd(); // Checks for game end after the turn's interactions and removals
+    }
+
+    /**
+     * Updates the display elements (info labels) from the current snapshot.
      */
     private void updateDisplay() {
         // Update the main info label
-        infoLabel.setText(String.format("Knights: %d | Monsters: %d | Player: (%d, %d)",
-                knightsCount, monstersCount, player.getX(), player.getY()));
-
-        // Updates the board's internal representation
-        map.updateMap(getAllEntities()); // Ensures Map's char[][] is up-to-date with entity symbols
-
-        // Requests a repaint of the board panel to draw updated state
-        boardPanel.repaint();
+        String speed;
+        switch (snapshot.getMode()) {
+            case SimulationRunner.FAST_FORWARD: speed = "fast-forward"; break;
+            case SimulationRunner.STEP: speed = "step mode"; break;
+            default: speed = snapshot.getTicksPerSecond() + " turns/s";
+        }
+        infoLabel.setText(String.format("Turn: %d | Knights: %d | Monsters: %d | Player: (%d, %d) | %s",
+                snapshot.getTurn(), snapshot.getKnightsCount(), snapshot.getMonstersCount(),
+                snapshot.getPlayerX(), snapshot.getPlayerY(), speed));
 
         // Shows/hides pause info based on game state
-        if (paused) {
+        if (snapshot.isPaused()) {
             displayPauseInfo();
             pauseInfoLabel.setVisible(true);
         } else {
@@ -201,84 +232,26 @@ public class GameGUI extends JFrame {
     }
 
     /**
-     * Executes one game turn (fighters' movement and interactions).
+     * Scrolls the viewport so that the player is in its center (as far as the board's edges allow).
      */
-    private void runGameTurn() {
-        if (gameOver || paused) {
-            return;
-        }
-
-        List<Fighter> fightersToRemove = new ArrayList<>();
-        Random rand = new Random();
-
-        // --- Phase 1: Fighter Movement ---
-        for (Fighter fighter : fighters) {
-            fighter.move(map);
-        }
-
-        // --- Phase 2: Interactions (Attack/Heal) ---
-        // Creates a copy of fighters list to avoid ConcurrentModificationException
-        // if fighters are removed during iteration.
-        List<Fighter> currentFighters = new ArrayList<>(fighters);
-        for (Fighter fighter : currentFighters) {
-            if (!fighter.isAlive()) continue;
-
-            for (int dy = -1; dy <= 1; dy++) {
-                for (int dx = -1; dx <= 1; dx++) {
-                    if (dx == 0 && dy == 0) continue;
-
-                    int neighborX = fighter.getX() + dx;
-                    int neighborY = fighter.getY() + dy;
-
-                    if (map.isValidPosition(neighborX, neighborY)) {
-                        Entity neighbor = map.getEntityAt(neighborX, neighborY);
-
-                        if (neighbor instanceof Fighter) {
-                            Fighter target = (Fighter) neighbor;
-
-                            // Ensures fighters only interact once per pair per turn to avoid double processing
-                            if (fighter.equals(target)) continue; // Don't interact with self
-
-                            if (fighter.getClass().equals(target.getClass())) {
-                                // --- Same Team Interaction (Healing) ---
-                                // If fighter needs healing AND target has medicine AND target is chosen to give.
-                                if (target.getMedicine() > 0 && fighter.getHealth() < 3) {
-                                    if (rand.nextBoolean()) { // 50% chance to give/receive
-                                        fighter.setHealth(fighter.getHealth() + 1); // Receiver's health goes up
-                                        target.setMedicine(target.getMedicine() - 1); // Giver's medicine goes down
-                                        System.out.println(target.getSymbol() + " at (" + target.getX() + "," + target.getY() + ") gave medicine to " + fighter.getSymbol() + " at (" + fighter.getX() + "," + fighter.getY() + "). " + fighter.getSymbol() + " Health: " + fighter.getHealth());
-                                    }
-                                }
-                            } else {
-                                // --- Opposite Team Interaction (Attack) ---
-                                if (fighter.getAttackPower() >= target.getAttackPower()) {
-                                    fighter.attack(target);
-                                    if (!target.isAlive()) {
-                                        fightersToRemove.add(target);
-                                    }
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-        }
+    private void followPlayer() {
+        JViewport viewport = boardScroll.getViewport();
+        Rectangle cell = boardPanel.getCellBounds(snapshot.getPlayerX(), snapshot.getPlayerY());
+        Dimension extent = viewport.getExtentSize();
+        Dimension board = boardPanel.getPreferredSize();
+        int x = Math.max(0, Math.min(cell.x + cell.width / 2 - extent.width / 2, board.width - extent.width));
+        int y = Math.max(0, Math.min(cell.y + cell.height / 2 - extent.height / 2, board.height - extent.height));
+        viewport.setViewPosition(new Point(x, y));
+    }
 
-        // --- Phase 3: Remove Defeated Fighters ---
-        // Removes fighters that were defeated in this turn.
-        for (Fighter deadFighter : fightersToRemove) {
-            if (fighters.contains(deadFighter)) { // Prevents removing already removed fighters
-                fighters.remove(deadFighter);
-                if (deadFighter instanceof Knight) {
-                    knightsCount--;
-                } else if (deadFighter instanceof Monster) {
-                    monstersCount--;
-                }
-                System.out.println(deadFighter.getSymbol() + " at (" + deadFighter.getX() + "," + deadFighter.getY() + ") was defeated!");
-            }
+    /**
+     * Zooms the board in or out, keeping the player in view.
+     */
+    private void zoom(boolean in) {
+        if (in ? boardPanel.zoomIn() : boardPanel.zoomOut()) {
+            boardScroll.getViewport().setViewSize(boardPanel.getPreferredSize()); // Applies the new size now
+            followPlayer();
         }
-        checkGameEnd(); // Checks for game end after processing all interactions and removals.
-        updateDisplay(); // Refreshs GUI after turn
     }
 
     /**
@@ -288,14 +261,20 @@ public class GameGUI extends JFrame {
         if (gameOver) return; // Already game over
 
         String message = null;
-        if (knightsCount == 0) {
+        if (snapshot.getKnightsCount() == 0) {
             message = "All the Knights were defeated! The Monsters won!";
-        } else if (monstersCount == 0) {
+        } else if (snapshot.getMonstersCount() == 0) {
             message = "All the Monsters were defeated! The Knights won!";
         }
 
         if (message != null) {
             gameOver = true;
+            frameTimer.stop();
+            runner.stop();
+            combatLog.close(); // Prints the last events
+            if (recorder != null) {
+                recorder.close();
+            }
             JOptionPane.showMessageDialog(this, message, "End of the Game!", JOptionPane.INFORMATION_MESSAGE);
             // Optionally, prompt to play again or exit
             int choice = JOptionPane.showConfirmDialog(this, "Would you like to play again;", "End of the game", JOptionPane.YES_NO_OPTION);
@@ -310,18 +289,14 @@ public class GameGUI extends JFrame {
     }
 
     /**
-     * Toggles the game's pause state.
+     * Toggles the game's pause state. The runner stops playing turns until it is resumed.
      */
     private void togglePause() {
         paused = !paused;
+        runner.offer(paused ? SimulationRunner.PAUSE : SimulationRunner.RESUME);
         if (paused) {
             JOptionPane.showMessageDialog(this, "Game paused. Type 'p' to resume..", "Pause", JOptionPane.INFORMATION_MESSAGE);
-            displayPauseInfo(); // Updates pause info label immediately
-            pauseInfoLabel.setVisible(true);
-        } else {
-            pauseInfoLabel.setVisible(false);
         }
-        updateDisplay(); // Refreshs GUI
     }
 
     /**
@@ -329,31 +304,10 @@ public class GameGUI extends JFrame {
      * Updates the pauseInfoLabel.
      */
     private void displayPauseInfo() {
-        int totalMonsterHealth = 0;
-        int totalKnightHealth = 0;
-
-        for (Fighter fighter : fighters) {
-            if (fighter instanceof Monster) {
-                totalMonsterHealth += fighter.getHealth();
-            } else if (fighter instanceof Knight) {
-                totalKnightHealth += fighter.getHealth();
-            }
-        }
-
         pauseInfoLabel.setText(String.format("<html><b>--- Pause Information ---</b><br>" +
                 "Total Health Monsters: %d<br>" +
                 "Total Health Knights: %d</html>",
-                totalMonsterHealth, totalKnightHealth));
-    }
-
-    /**
-     * Helper method to get a combined list of all active entities (player and fighters).
-     * Returns a List containing all active Entity objects.
-     */
-    private List<Entity> getAllEntities() {
-        List<Entity> allEntities = new ArrayList<>(fighters);
-        allEntities.add(player);
-        return allEntities;
+                snapshot.getMonstersHealth(), snapshot.getKnightsHealth()));
     }
 
     /**
@@ -364,32 +318,27 @@ public class GameGUI extends JFrame {
         public void keyPressed(KeyEvent e) {
             if (gameOver) return; // Ignores input if game is over
 
-            int playerNewX = player.getX();
-            int playerNewY = player.getY();
-            boolean moved = false;
-
-            // Handles player movement based on key presses
+            // Handles player movement based on key presses; the runner applies them between turns
             if (!paused) {
                 switch (e.getKeyCode()) {
-                    case KeyEvent.VK_W: playerNewY--; moved = true; break;
-                    case KeyEvent.VK_S: playerNewY++; moved = true; break;
-                    case KeyEvent.VK_A: playerNewX--; moved = true; break;
-                    case KeyEvent.VK_D: playerNewX++; moved = true; break;
-                }
-
-                if (moved) {
-                    if (player.movePlayer(playerNewX, playerNewY, map)) {
-                        runGameTurn(); // A player move triggers a game turn
-                    } else {
-                        JOptionPane.showMessageDialog(GameGUI.this, "You can't move there!", "Invalid Movement", JOptionPane.WARNING_MESSAGE);
-                    }
+                    case KeyEvent.VK_W: runner.offer(SimulationRunner.MOVE_UP); break;
+                    case KeyEvent.VK_S: runner.offer(SimulationRunner.MOVE_DOWN); break;
+                    case KeyEvent.VK_A: runner.offer(SimulationRunner.MOVE_LEFT); break;
+                    case KeyEvent.VK_D: runner.offer(SimulationRunner.MOVE_RIGHT); break;
                 }
             }
 
-            // Handles pause/quit keys (always active, even if paused or not a move key)
+            // Handles pause/quit, speed and zoom keys (always active, even if paused or not a move key)
             switch (e.getKeyCode()) {
                 case KeyEvent.VK_P: togglePause(); break;
                 case KeyEvent.VK_Q: System.exit(0); break; // Simple exit on 'q'
+                case KeyEvent.VK_F: runner.offer(SimulationRunner.TOGGLE_FAST_FORWARD); break;
+                case KeyEvent.VK_T: runner.offer(SimulationRunner.TOGGLE_STEP_MODE); break;
+                case KeyEvent.VK_N: runner.offer(SimulationRunner.STEP_ONE); break; // Next turn in step mode
+                case KeyEvent.VK_OPEN_BRACKET: runner.offer(SimulationRunner.SLOWER); break;
+                case KeyEvent.VK_CLOSE_BRACKET: runner.offer(SimulationRunner.FASTER); break;
+                case KeyEvent.VK_PLUS: case KeyEvent.VK_EQUALS: case KeyEvent.VK_ADD: zoom(true); break;
+                case KeyEvent.VK_MINUS: case KeyEvent.VK_SUBTRACT: zoom(false); break;
             }
         }
     }
@@ -0,0 +1,99 @@
+/**
+ * Fast, seedable and splittable random number generator (SplitMix64) used everywhere in the game
+ * instead of java.util.Random.
+ * One seed goes into the game; each subsystem (terrain, placement, fighter stats) gets its own
+ * generator with split(), so adding draws in one subsystem does not change the others.
+ * The state is a single long (getState/setState), so a game can be saved and resumed exactly.
+ *
+ * A generator is not thread-safe. Each thread either uses its own split() generator or current(),
+ * and the turn loop uses the stateless hash() so that its decisions do not depend on thread scheduling.
+ */
+
+public final class GameRandom {
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    // Root generator for code that does not pass a seed; each thread splits its own generator off it once.
+    private static final GameRandom ROOT = new GameRandom(System.nanoTime() ^ System.identityHashCode(GameRandom.class));
+    private static final ThreadLocal<GameRandom> CURRENT = ThreadLocal.withInitial(GameRandom::splitRoot);
+
+    private long state;
+
+    public GameRandom(long seed) {
+        this.state = seed;
+    }
+
+    /**
+     * The next 64 random bits.
+    */
+    public long nextLong() {
+        state += GOLDEN_GAMMA;
+        return mix64(state);
+    }
+
+    /**
+     * A random number in [0, bound). bound must be positive.
+     * Uses a multiply and a shift instead of a division (the bias is below bound / 2^32).
+    */
+    public int nextInt(int bound) {
+        return (int) (((nextLong() >>> 32) * bound) >>> 32);
+    }
+
+    public boolean nextBoolean() {
+        return nextLong() < 0;
+    }
+
+    /**
+     * Skips the next n numbers in O(1), as if nextLong() had been called n times.
+    */
+    public void advance(long n) {
+        state += n * GOLDEN_GAMMA;
+    }
+
+    /**
+     * A new generator whose sequence is independent from this one. Advances this generator once.
+    */
+    public GameRandom split() {
+        return new GameRandom(mix64(nextLong()));
+    }
+
+    // Getters and setters for the state, to save and restore a generator.
+    public long getState() {
+        return state;
+    }
+
+    public void setState(long state) {
+        this.state = state;
+    }
+
+    /**
+     * The generator of the calling thread, for code that has no seeded generator of its own
+     * (for example Knight.move(Map) or new Knight(x, y)). Creates nothing after the first call on a thread.
+    */
+    public static GameRandom current() {
+        return CURRENT.get();
+    }
+
+    private static GameRandom splitRoot() {
+        synchronized (ROOT) {
+            return ROOT.split();
+        }
+    }
+
+    /**
+     * A random number in [0, bound) that depends only on its arguments (a counter-based generator).
+     * Used for decisions that must not depend on the order in which they are taken.
+    */
+    public static int hash(long key, long a, long b, int bound) {
+        long z = mix64(key + a * GOLDEN_GAMMA + b * 0xC2B2AE3D27D4EB4FL);
+        return (int) (((z >>> 32) * bound) >>> 32);
+    }
+
+    /**
+     * The SplitMix64 finalizer: scrambles the bits of z.
+    */
+    public static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -2,43 +2,44 @@
  * Inherits from the Fighter class.
 */
 
-import java.util.Random;
-
 public class Knight extends Fighter {
+    // Moves of a Knight: up, down, left, right
+    static final int[] MOVES_X = {0, 0, -1, 1};
+    static final int[] MOVES_Y = {-1, 1, 0, 0};
+
     public Knight(int x, int y) {
         super(x, y);
         this.symbol = 'K';
     }
 
+    public Knight(int x, int y, GameRandom rand) {
+        super(x, y, rand);
+        this.symbol = 'K';
+    }
+
     @Override
     public void move(Map map) {
-        Random rand = new Random(); // for randomly moving on the map.
-        int newX = this.x;
-        int newY = this.y;
-        int direction = rand.nextInt(4);
+        // for randomly moving on the map, with the thread's generator (no allocation per move).
+        move(map, GameRandom.current().nextInt(MOVES_X.length));
+    }
 
-        switch (direction) {
-            case 0: // up
-                newY--;
-                break;
-            case 1: // down
-                newY++;
-                break;
-            case 2: // left
-                newX--;
-                break;
-            case 3: // right
-                newX++;
-                break;
-        }
+    @Override
+    public byte getTeam() {
+        return FighterStore.KNIGHT;
+    }
+
+    @Override
+    public int getDirectionCount() {
+        return MOVES_X.length;
+    }
 
+    @Override
+    public void move(Map map, int direction) {
         /** 
-         * Checks if the entity move inside map's borders 
-         * by calling the isValidPosition method from the map instance of the Map class. 
+         * Moves only if the new cell is inside map's borders, walkable and empty.
+         * The map checks it and keeps its occupancy grid up to date. A Knight object is not on the map
+         * (the map keeps a copy in its FighterStore), so the map throws an IllegalArgumentException. 
         */
-        if (map.isValidPosition(newX, newY) && map.isFreeSpace(newX, newY)) {
-            this.x = newX;
-            this.y = newY;
-        }
+        map.moveEntity(this, getX() + MOVES_X[direction], getY() + MOVES_Y[direction]);
     }
 }
\ No newline at end of file
@@ -0,0 +1,126 @@
+/**
+ * A histogram of durations in nanoseconds with a fixed, small memory cost, in the style of HdrHistogram:
+ * values are counted in log-linear buckets, SUB_BUCKETS per power of two, so every value is kept with
+ * a relative error below 1 / SUB_BUCKETS (about 3%) from 1 ns up to hundreds of years.
+ * Recording is one atomic increment, so several threads (parallel tiles, the games of a batch) can record
+ * into the same histogram. Reading while others record gives a slightly outdated but usable view.
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class LatencyHistogram implements LatencyHistogramMBean {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS; // 32 buckets per power of two
+
+    private final AtomicLongArray counts = new AtomicLongArray(64 * SUB_BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong(); // Sum of the values, for the mean
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Counts one duration (negative durations count as 0).
+    */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts.incrementAndGet(indexOf(value));
+        count.incrementAndGet();
+        total.addAndGet(value);
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    /**
+     * The bucket of a value: values below SUB_BUCKETS have their own bucket, larger ones share a bucket
+     * with the values that have the same highest SUB_BUCKET_BITS + 1 bits.
+    */
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value); // At least SUB_BUCKET_BITS
+        int shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * The middle of the range of values counted in a bucket.
+    */
+    private static long valueOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowest + ((1L << shift) >> 1);
+    }
+
+    /**
+     * The duration below which the given percentage (0 to 100) of the recorded durations fall, or 0 if none was recorded.
+    */
+    public long getValueAtPercentile(double percentile) {
+        long recorded = count.get();
+        if (recorded == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * recorded));
+        long seen = 0;
+        for (int index = 0; index < counts.length(); index++) {
+            seen += counts.get(index);
+            if (seen >= rank) {
+                return Math.min(valueOf(index), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    // Getters (also the attributes shown through JMX, in microseconds)
+    @Override
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getTotalNanos() {
+        return total.get();
+    }
+
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    public double getMeanNanos() {
+        long recorded = count.get();
+        return recorded > 0 ? (double) total.get() / recorded : 0.0;
+    }
+
+    @Override
+    public double getMeanMicros() {
+        return getMeanNanos() / 1e3;
+    }
+
+    @Override
+    public double getP50Micros() {
+        return getValueAtPercentile(50) / 1e3;
+    }
+
+    @Override
+    public double getP90Micros() {
+        return getValueAtPercentile(90) / 1e3;
+    }
+
+    @Override
+    public double getP99Micros() {
+        return getValueAtPercentile(99) / 1e3;
+    }
+
+    @Override
+    public double getP999Micros() {
+        return getValueAtPercentile(99.9) / 1e3;
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return max.get() / 1e3;
+    }
+}
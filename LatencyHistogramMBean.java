@@ -0,0 +1,19 @@
+/**
+ * The attributes of a LatencyHistogram shown through JMX (for example in JConsole), in microseconds.
+*/
+
+public interface LatencyHistogramMBean {
+    long getCount();
+
+    double getMeanMicros();
+
+    double getP50Micros();
+
+    double getP90Micros();
+
+    double getP99Micros();
+
+    double getP999Micros();
+
+    double getMaxMicros();
+}
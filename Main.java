@@ -2,6 +2,12 @@
  * The Main class calls and runs the game class. 
 */
 
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Scanner;
 import javax.swing.SwingUtilities;
 
@@ -10,8 +16,71 @@ import javax.swing.SwingUtilities;
  * allowing the user to choose between the terminal-based version and the GUI-based (Swing) version.
  */
 public class Main {
+    private static Path replayDirectory; // Set by --record: where the game is recorded (see ReplayRecorder)
+    private static int terrainStyle = TerrainGenerator.SCATTERED; // Set by --terrain: scattered cells or lakes and forests
+    private static int flowInterval; // Set by --flow: turns between refreshes of the fighters' flow field (0 for random walks)
+    private static int cruiseInterval; // Set by --cruise: turns between moves of the fighters far from any enemy (0 for none)
+    private static CombatKernel combatKernel = CombatKernel.SCALAR; // Set by --combat: how the attacks are worked out
+    private static int knightInterval; // Set by --speeds: ticks between two activations of a Knight (0 for normal turns)
+    private static int monsterInterval; // Set by --speeds: the same for a Monster
+    private static int spawnSize; // Set by --chunked: the side of the spawn area of a chunked map (0 for a whole map)
+    private static final TurnMetrics metrics = new TurnMetrics(); // Latencies and counters of the game (see TurnMetrics)
 
     public static void main(String[] args) {
+        long dumpSeconds = 0; // Set by --metrics: how often the metrics are printed, or 0 for never
+        while (args.length > 1 && (args[0].equals("--record") || args[0].equals("--metrics") || args[0].equals("--flow")
+                || args[0].equals("--terrain") || args[0].equals("--chunked")
+                || args[0].equals("--cruise") || args[0].equals("--combat")
+                || args[0].equals("--speeds"))) {
+            if (args[0].equals("--record")) {
+                replayDirectory = Paths.get(args[1]); // Records the game chosen by the other arguments
+            } else if (args[0].equals("--terrain")) {
+                terrainStyle = args[1].equals("noise") ? TerrainGenerator.NOISE : TerrainGenerator.SCATTERED;
+            } else if (args[0].equals("--flow")) {
+                flowInterval = Integer.parseInt(args[1]); // The fighters seek their enemies (see FlowField)
+            } else if (args[0].equals("--cruise")) {
+                cruiseInterval = Integer.parseInt(args[1]); // The fighters far from the fighting cruise (see Simulation)
+            } else if (args[0].equals("--combat")) {
+                combatKernel = args[1].equals("vector") ? CombatKernel.vectorOrScalar() : CombatKernel.SCALAR;
+                if (args[1].equals("vector") && combatKernel == CombatKernel.SCALAR) {
+                    System.err.println("The Vector API is not available (see README), the attacks are worked out one at a time.");
+                }
+            } else if (args[0].equals("--speeds")) {
+                String[] speeds = args[1].split(","); // Event-driven turns (see Simulation.setActionIntervals)
+                knightInterval = Integer.parseInt(speeds[0]);
+                monsterInterval = Integer.parseInt(speeds[speeds.length - 1]);
+            } else if (args[0].equals("--chunked")) {
+                spawnSize = Integer.parseInt(args[1]); // The headless map is made as it is explored (see ChunkCache)
+            } else {
+                dumpSeconds = Long.parseLong(args[1]);
+            }
+            args = Arrays.copyOfRange(args, 2, args.length);
+        }
+        checkOptions(args);
+        metrics.register(args.length > 0 && args[0].startsWith("--") ? args[0].substring(2) : "game");
+        if (dumpSeconds > 0) {
+            metrics.startDump(System.err, dumpSeconds);
+        }
+        if (args.length > 0 && args[0].equals("--replay")) {
+            runReplay(args); // Seeks or verifies a recorded game
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--headless")) {
+            runHeadless(args); // Unattended run without console input or a display
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--resume")) {
+            runResume(args); // Continues a saved headless run
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--batch")) {
+            runBatch(args); // Many unattended games for statistics
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--watch")) {
+            runWatch(args); // Unattended run drawn on the terminal
+            return;
+        }
         Scanner chooserScanner = new Scanner(System.in);
         System.out.println("Choose one of the bellow options:");
         System.out.println("1. Terminal-based game");
@@ -36,12 +105,325 @@ public class Main {
         
         if (choice == 1) {
             System.out.println("Launch Terminal version...");
-            Game terminalGame = new Game(); // Creates a new instance of the core game
+            Game terminalGame = new Game(replayDirectory, metrics); // Creates a new instance of the core game
             terminalGame.start(); // Starts the terminal-specific game loop
         } else { // choice == 2
             System.out.println("Launch GUI version (Swing)...");
             // Launchs the GUI on the Event Dispatch Thread
-            SwingUtilities.invokeLater(() -> new GameGUI());
+            SwingUtilities.invokeLater(() -> new GameGUI(replayDirectory, metrics));
+        }
+    }
+
+    /**
+     * Stops with a usage message if the options are out of range or cannot be combined for the mode in args,
+     * before any game is made.
+    */
+    private static void checkOptions(String[] args) {
+        boolean headless = args.length > 0 && args[0].equals("--headless");
+        if (flowInterval < 0) {
+            optionError("--flow cannot be negative.");
+        }
+        if (cruiseInterval < 0 || cruiseInterval > Simulation.MAX_CRUISE_INTERVAL) {
+            optionError("--cruise must be between 0 and " + Simulation.MAX_CRUISE_INTERVAL + ".");
+        }
+        if ((knightInterval != 0 || monsterInterval != 0) && (knightInterval < 1 || knightInterval > ActivationWheel.MAX_INTERVAL
+                || monsterInterval < 1 || monsterInterval > ActivationWheel.MAX_INTERVAL)) {
+            optionError("--speeds must be two numbers between 1 and " + ActivationWheel.MAX_INTERVAL + ".");
+        }
+        if (spawnSize < 0) {
+            optionError("--chunked cannot be negative.");
+        }
+        if (spawnSize > 0) {
+            // A chunked map does not keep its whole terrain, which flow fields and save files need
+            if (!headless) {
+                optionError("--chunked only works with --headless.");
+            }
+            if (flowInterval > 0) {
+                optionError("--chunked cannot be combined with --flow.");
+            }
+            if (replayDirectory != null) {
+                optionError("--chunked cannot be combined with --record.");
+            }
+            if (args.length > 7) {
+                optionError("A chunked game cannot be saved.");
+            }
+        }
+    }
+
+    private static void optionError(String message) {
+        System.err.println(message);
+        System.err.println("Usage: java Main [--record <replayDirectory>] [--metrics <seconds>] [--terrain scattered|noise]");
+        System.err.println("                 [--flow <turns>] [--cruise <turns>] [--combat scalar|vector]");
+        System.err.println("                 [--speeds <knights>,<monsters>] [--chunked <size>] <mode> ...");
+        System.exit(1);
+    }
+
+    /**
+     * Runs one game without any front end and reports how many turns per second were played.
+     * With an event log file, every attack, heal, death and move is written to it (see BinaryEventSink);
+     * "-" writes no log. With a save file, the game is saved there at the end (see SaveFile) and can be
+     * continued with --resume.
+     * Usage: java Main --headless <width> <height> [seed] [maxTurns] [threads] [eventLogFile|-] [saveFile]
+     */
+    private static void runHeadless(String[] args) {
+        if (args.length < 3) {
+            System.err.println("Usage: java Main --headless <width> <height> [seed] [maxTurns] [threads] [eventLogFile|-] [saveFile]");
+            System.exit(1);
+        }
+        int width = Integer.parseInt(args[1]);
+        int height = Integer.parseInt(args[2]);
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : System.nanoTime();
+        long maxTurns = args.length > 4 ? Long.parseLong(args[4]) : 10_000;
+        int threads = args.length > 5 ? Integer.parseInt(args[5]) : 1;
+
+        long setupStart = System.nanoTime();
+        Simulation simulation = new Simulation(width, height, seed, terrainStyle, spawnSize,
+                ChunkCache.DEFAULT_MAX_RESIDENT);
+        long setupEnd = System.nanoTime();
+        System.out.printf("Map %dx%d, seed %d, %d thread(s)%n", width, height, seed, threads);
+        System.out.printf("Setup: %.3f s%n", (setupEnd - setupStart) / 1e9);
+        play(simulation, maxTurns, threads, args.length > 6 ? args[6] : "-", args.length > 7 ? args[7] : null);
+        ChunkCache chunks = simulation.getMap().getChunks();
+        if (chunks != null) {
+            System.out.printf("Chunks: %d resident, %d made, %d dropped%n", chunks.getResidentCount(),
+                    chunks.getMadeCount(), chunks.getDroppedCount());
+        }
+    }
+
+    /**
+     * Loads a game saved by --headless or --resume and plays it further, reporting like --headless.
+     * Usage: java Main --resume <saveFile> [maxTurns] [threads] [eventLogFile|-] [newSaveFile]
+     */
+    private static void runResume(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: java Main --resume <saveFile> [maxTurns] [threads] [eventLogFile|-] [newSaveFile]");
+            System.exit(1);
+        }
+        long maxTurns = args.length > 2 ? Long.parseLong(args[2]) : 10_000;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+
+        long loadStart = System.nanoTime();
+        Simulation simulation = null;
+        try {
+            simulation = SaveFile.load(Paths.get(args[1]));
+        } catch (IOException e) {
+            System.err.println("Cannot load the game: " + e.getMessage());
+            System.exit(1);
+        }
+        long loadEnd = System.nanoTime();
+        Map map = simulation.getMap();
+        System.out.printf("Map %dx%d, seed %d, turn %d, %d fighters, %d thread(s)%n", map.getWidth(), map.getHeight(),
+                simulation.getSeed(), simulation.getTurn(), simulation.getFighters().size(), threads);
+        System.out.printf("Load: %.3f s%n", (loadEnd - loadStart) / 1e9);
+        play(simulation, maxTurns, threads, args.length > 4 ? args[4] : "-", args.length > 5 ? args[5] : null);
+    }
+
+    /**
+     * Plays up to maxTurns turns of a headless game and prints the results, with an optional event log
+     * and an optional save file written at the end ("-" and null mean none).
+     */
+    private static void play(Simulation simulation, long maxTurns, int threads, String eventLogFile, String saveFile) {
+        if (flowInterval > 0) {
+            simulation.setFlowInterval(flowInterval); // Before the recorder saves its first keyframe
+        }
+        if (cruiseInterval > 0) {
+            simulation.setCruiseInterval(cruiseInterval); // A resumed game keeps its own otherwise
+        }
+        if (knightInterval > 0) {
+            simulation.setActionIntervals(knightInterval, monsterInterval);
+        }
+        simulation.setCombatKernel(combatKernel);
+        CombatLog combatLog = null;
+        if (!eventLogFile.equals("-")) {
+            try {
+                combatLog = new CombatLog(new BinaryEventSink(Paths.get(eventLogFile)), 1 << 20);
+            } catch (IOException e) {
+                System.err.println("Cannot write the event log: " + e);
+                System.exit(1);
+            }
+        }
+        ReplayRecorder recorder = null;
+        if (replayDirectory != null) {
+            try {
+                recorder = new ReplayRecorder(replayDirectory, simulation, ReplayRecorder.DEFAULT_KEYFRAME_INTERVAL);
+            } catch (IOException e) {
+                System.err.println("Cannot record the game: " + e);
+                System.exit(1);
+            }
+        }
+        simulation.setParallelism(threads);
+        simulation.setCombatLog(combatLog);
+        simulation.setRecorder(recorder);
+        simulation.setMetrics(metrics);
+
+        long runStart = System.nanoTime();
+        long turns = simulation.runUntilDone(maxTurns);
+        long runEnd = System.nanoTime();
+        if (combatLog != null) {
+            combatLog.close(); // Writes the events still in the ring
+        }
+        if (recorder != null) {
+            recorder.close();
+        }
+
+        double seconds = (runEnd - runStart) / 1e9;
+        System.out.printf("Turns: %d in %.3f s (%.1f turns/s)%n", turns, seconds, seconds > 0 ? turns / seconds : 0.0);
+        System.out.printf("Knights: %d, Monsters: %d%s%n", simulation.getKnightsCount(), simulation.getMonstersCount(),
+                simulation.isDone() ? " (game over)" : "");
+        if (combatLog != null) {
+            System.out.printf("Events: %d attacks, %d heals, %d deaths, %d moves (%d dropped)%n",
+                    combatLog.getRecorded(CombatLog.ATTACK), combatLog.getRecorded(CombatLog.HEAL),
+                    combatLog.getRecorded(CombatLog.DEATH), combatLog.getRecorded(CombatLog.MOVE), combatLog.getDropped());
+        }
+        System.out.print(metrics.format());
+        if (saveFile != null) {
+            try {
+                long saveStart = System.nanoTime();
+                SaveFile.save(simulation, Paths.get(saveFile));
+                System.out.printf("Saved turn %d to %s in %.3f s%n", simulation.getTurn(), saveFile,
+                        (System.nanoTime() - saveStart) / 1e9);
+            } catch (IOException e) {
+                System.err.println("Cannot save the game: " + e.getMessage());
+                System.exit(1);
+            }
+        }
+    }
+
+    /**
+     * Plays many games on all the cores and prints the win rates, game lengths, survivors and kills per map size.
+     * The sizes are used in turn (game i has the seed firstSeed + i). With a results file, every game is written
+     * to it as soon as it ends, as JSON if the file name ends with .json and as CSV otherwise.
+     * Usage: java Main --batch <games> <width>x<height>[,<width>x<height>...] [firstSeed] [maxTurns] [threads] [resultsFile]
+     */
+    private static void runBatch(String[] args) {
+        if (args.length < 3) {
+            System.err.println("Usage: java Main --batch <games> <width>x<height>[,<width>x<height>...] [firstSeed] [maxTurns] [threads] [resultsFile]");
+            System.exit(1);
+        }
+        int games = Integer.parseInt(args[1]);
+        String[] sizes = args[2].split(",");
+        int[] widths = new int[sizes.length];
+        int[] heights = new int[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            String[] size = sizes[i].split("x");
+            widths[i] = Integer.parseInt(size[0]);
+            heights[i] = Integer.parseInt(size[1]);
+        }
+        long firstSeed = args.length > 3 ? Long.parseLong(args[3]) : 1;
+        long maxTurns = args.length > 4 ? Long.parseLong(args[4]) : 10_000;
+        int threads = args.length > 5 ? Integer.parseInt(args[5]) : Runtime.getRuntime().availableProcessors();
+
+        BatchRunner batch = new BatchRunner(widths, heights, games, firstSeed, maxTurns, threads);
+        batch.setMetrics(metrics);
+        batch.setFlowInterval(flowInterval);
+        batch.setCruiseInterval(cruiseInterval);
+        batch.setCombatKernel(combatKernel);
+        batch.setActionIntervals(knightInterval, monsterInterval);
+        batch.setTerrainStyle(terrainStyle);
+        try (Writer results = args.length > 6 ? Files.newBufferedWriter(Paths.get(args[6])) : null) {
+            if (results != null) {
+                batch.setOutput(results, args[6].endsWith(".json") ? BatchRunner.JSON : BatchRunner.CSV);
+            }
+            batch.run();
+        } catch (IOException e) {
+            System.err.println("Cannot write the results: " + e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        batch.printSummary(System.out);
+        System.out.print(metrics.format());
+    }
+
+    /**
+     * Reads a game recorded with --record.
+     * "verify" plays the whole recording again and checks that every turn gives the recorded state;
+     * a turn number rebuilds the game at that turn from the nearest keyframe, and can save it (see SaveFile)
+     * to continue it with --resume.
+     * Usage: java Main --replay <replayDirectory> verify [threads]
+     *        java Main --replay <replayDirectory> <turn> [saveFile]
+     */
+    private static void runReplay(String[] args) {
+        if (args.length < 3) {
+            System.err.println("Usage: java Main --replay <replayDirectory> verify [threads]");
+            System.err.println("       java Main --replay <replayDirectory> <turn> [saveFile]");
+            System.exit(1);
+        }
+        try {
+            ReplayPlayer replay = new ReplayPlayer(Paths.get(args[1]));
+            System.out.printf("Replay of a %dx%d map, seed %d: turns %d to %d, %d player moves, %d pauses, %d keyframes%n",
+                    replay.getWidth(), replay.getHeight(), replay.getSeed(), replay.getFirstTurn(), replay.getLastTurn(),
+                    replay.getMoveCount(), replay.getPauseCount(), replay.getKeyframeCount());
+            long start = System.nanoTime();
+            if (args[2].equals("verify")) {
+                int threads = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+                long mismatch = replay.verify(threads);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                if (mismatch < 0) {
+                    System.out.printf("Every turn played as recorded (%d thread(s), %.3f s).%n", threads, seconds);
+                } else {
+                    System.out.printf("Turn %d did not play as recorded (%d thread(s)).%n", mismatch, threads);
+                    System.exit(2);
+                }
+                return;
+            }
+            long turn = Long.parseLong(args[2]);
+            Simulation simulation = replay.seek(turn, 1);
+            System.out.printf("Turn %d rebuilt in %.3f s%s: Knights: %d, Monsters: %d%s%n", turn, (System.nanoTime() - start) / 1e9,
+                    replay.isPaused(turn) ? " (paused)" : "", simulation.getKnightsCount(), simulation.getMonstersCount(),
+                    simulation.isDone() ? " (game over)" : "");
+            if (args.length > 3) {
+                SaveFile.save(simulation, Paths.get(args[3]));
+                System.out.println("Saved turn " + turn + " to " + args[3]);
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot read the replay: " + e.getMessage());
+            System.exit(1);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Plays one game on its own and draws it on the terminal, redrawing only the cells that changed (ANSI escapes).
+     * Usage: java Main --watch <width> <height> [seed] [framesPerSecond]
+     */
+    private static void runWatch(String[] args) {
+        if (args.length < 3) {
+            System.err.println("Usage: java Main --watch <width> <height> [seed] [framesPerSecond]");
+            System.exit(1);
+        }
+        int width = Integer.parseInt(args[1]);
+        int height = Integer.parseInt(args[2]);
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : System.nanoTime();
+        int framesPerSecond = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+
+        Simulation simulation = new Simulation(width, height, seed, terrainStyle);
+        simulation.setMetrics(metrics);
+        simulation.setFlowInterval(flowInterval);
+        simulation.setCruiseInterval(cruiseInterval);
+        simulation.setCombatKernel(combatKernel);
+        simulation.setActionIntervals(knightInterval, monsterInterval);
+        TerminalRenderer renderer = new TerminalRenderer(simulation.getMap(), TerminalRenderer.standardOutput(),
+                TerminalRenderer.DIFF, framesPerSecond);
+        try {
+            while (true) {
+                long start = System.nanoTime();
+                renderer.render("Seed " + seed + ", turn " + simulation.getTurn() + ": Knights: " + simulation.getKnightsCount()
+                        + ", Monsters: " + simulation.getMonstersCount() + "\n");
+                metrics.recordRender(System.nanoTime() - start);
+                if (simulation.isDone()) {
+                    break;
+                }
+                renderer.awaitNextFrame();
+                simulation.step();
+            }
+        } catch (IOException e) {
+            System.err.println("exception: " + e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 }
@@ -2,26 +2,137 @@
  * Map class represents the game's world. 
  * It handles everything related to the physical layout of the world, 
  * such as its size, the types of terrain and where the game entities are located.
- * There are no setters for heigth and width, as map's directions will be set via mapDimensionsArray. 
+ * There are no setters for heigth and width, as map's directions will be set via the terrain array. 
+ * It has two layers: the terrain, which never changes after the map is created, and the occupancy grid
+ * on top of it, which is updated cell by cell when an entity is placed, moves or is defeated. 
+ * The fighters of each team are also counted per region of 32 by 32 cells, so that the turns can tell
+ * where enemies are near each other without looking at the cells. 
+ * A chunked map keeps both layers in a ChunkCache instead, made 64 by 64 cells at a time when they are
+ * first looked at, so that maps far larger than the memory can be played. 
 */
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Random;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 public class Map {
-    private char[][] mapDimensionsArray; // A 2D array of characters (earth, water, trees). It holds map's layout.
+    private TerrainGrid terrain; // The terrain types (EARTH, TREES, WATER), bit-packed with a passability bitmap. It holds map's layout.
     private int width; // Stores the width of the map
     private int height; // Stores the heigth of the map
-    private Random rand; // An instance of the random class. For randomly placing elements on the map (earth, water, trees or entities).
+    private GameRandom rand; // For randomly placing elements on the map (earth, water, trees or entities).
+    private int[] occupants; // A flat width * height grid with who stands on each cell: EMPTY, PLAYER or fighter slot + 1.
+    private FighterStore fighters; // The Knights and Monsters on the map, stored as primitive columns.
+    private FreeCellIndex freeCells; // The walkable and empty cells, for picking a random free cell in O(1).
+    private Player player; // The player's avatar, once it has been placed.
+    private MapListener listener; // Told about every cell whose content changes, or null.
+    private byte[] displayBuffer; // Reused by display() for every frame
+    private ChunkCache chunks; // Both layers of a chunked map, or null (terrain, occupants and freeCells are then null)
+    private int spawnX; // A chunked map places its entities in the square of spawnSize cells starting at (spawnX, spawnY)
+    private int spawnY;
+    private int spawnSize;
+    private AtomicIntegerArray regionTeams; // For each region: its Knights + (its Monsters << 16), or null for a chunked map
+    private int regionsAcross; // Number of region columns
+
+    public static final byte EARTH = 0; // Terrain types
+    public static final byte TREES = 1;
+    public static final byte WATER = 2;
+
+    public static final int EMPTY = 0; // Occupancy grid value of an empty cell
+    public static final int PLAYER = -1; // Occupancy grid value of the player's cell
+    public static final int REGION_SHIFT = 5;
+    public static final int REGION_SIZE = 1 << REGION_SHIFT; // Side of the regions whose fighters are counted by team
+    private static final int PLACEMENT_TRIES = 100; // Random cells a chunked map tries before giving up a placement
 
     // Constructor that is called when creating a new Map object
     public Map(int width, int height) {
+        this(width, height, GameRandom.current().split());
+    }
+
+    // Constructor for a reproducible map: the same seed gives the same terrain and placements.
+    public Map(int width, int height, long seed) {
+        this(width, height, new GameRandom(seed));
+    }
+
+    // Constructor for a reproducible map that draws from the given generator.
+    public Map(int width, int height, GameRandom rand) {
+        this(width, height, rand, TerrainGenerator.SCATTERED);
+    }
+
+    // Constructor for a reproducible map with scattered terrain or lakes and forests (see TerrainGenerator).
+    public Map(int width, int height, GameRandom rand, int terrainStyle) {
         this.width = width;
         this.height = height;
-        this.mapDimensionsArray = new char[width][height]; // Initializes the 2D array
-        this.rand = new Random(); // Initializes the Random object
-        placingElementsOnMap(); // Calling the method for initialize map with terrain types.
+        this.terrain = new TerrainGrid(width, height); // Initializes the terrain layer
+        this.rand = rand; // Initializes the random generator
+        this.occupants = new int[width * height]; // Initializes the occupancy grid with every cell empty
+        this.fighters = new FighterStore(0);
+        this.freeCells = new FreeCellIndex(width * height);
+        initRegions();
+        placingElementsOnMap(terrainStyle); // Calling the method for initialize map with terrain types.
+    }
+
+    /** 
+     * Constructor for a chunked map (see ChunkCache): nothing is made until it is looked at, and at most
+     * maxResident chunks nobody stands on are kept. The terrain is the same as that of the map made with the
+     * same generator and terrain style by the constructor above. The entities are placed on random free cells
+     * of the square of spawnSize cells in the middle of the map, found by trying random cells.
+     * A chunked map has no TerrainGrid (getTerrain returns null) and does not count its free cells. 
+    */
+    public Map(int width, int height, GameRandom rand, int terrainStyle, int spawnSize, int maxResident) {
+        if (spawnSize < 1 || spawnSize > Math.min(width, height)) {
+            throw new IllegalArgumentException("The spawn area must fit in the map.");
+        }
+        this.width = width;
+        this.height = height;
+        this.rand = rand;
+        this.fighters = new FighterStore(0);
+        this.chunks = new ChunkCache(width, height, new TerrainGenerator(rand.nextLong(), terrainStyle), maxResident);
+        this.spawnX = (width - spawnSize) / 2;
+        this.spawnY = (height - spawnSize) / 2;
+        this.spawnSize = spawnSize;
+    }
+
+    /** 
+     * Constructor for a saved map (see SaveFile): the terrain, the fighters with their positions and the player
+     * (or null) are given, and the occupancy grid and the free cells are rebuilt from them.
+     * The free cells are listed in cell order, so entities placed later may take other cells than in the saved game.
+     * Throws IllegalArgumentException if an entity stands outside the map, on an obstacle or on another entity. 
+    */
+    Map(TerrainGrid terrain, FighterStore fighters, Player player, GameRandom rand) {
+        this.width = terrain.getWidth();
+        this.height = terrain.getHeight();
+        this.terrain = terrain;
+        this.rand = rand;
+        this.occupants = new int[width * height];
+        this.fighters = fighters;
+        this.freeCells = new FreeCellIndex(width * height);
+        initRegions();
+        for (int slot = 0; slot < fighters.size(); slot++) {
+            occupy(fighters.x[slot], fighters.y[slot], slot + 1);
+            countInRegion(fighters.team[slot], fighters.x[slot], fighters.y[slot], 1);
+        }
+        if (player != null) {
+            occupy(player.getX(), player.getY(), PLAYER);
+            this.player = player;
+        }
+        // The free cells are the walkable cells nobody stands on, read 64 at a time from the passability bitmap.
+        long[] passable = terrain.passable;
+        for (int word = 0; word < passable.length; word++) {
+            for (long bits = passable[word]; bits != 0; bits &= bits - 1) {
+                int cell = (word << 6) + Long.numberOfTrailingZeros(bits);
+                if (occupants[cell] == EMPTY) {
+                    freeCells.add(cell);
+                }
+            }
+        }
+    }
+
+    /** 
+     * Puts an occupant on the occupancy grid of a saved map, after checking that it can stand there. 
+    */
+    private void occupy(int x, int y, int occupant) {
+        if (!isValidPosition(x, y) || !isFreeSpace(x, y) || occupants[cellIndex(x, y)] != EMPTY) {
+            throw new IllegalArgumentException("No entity can stand at (" + x + "," + y + ").");
+        }
+        occupants[cellIndex(x, y)] = occupant;
     }
 
     // Getters
@@ -34,35 +145,21 @@ public class Map {
     }
 
     /** 
-     * Fills the mapDimensionsArray with terrain types [earth (.), water (~) and trees (%)].
+     * Fills the terrain layer with terrain types [earth (.), water (~) and trees (%)].
      * It is private as it is an internal helper method called by the constructor.
-     * Random class is used for randomly place each element on the map. 
+     * One number of the map's GameRandom seeds a TerrainGenerator, which fills the rows on all cores. 
     */
-    public void placingElementsOnMap() {
-        // The elements cannot be placed out of the 2D array height or width.
-        for (int i = 0; i < height; i++) {
-            for (int j = 0; j < width; j++) {
-                int elementType = rand.nextInt(10); // Chooses a random number between 0-9.
-                if (elementType < 7) { // 70% chance for a cell to be earth
-                    mapDimensionsArray[i][j] = '.'; // Then at the specific coordinate the earth element is placed
-                } else if (elementType < 9) { // 20% chance for a cell to be trees
-                    mapDimensionsArray[i][j] = '%'; // Then at the specific coordinate the trees element is placed
-                } else { // 10% chance for a cell to be water
-                    mapDimensionsArray[i][j] = '~'; // Then at the specific coordinate the water element is placed
-                }
-            }
-        }
+    private void placingElementsOnMap(int terrainStyle) {
+        new TerrainGenerator(rand.nextLong(), terrainStyle).fill(terrain);
+        freeCells.addAll(terrain.passable); // Nobody stands on the map yet, so every earth cell is free
     }
 
     /** 
      * Checks if a gives (x,y) coordinate pair falls within the boundaries of the map.
     */
     public boolean isValidPosition(int x, int y) {
-        if (x >= 0 && x < width && y >= 0 && y < height) {
-            return true;
-        } else {
-            return false;
-        }
+        // Unsigned comparisons: negative coordinates become huge numbers and fail the check as well.
+        return Integer.compareUnsigned(x, width) < 0 && Integer.compareUnsigned(y, height) < 0;
     }
 
     /** 
@@ -70,72 +167,415 @@ public class Map {
      * (an entity can move on earth) 
     */
     public boolean isFreeSpace(int x, int y) {
-        return mapDimensionsArray[y][x] != '~' && mapDimensionsArray[y][x] != '%';
+        if (chunks != null) {
+            return chunks.isPassable(x, y); // Makes the chunk if it is not there
+        }
+        return terrain.isPassable(x, y); // One word lookup in the passability bitmap
     }
 
     /** 
-     * Places an entity on the map on a random available (empty and not on an obstacle) spot on the map. 
+     * Places an entity on the map on a random available (empty and not on an obstacle) spot on the map.
+     * A Player becomes the map's player. A Knight or Monster object is copied into the map's FighterStore
+     * (getEntityAt then returns a FighterView of the stored fighter); the object itself stays off the map. 
     */
     public boolean placeEntityOnMap(Entity entity) {
-        // It picks a random starting point to begin searching for a free spot.
-        int startX = rand.nextInt(width);
-        int startY = rand.nextInt(height);
-
-        for (int i = 0; i < width * height; i++) { // width * height is the total number of cells on the map
-            // Visits every cell of the map starting from a random point and wrapping arround
-            int currentX = (startX + i % width) % width;
-            int currentY = (startY + i / width) % height;
-        
-            // Checks if the terrain at (currentX, currentY) is not water or trees
-            // Checks if there is already another entity at the specific position
-            if (isFreeSpace(currentX, currentY) && getEntityAt(currentX, currentY) == null) {
-                // If a suitable spot is found, the entity's coordinates are updated.
-                entity.setX(currentX);
-                entity.setY(currentY);
-                return true;
+        if (entity instanceof FighterView) {
+            return false; // Already stored on a map
+        }
+        long position = takeFreeCell();
+        if (position < 0) {
+            return false; // No free space found
+        }
+        // If a suitable spot is found, the entity's coordinates are updated and the cell is marked as taken.
+        int x = (int) position;
+        int y = (int) (position >>> 32);
+        entity.setX(x);
+        entity.setY(y);
+        if (entity instanceof Player) {
+            player = (Player) entity;
+            setOccupant(x, y, PLAYER);
+        } else {
+            Fighter fighter = (Fighter) entity;
+            int slot = fighters.add(fighter.getTeam(), x, y, fighter.getHealth(),
+                    fighter.getAttackPower(), fighter.getDefence(), fighter.getMedicine());
+            setOccupant(x, y, slot + 1);
+            countInRegion(fighter.getTeam(), x, y, 1);
+        }
+        changed(x, y);
+        return true;
+    }
+
+    /** 
+     * Places a new fighter with the given stats on a random available spot.
+     * Returns its slot in the FighterStore, or -1 if there is no free space. 
+    */
+    public int placeFighter(byte team, int health, int attackPower, int defence, int medicine) {
+        long position = takeFreeCell();
+        if (position < 0) {
+            return -1;
+        }
+        int x = (int) position;
+        int y = (int) (position >>> 32);
+        int slot = fighters.add(team, x, y, health, attackPower, defence, medicine);
+        setOccupant(x, y, slot + 1);
+        countInRegion(team, x, y, 1);
+        changed(x, y);
+        return slot;
+    }
+
+    /** 
+     * Places all the fighters of batch (their teams and stats; their positions are ignored) on random
+     * available spots in one call, in the order of the batch.
+     * Stops when the map has no free space left. Returns how many fighters were placed. 
+    */
+    public int placeFighters(FighterStore batch) {
+        int count = chunks != null ? batch.size() : Math.min(batch.size(), freeCells.size());
+        fighters.ensureCapacity(fighters.size() + count);
+        for (int i = 0; i < count; i++) {
+            long position = takeFreeCell();
+            if (position < 0) {
+                return i; // Only on a chunked map, whose spawn area can be full
             }
+            int x = (int) position;
+            int y = (int) (position >>> 32);
+            int slot = fighters.add(batch.team[i], x, y, batch.health[i],
+                    batch.attackPower[i], batch.defence[i], batch.medicine[i]);
+            setOccupant(x, y, slot + 1);
+            countInRegion(batch.team[i], x, y, 1);
+            changed(x, y);
         }
-        return false; // No free space found
+        return count;
     }
 
     /** 
-     * Returns the entity object that is currently at the specified (x,y) coordinates
-     * Returns null if a position does not exists. 
-     * Here null is a placeholder as this function is managed by the Game class. 
+     * Takes a random free cell for a new entity and returns its position as y << 32 | x, or -1 if none was found.
+     * A chunked map tries up to PLACEMENT_TRIES random cells of its spawn area. 
+    */
+    private long takeFreeCell() {
+        if (chunks == null) {
+            int cell = freeCells.takeRandom(rand);
+            return cell < 0 ? -1 : (long) (cell / width) << 32 | cell % width;
+        }
+        for (int i = 0; i < PLACEMENT_TRIES; i++) {
+            int x = spawnX + rand.nextInt(spawnSize);
+            int y = spawnY + rand.nextInt(spawnSize);
+            if (canMoveTo(x, y)) {
+                return (long) y << 32 | x;
+            }
+        }
+        return -1;
+    }
+
+    /** 
+     * Number of cells an entity could be placed on (walkable and empty), or -1 for a chunked map. 
+    */
+    public int getFreeCellCount() {
+        return chunks != null ? -1 : freeCells.size();
+    }
+
+    /** 
+     * Returns the entity that is currently at the specified (x,y) coordinates:
+     * the player, a FighterView of the fighter standing there, or null if a position does not exists or nobody stands there. 
     */
     public Entity getEntityAt(int x, int y) {
-        return null;
+        if (!isValidPosition(x, y)) {
+            return null;
+        }
+        int occupant = getOccupant(x, y);
+        if (occupant == PLAYER) {
+            return player;
+        }
+        return occupant == EMPTY ? null : fighters.view(occupant - 1);
     }
 
-    List<Entity> entities = new ArrayList<>();
     /** 
-     * Updates map with current enities' positions. 
+     * Returns the FighterStore slot of the fighter at (x,y), or -1 if there is no fighter there.
+     * Unlike getEntityAt it creates no object, so it is the one used by the turn loop. 
     */
-    public void updateMap(List<Entity> entities) {
-        for (Entity entity : entities) {
-            if (isValidPosition(entity.getX(), entity.getY())) {
-                mapDimensionsArray[entity.getY()][entity.getX()] = entity.getSymbol();
+    public int getFighterAt(int x, int y) {
+        if (!isValidPosition(x, y)) {
+            return -1;
+        }
+        return getOccupant(x, y) - 1; // EMPTY (0) gives -1, PLAYER (-1) gives -2
+    }
+
+    /** 
+     * Checks if an entity is already standing at (x,y). 
+    */
+    public boolean isOccupied(int x, int y) {
+        return isValidPosition(x, y) && getOccupant(x, y) != EMPTY;
+    }
+
+    /** 
+     * Checks if an entity can move to (x,y): inside the map, walkable and empty. 
+    */
+    public boolean canMoveTo(int x, int y) {
+        return isValidPosition(x, y) && isFreeSpace(x, y) && getOccupant(x, y) == EMPTY;
+    }
+
+    /** 
+     * Moves the map's player or a stored fighter (through its FighterView) to (newX, newY)
+     * if the target cell is inside the map, is walkable and is empty.
+     * Returns true if the entity moved.
+     * A Knight or Monster object is never on the map itself (placeEntityOnMap stores a copy), so moving
+     * one throws an IllegalArgumentException; move the FighterView from getEntityAt instead. 
+    */
+    public boolean moveEntity(Entity entity, int newX, int newY) {
+        if (entity instanceof FighterView) {
+            return moveFighter(((FighterView) entity).getSlot(), newX, newY);
+        }
+        if (entity instanceof Fighter) {
+            throw new IllegalArgumentException("A " + entity.getClass().getSimpleName()
+                    + " is not on the map; move the FighterView from getEntityAt instead.");
+        }
+        if (entity != player || !canMoveTo(newX, newY)) {
+            return false;
+        }
+        int oldX = player.getX();
+        int oldY = player.getY();
+        setOccupant(oldX, oldY, EMPTY); // Frees the old cell
+        player.setX(newX);
+        player.setY(newY);
+        setOccupant(newX, newY, PLAYER);
+        if (freeCells != null) {
+            freeCells.move(cellIndex(oldX, oldY), cellIndex(newX, newY));
+        }
+        changed(oldX, oldY);
+        changed(newX, newY);
+        return true;
+    }
+
+    /** 
+     * Moves the fighter at slot to (newX, newY) if it can move there.
+     * Keeps the occupancy grid and the free cells up to date: the old cell is cleared and the new one is taken. 
+    */
+    public boolean moveFighter(int slot, int newX, int newY) {
+        if (!canMoveTo(newX, newY)) {
+            return false;
+        }
+        int oldX = fighters.x[slot];
+        int oldY = fighters.y[slot];
+        setOccupant(oldX, oldY, EMPTY);
+        fighters.x[slot] = newX;
+        fighters.y[slot] = newY;
+        setOccupant(newX, newY, slot + 1);
+        if (freeCells != null) {
+            freeCells.move(cellIndex(oldX, oldY), cellIndex(newX, newY));
+        }
+        if (((oldX ^ newX) | (oldY ^ newY)) >>> REGION_SHIFT != 0) { // Into another region
+            countInRegion(fighters.team[slot], oldX, oldY, -1);
+            countInRegion(fighters.team[slot], newX, newY, 1);
+        }
+        changed(oldX, oldY);
+        changed(newX, newY);
+        return true;
+    }
+
+    /** 
+     * Removes the fighter at slot from the map (for example when it is defeated).
+     * The FighterStore moves its last fighter into the freed slot, so the grid is pointed at the new slot. 
+    */
+    public void removeFighter(int slot) {
+        int x = fighters.x[slot];
+        int y = fighters.y[slot];
+        setOccupant(x, y, EMPTY);
+        if (freeCells != null) {
+            freeCells.add(cellIndex(x, y));
+        }
+        countInRegion(fighters.team[slot], x, y, -1);
+        changed(x, y);
+        int movedFrom = fighters.remove(slot);
+        if (movedFrom >= 0) {
+            setOccupant(fighters.x[slot], fighters.y[slot], slot + 1);
+        }
+    }
+
+    /** 
+     * Removes the player or a stored fighter (through its FighterView) from the map. 
+    */
+    public void removeEntity(Entity entity) {
+        if (entity instanceof FighterView) {
+            removeFighter(((FighterView) entity).getSlot());
+        } else if (entity == player) {
+            setOccupant(player.getX(), player.getY(), EMPTY);
+            if (freeCells != null) {
+                freeCells.add(cellIndex(player.getX(), player.getY()));
             }
+            changed(player.getX(), player.getY());
+            player = null;
         }
     }
 
     /** 
-     * Displays the current state of the map on the console. 
+     * Tells the listener that what is drawn at (x,y) changed without the map knowing it
+     * (for example the Simulation changed the health of the fighter standing there). 
     */
-    public void display() {
-        for (int i = 0; i < height; i++) {
-            for (int j = 0; j < width; j++) {
-                System.out.print(mapDimensionsArray[i][j]); // Prints each character side-by-side
+    public void markChanged(int x, int y) {
+        if (listener != null) {
+            listener.cellChanged(x, y);
+        }
+    }
+
+    private void changed(int x, int y) {
+        if (listener != null) {
+            listener.cellChanged(x, y);
+        }
+    }
+
+    public void setListener(MapListener listener) {
+        this.listener = listener;
+    }
+
+    /** 
+     * Converts a (x,y) coordinate pair into its index in the flat occupancy grid. 
+    */
+    private int cellIndex(int x, int y) {
+        return y * width + x;
+    }
+
+    private void initRegions() {
+        regionsAcross = (width + REGION_SIZE - 1) >> REGION_SHIFT;
+        regionTeams = new AtomicIntegerArray(regionsAcross * ((height + REGION_SIZE - 1) >> REGION_SHIFT));
+    }
+
+    /** 
+     * Adds n fighters of team at (x,y) to the counts of their region.
+     * Atomic, because moves of fighters on different tiles played at the same time can reach the same region. 
+    */
+    private void countInRegion(byte team, int x, int y, int n) {
+        if (regionTeams != null) {
+            regionTeams.addAndGet((y >> REGION_SHIFT) * regionsAcross + (x >> REGION_SHIFT),
+                    team == FighterStore.KNIGHT ? n : n << 16); // A region has at most 1024 cells, so 16 bits are enough
+        }
+    }
+
+    /** 
+     * The number of Knights standing in a region of REGION_SIZE by REGION_SIZE cells, numbered in row-major order
+     * (the same numbers as the tiles of a TileScheduler with that tile size). Not counted on a chunked map. 
+    */
+    public int getKnightsInRegion(int region) {
+        return regionTeams.get(region) & 0xFFFF;
+    }
+
+    public int getMonstersInRegion(int region) {
+        return regionTeams.get(region) >>> 16;
+    }
+
+    /** 
+     * Who stands on the cell (x,y) inside the map: EMPTY, PLAYER or fighter slot + 1. 
+    */
+    private int getOccupant(int x, int y) {
+        return chunks != null ? chunks.getOccupant(x, y) : occupants[cellIndex(x, y)];
+    }
+
+    private void setOccupant(int x, int y, int occupant) {
+        if (chunks != null) {
+            chunks.setOccupant(x, y, occupant);
+        } else {
+            occupants[cellIndex(x, y)] = occupant;
+        }
+    }
+
+    // Getters for the entities on the map
+    public FighterStore getFighters() {
+        return fighters;
+    }
+
+    public Player getPlayer() {
+        return player;
+    }
+
+    /** 
+     * Returns the terrain symbol at (x,y): earth (.), trees (%) or water (~). 
+    */
+    public char getTerrainAt(int x, int y) {
+        return terrainSymbol(chunks != null ? chunks.get(x, y) : terrain.get(x, y));
+    }
+
+    /** 
+     * Counts the walkable cells (earth) in the region fromX <= x < toX, fromY <= y < toY, 64 cells at a time
+     * (one cell at a time on a chunked map, whose chunks in the region are made). 
+    */
+    public long countFreeSpace(int fromX, int fromY, int toX, int toY) {
+        if (chunks == null) {
+            return terrain.countPassable(fromX, fromY, toX, toY);
+        }
+        long count = 0;
+        for (int y = fromY; y < toY; y++) {
+            for (int x = fromX; x < toX; x++) {
+                count += isFreeSpace(x, y) ? 1 : 0;
             }
-            System.out.println(); // Prints an extra new line after each row
         }
-        System.out.println(); // Prints a new line at the end
+        return count;
+    }
+
+    /** 
+     * The terrain layer, or null for a chunked map. 
+    */
+    public TerrainGrid getTerrain() {
+        return terrain;
+    }
+
+    public boolean isChunked() {
+        return chunks != null;
+    }
+
+    /** 
+     * The chunks of a chunked map, or null. 
+    */
+    public ChunkCache getChunks() {
+        return chunks;
+    }
+
+    /** 
+     * The generator that places the entities, whose state a SaveFile keeps. 
+    */
+    GameRandom getRandom() {
+        return rand;
+    }
+
+    /** 
+     * Returns what is drawn at (x,y): the symbol of the entity standing there, or else the terrain symbol. 
+    */
+    public char getSymbolAt(int x, int y) {
+        int occupant = getOccupant(x, y);
+        if (occupant == PLAYER) {
+            return player.getSymbol();
+        }
+        if (occupant != EMPTY) {
+            return FighterStore.symbolOf(fighters.team[occupant - 1]);
+        }
+        return getTerrainAt(x, y);
+    }
+
+    /** 
+     * The symbol of a terrain type. 
+    */
+    public static char terrainSymbol(byte terrainType) {
+        switch (terrainType) {
+            case TREES: return '%';
+            case WATER: return '~';
+            default: return '.';
+        }
     }
 
-    /**
-     * Returns the 2D character array representing the map grid.
+    /** 
+     * Displays the current state of the map on the console.
+     * The rows are built into a reused byte buffer and printed with a single write. 
     */
-    public char[][] getGrid() {
-        return mapDimensionsArray;
+    public void display() {
+        if (displayBuffer == null) {
+            displayBuffer = new byte[(width + 1) * height + 1];
+        }
+        int length = 0;
+        for (int i = 0; i < height; i++) {
+            for (int j = 0; j < width; j++) {
+                displayBuffer[length++] = (byte) getSymbolAt(j, i); // Every symbol is a single ASCII character
+            }
+            displayBuffer[length++] = '\n'; // An extra new line after each row
+        }
+        displayBuffer[length++] = '\n'; // A new line at the end
+        System.out.write(displayBuffer, 0, length);
+        System.out.flush();
     }
 }
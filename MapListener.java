@@ -0,0 +1,13 @@
+/**
+ * Receives the cells of a Map whose content changed: an entity was placed there, moved in or out,
+ * was removed, or the health of the fighter standing there changed.
+ * The Swing board uses it to redraw only those cells after a turn.
+ * With a parallel Simulation it is called from several threads at once, so it has to be thread-safe.
+*/
+
+public interface MapListener {
+    /**
+     * Called after what is drawn at (x,y) changed.
+    */
+    void cellChanged(int x, int y);
+}
@@ -1,55 +1,40 @@
 /** Inherites from Fighter class. */
 
-import java.util.Random;
-
 public class Monster extends Fighter {
+    // Moves of a Monster: up, down, left, right, then diagonally up-left, up-right, down-left, down-right
+    static final int[] MOVES_X = {0, 0, -1, 1, -1, 1, -1, 1};
+    static final int[] MOVES_Y = {-1, 1, 0, 0, -1, -1, 1, 1};
+
     public Monster(int x, int y) {
         super(x, y); // Inherites x and y from the Fighter class
         this.symbol = 'M';
     }
 
+    public Monster(int x, int y, GameRandom rand) {
+        super(x, y, rand);
+        this.symbol = 'M';
+    }
+
     @Override
     public void move(Map map) {
-        Random rand = new Random(); // For randomly move on map.
-        int newX = this.x;
-        int newY = this.y;
-        int direction = rand.nextInt(8);
+        // For randomly move on map, with the thread's generator (no allocation per move).
+        move(map, GameRandom.current().nextInt(MOVES_X.length));
+    }
 
-        switch (direction) {
-            case 0: // up
-                newY--;
-                break;
-            case 1: // down
-                newY++;
-                break;
-            case 2: // left
-                newX--;
-                break;
-            case 3: // right
-                newX++;
-                break;
-            case 4: // diagonally up-left
-                newX--;
-                newY--;
-                break;
-            case 5: // diagonally up-right
-                newX++;
-                newY--;
-                break;
-            case 6: // diagonally down-left
-                newX--;
-                newY++;
-                break;
-            case 7: // diagonally down-right
-                newX++;
-                newY++;
-                break;
-        }
+    @Override
+    public byte getTeam() {
+        return FighterStore.MONSTER;
+    }
+
+    @Override
+    public int getDirectionCount() {
+        return MOVES_X.length;
+    }
 
-        // Checks if the entity moves inside the maps borders.
-        if (map.isValidPosition(newX, newY) && map.isFreeSpace(newX, newY)) {
-            this.x = newX;
-            this.y = newY;
-        }
+    @Override
+    public void move(Map map, int direction) {
+        // Moves only inside the map's borders, on walkable and empty cells. The map keeps its occupancy grid up to date.
+        // A Monster object is not on the map (the map keeps a copy in its FighterStore), so the map throws.
+        map.moveEntity(this, getX() + MOVES_X[direction], getY() + MOVES_Y[direction]);
     }
 }
\ No newline at end of file
@@ -15,14 +15,9 @@ public class Player extends Entity {
 
     /** 
      * Function for moing player into a new position.
-     * It checks if the player moves inside map's borders and makes the move. 
+     * It checks if the player moves inside map's borders (on a walkable and empty cell) and makes the move. 
     */ 
     public boolean movePlayer(int newX, int newY, Map map) {
-        if (map.isValidPosition(newX, newY) && map.isFreeSpace(newX, newY)) {
-            this.x = newX;
-            this.y = newY;
-            return true;
-        }
-        return false;
+        return map.moveEntity(this, newX, newY);
     }
 }
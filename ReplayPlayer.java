@@ -0,0 +1,248 @@
+/**
+ * Plays back a game recorded by a ReplayRecorder.
+ * seek(turn) gives the game as it was at any recorded turn: it loads the nearest keyframe before that turn
+ * and plays the turns after it headlessly, making the recorded player moves before each turn.
+ * verify() plays the whole recording and compares the state hash after every turn with the recorded one,
+ * so a game that does not play the same way twice (a nondeterminism bug) is caught at the turn where it happens.
+ * The hash covers the fighters (and their activation delays in event-driven turns) but not the contents of the
+ * flow field between two refreshes (see Simulation.getStateHash): a field that differs from the recorded one
+ * is only caught at the first turn where it moves a fighter differently, which can be some turns later.
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+public class ReplayPlayer {
+    private final Path directory;
+    private final int width;
+    private final int height;
+    private final long seed;
+    private final int keyframeInterval;
+
+    // The recording, read once into primitive arrays
+    private long firstTurn; // Turn of the first keyframe
+    private long[] hashes = new long[1024]; // State hash after each turn, at turn - firstTurn
+    private int hashCount;
+    private long[] moveTurns = new long[64]; // The player's moves: the turn they were made in, and dx and dy
+    private byte[] moveX = new byte[64];
+    private byte[] moveY = new byte[64];
+    private int moveCount;
+    private long[] pauseTurns = new long[16]; // The pause toggles: their turn and whether the game was paused
+    private boolean[] pauseStates = new boolean[16];
+    private int pauseCount;
+    private long[] keyframes = new long[16]; // Turns of the keyframes, in increasing order
+    private int keyframeCount;
+
+    /**
+     * Reads the log of the replay in directory. The keyframes are only read when they are needed.
+     * A record cut short at the end of the log (a recording that was interrupted) is ignored.
+     * Throws IOException if the directory holds no replay, or one of another version.
+    */
+    public ReplayPlayer(Path directory) throws IOException {
+        this.directory = directory;
+        Path file = directory.resolve(ReplayRecorder.LOG_FILE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer log = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (log.remaining() < 28 || log.getInt() != ReplayRecorder.MAGIC) {
+                throw new IOException(file + " is not a replay.");
+            }
+            int version = log.getInt();
+            if (version != ReplayRecorder.VERSION) {
+                throw new IOException(file + " has version " + version + ", this game reads version " + ReplayRecorder.VERSION + ".");
+            }
+            width = log.getInt();
+            height = log.getInt();
+            seed = log.getLong();
+            keyframeInterval = log.getInt();
+            readRecords(log, file);
+        }
+        if (hashCount == 0 || keyframeCount == 0 || keyframes[0] != firstTurn) {
+            throw new IOException(file + " is damaged: it has no first keyframe.");
+        }
+    }
+
+    private void readRecords(ByteBuffer log, Path file) throws IOException {
+        while (log.remaining() >= 9) {
+            byte type = log.get();
+            long turn = log.getLong();
+            if (type == ReplayRecorder.TURN && log.remaining() >= 8) {
+                if (hashCount == 0) {
+                    firstTurn = turn;
+                } else if (turn != firstTurn + hashCount) {
+                    throw new IOException(file + " is damaged: turn " + turn + " follows turn " + getLastTurn() + ".");
+                }
+                if (hashCount == hashes.length) {
+                    hashes = Arrays.copyOf(hashes, hashCount * 2);
+                }
+                hashes[hashCount++] = log.getLong();
+            } else if (type == ReplayRecorder.MOVE && log.remaining() >= 2) {
+                if (moveCount == moveTurns.length) {
+                    moveTurns = Arrays.copyOf(moveTurns, moveCount * 2);
+                    moveX = Arrays.copyOf(moveX, moveCount * 2);
+                    moveY = Arrays.copyOf(moveY, moveCount * 2);
+                }
+                moveTurns[moveCount] = turn;
+                moveX[moveCount] = log.get();
+                moveY[moveCount++] = log.get();
+            } else if (type == ReplayRecorder.PAUSE && log.remaining() >= 1) {
+                if (pauseCount == pauseTurns.length) {
+                    pauseTurns = Arrays.copyOf(pauseTurns, pauseCount * 2);
+                    pauseStates = Arrays.copyOf(pauseStates, pauseCount * 2);
+                }
+                pauseTurns[pauseCount] = turn;
+                pauseStates[pauseCount++] = log.get() != 0;
+            } else if (type == ReplayRecorder.KEYFRAME) {
+                if (keyframeCount == keyframes.length) {
+                    keyframes = Arrays.copyOf(keyframes, keyframeCount * 2);
+                }
+                keyframes[keyframeCount++] = turn;
+            } else if (type > ReplayRecorder.KEYFRAME || type < 0) {
+                throw new IOException(file + " is damaged: unknown record " + type + ".");
+            }
+        }
+    }
+
+    /**
+     * The game as it was when it reached the given turn, before the player's moves of that turn.
+     * Throws IllegalArgumentException if the turn was not recorded, and IOException if the game cannot be played
+     * up to it as recorded (a recorded player move is refused, or the game ends before that turn).
+    */
+    public Simulation seek(long turn, int threads) throws IOException {
+        if (turn < firstTurn || turn > getLastTurn()) {
+            throw new IllegalArgumentException("Turn " + turn + " is not in the replay (turns " + firstTurn + " to " + getLastTurn() + ").");
+        }
+        int keyframe = 0;
+        while (keyframe + 1 < keyframeCount && keyframes[keyframe + 1] <= turn) {
+            keyframe++;
+        }
+        Simulation simulation = SaveFile.load(directory.resolve(ReplayRecorder.keyframeName(keyframes[keyframe])));
+        simulation.setParallelism(threads);
+        long stopped = playTo(simulation, turn, false);
+        if (stopped >= 0) {
+            simulation.setParallelism(1); // Stops the worker threads
+            throw new IOException("The replay does not play back as recorded: it stopped at turn " + stopped
+                    + " before reaching turn " + turn + ".");
+        }
+        return simulation;
+    }
+
+    /**
+     * Plays the whole recording from its first keyframe on the given number of threads and compares the state
+     * hash after every turn, and the state of every keyframe, with the recorded ones.
+     * Returns the first turn whose state differs from the recording, or -1 if the game played exactly as recorded.
+    */
+    public long verify(int threads) throws IOException {
+        for (int i = 0; i < keyframeCount && keyframes[i] <= getLastTurn(); i++) {
+            Simulation keyframe = SaveFile.load(directory.resolve(ReplayRecorder.keyframeName(keyframes[i])));
+            if (keyframe.getStateHash() != getHash(keyframes[i])) {
+                return keyframes[i];
+            }
+        }
+        Simulation simulation = SaveFile.load(directory.resolve(ReplayRecorder.keyframeName(firstTurn)));
+        simulation.setParallelism(threads);
+        long mismatch = playTo(simulation, getLastTurn(), true);
+        simulation.setParallelism(1); // Stops the worker threads
+        return mismatch;
+    }
+
+    /**
+     * Plays the simulation up to the given turn, making the recorded player moves before each turn.
+     * With check, compares the state hash after each turn with the recorded one.
+     * Returns the first turn that did not play as recorded, or -1.
+    */
+    private long playTo(Simulation simulation, long turn, boolean check) {
+        int move = firstMoveAt(simulation.getTurn());
+        while (simulation.getTurn() < turn) {
+            long current = simulation.getTurn();
+            for (; move < moveCount && moveTurns[move] == current; move++) {
+                if (!simulation.movePlayer(moveX[move], moveY[move])) {
+                    return current; // The player could move there in the recorded game
+                }
+            }
+            simulation.step();
+            if (simulation.getTurn() == current) {
+                return current; // The game ended earlier than in the recording
+            }
+            if (check && simulation.getStateHash() != getHash(simulation.getTurn())) {
+                return simulation.getTurn();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Index of the first recorded move made in the given turn or later (moves are recorded in turn order).
+    */
+    private int firstMoveAt(long turn) {
+        int low = 0;
+        int high = moveCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (moveTurns[middle] < turn) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Whether the game was paused by the player when it reached the given turn.
+    */
+    public boolean isPaused(long turn) {
+        boolean paused = false;
+        for (int i = 0; i < pauseCount && pauseTurns[i] <= turn; i++) {
+            paused = pauseStates[i];
+        }
+        return paused;
+    }
+
+    /**
+     * The recorded state hash after the given turn.
+    */
+    public long getHash(long turn) {
+        return hashes[(int) (turn - firstTurn)];
+    }
+
+    // Getters
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getKeyframeInterval() {
+        return keyframeInterval;
+    }
+
+    public long getFirstTurn() {
+        return firstTurn;
+    }
+
+    public long getLastTurn() {
+        return firstTurn + hashCount - 1;
+    }
+
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    public int getPauseCount() {
+        return pauseCount;
+    }
+
+    public int getKeyframeCount() {
+        return keyframeCount;
+    }
+}
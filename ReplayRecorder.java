@@ -0,0 +1,161 @@
+/**
+ * Records a game so that any turn of it can be reproduced later with a ReplayPlayer.
+ * A game is fully determined by its state at one turn and the player's inputs after it, so a replay is
+ * a directory holding:
+ * - replay.log: a header (map size, seed, keyframe interval) and a stream of records: the player's moves
+ *   and the pause toggles with the turn they happened in, and the state hash (Simulation.getStateHash())
+ *   after every turn;
+ * - keyframe-<turn>.sav: a SaveFile of the game at the first turn and then every keyframeInterval turns,
+ *   so that seeking a turn only plays the turns after the keyframe before it.
+ *
+ * The Simulation calls the recorder (see Simulation.setRecorder). The log is written after every turn,
+ * so a game that crashes or is closed without close() keeps everything up to its last turn.
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class ReplayRecorder {
+    public static final int MAGIC = 0x4B564D52; // "KVMR"
+    public static final int VERSION = 1;
+    public static final String LOG_FILE = "replay.log";
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 500;
+
+    // Record types of the log, each followed by the turn (long)
+    static final byte TURN = 0; // Then the state hash after the turn (long)
+    static final byte MOVE = 1; // Then dx and dy (bytes)
+    static final byte PAUSE = 2; // Then 1 if the game was paused, 0 if it was resumed (byte)
+    static final byte KEYFRAME = 3; // A keyframe file was written for the turn
+
+    private final Path directory;
+    private final int keyframeInterval;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 12);
+    private boolean stopped; // Set after an I/O error or close(); records are then ignored
+
+    /**
+     * Starts recording the game in directory (created if needed; a replay already in it is replaced):
+     * writes the header, the game as it is now as the first keyframe, and its state hash.
+    */
+    public ReplayRecorder(Path directory, Simulation simulation, int keyframeInterval) throws IOException {
+        this.directory = directory;
+        this.keyframeInterval = Math.max(keyframeInterval, 1);
+        Files.createDirectories(directory);
+        this.channel = FileChannel.open(directory.resolve(LOG_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        Map map = simulation.getMap();
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(map.getWidth()).putInt(map.getHeight())
+                .putLong(simulation.getSeed()).putInt(this.keyframeInterval);
+        writeKeyframe(simulation);
+        buffer.put(TURN).putLong(simulation.getTurn()).putLong(simulation.getStateHash());
+        flush();
+    }
+
+    /**
+     * The name of the keyframe file of a turn.
+    */
+    public static String keyframeName(long turn) {
+        return "keyframe-" + turn + ".sav";
+    }
+
+    /**
+     * Records a player move that succeeded before the turn was played.
+    */
+    public synchronized void playerMoved(long turn, int dx, int dy) {
+        if (stopped) {
+            return;
+        }
+        ensureRoom(11);
+        buffer.put(MOVE).putLong(turn).put((byte) dx).put((byte) dy);
+    }
+
+    /**
+     * Records that a front end paused or resumed the game. Pauses do not change the turns;
+     * they are kept so a replay shows when the player stopped to look.
+    */
+    public synchronized void pauseChanged(long turn, boolean paused) {
+        if (stopped) {
+            return;
+        }
+        ensureRoom(10);
+        buffer.put(PAUSE).putLong(turn).put((byte) (paused ? 1 : 0));
+    }
+
+    /**
+     * Records the state hash after a turn, and a keyframe every keyframeInterval turns. Called by the Simulation.
+    */
+    public synchronized void turnPlayed(Simulation simulation) {
+        if (stopped) {
+            return;
+        }
+        try {
+            long turn = simulation.getTurn();
+            if (turn % keyframeInterval == 0) {
+                writeKeyframe(simulation);
+            }
+            ensureRoom(17);
+            buffer.put(TURN).putLong(turn).putLong(simulation.getStateHash());
+            flush();
+        } catch (IOException e) {
+            stop(e);
+        }
+    }
+
+    /**
+     * Writes what is left of the log and stops recording.
+    */
+    public synchronized void close() {
+        if (stopped) {
+            return;
+        }
+        try {
+            flush();
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Replay recording stopped: " + e);
+        }
+        stopped = true;
+    }
+
+    private void writeKeyframe(Simulation simulation) throws IOException {
+        SaveFile.save(simulation, directory.resolve(keyframeName(simulation.getTurn())));
+        ensureRoom(9);
+        buffer.put(KEYFRAME).putLong(simulation.getTurn());
+    }
+
+    private void ensureRoom(int bytes) {
+        if (buffer.remaining() < bytes) {
+            try {
+                flush();
+            } catch (IOException e) {
+                stop(e);
+                buffer.clear(); // Keeps the puts that follow harmless
+            }
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Stops recording after an I/O error: the game goes on without a replay.
+    */
+    private void stop(IOException e) {
+        System.err.println("Replay recording stopped: " + e);
+        stopped = true;
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // Already failing
+        }
+    }
+}
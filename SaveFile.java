@@ -0,0 +1,264 @@
+/**
+ * Saves a whole game (Simulation) to a binary file and loads it back, so a long game can be resumed
+ * and a bug can be reproduced from the turn where it happens.
+ * The file has a fixed header followed by the arrays that hold the game, copied in bulk through
+ * memory-mapped regions of a FileChannel: no object is created per cell or per fighter.
+ *
+ * Layout (little-endian):
+ * header (HEADER_SIZE bytes): magic "KVMS", version, width, height, seed, turn key, turn,
+ * state of the map's generator, state of the fighters' generator, player x and y (-1 without a player),
+ * number of fighters, flow interval (0 when the fighters walk randomly), cruise interval (0 when every fighter
+ * is active), the action intervals of the Knights and the Monsters (0 without event-driven turns) and 4 bytes of padding;
+ * then the terrain (the types and passability words of the TerrainGrid, as longs),
+ * the x and y columns of the fighters (ints) and their team, health, attackPower, defence, medicine
+ * and move mark columns (bytes), and with a flow interval the Knights' and Monsters' moves of the
+ * FlowField (a byte per cell each), and with action intervals the ticks until each fighter's next activation
+ * (a byte per fighter).
+ * Loading checks the header values and the fighters' teams and stats, so a damaged or edited file is refused
+ * rather than giving a game that cannot be played.
+ * The occupancy grid and the free cells are not saved: loading rebuilds them from the fighters and the terrain.
+ * A loaded game plays exactly the same turns as the saved one would have.
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public final class SaveFile {
+    public static final int MAGIC = 0x4B564D53; // "KVMS"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 88; // A multiple of 8, so the terrain words are aligned
+
+    private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN; // The byte order of most machines, so the copies are plain memory copies
+    private static final int REGION_SIZE = 1 << 30; // Largest region mapped at once (a mapping is limited to 2 GB)
+
+    private SaveFile() {}
+
+    /**
+     * Writes the game to file, replacing it if it exists. The game must not be playing a turn meanwhile.
+     * Games on a chunked map cannot be saved.
+    */
+    public static void save(Simulation simulation, Path file) throws IOException {
+        Map map = simulation.getMap();
+        if (map.isChunked()) {
+            throw new IOException("A chunked map cannot be saved: it does not keep its whole terrain.");
+        }
+        TerrainGrid terrain = map.getTerrain();
+        FighterStore fighters = simulation.getFighters();
+        Player player = map.getPlayer();
+        int count = fighters.size();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE).order(ORDER);
+            header.putInt(MAGIC).putInt(VERSION).putInt(map.getWidth()).putInt(map.getHeight())
+                    .putLong(simulation.getSeed()).putLong(simulation.getTurnKey()).putLong(simulation.getTurn())
+                    .putLong(map.getRandom().getState()).putLong(simulation.getRandom().getState())
+                    .putInt(player != null ? player.getX() : -1).putInt(player != null ? player.getY() : -1)
+                    .putInt(count).putInt(simulation.getFlowInterval()).putInt(simulation.getCruiseInterval())
+                    .putInt(simulation.getKnightInterval()).putInt(simulation.getMonsterInterval()).putInt(0);
+
+            long position = HEADER_SIZE;
+            position = write(channel, position, terrain.types, terrain.types.length);
+            position = write(channel, position, terrain.passable, terrain.passable.length);
+            position = write(channel, position, fighters.x, count);
+            position = write(channel, position, fighters.y, count);
+            position = write(channel, position, fighters.team, count);
+            position = write(channel, position, fighters.health, count);
+            position = write(channel, position, fighters.attackPower, count);
+            position = write(channel, position, fighters.defence, count);
+            position = write(channel, position, fighters.medicine, count);
+            position = write(channel, position, fighters.moveMark, count);
+            FlowField flowField = simulation.getFlowField();
+            if (flowField != null) {
+                position = write(channel, position, flowField.knightMoves, flowField.knightMoves.length);
+                position = write(channel, position, flowField.monsterMoves, flowField.monsterMoves.length);
+            }
+            if (simulation.getKnightInterval() > 0) {
+                byte[] delays = new byte[count];
+                for (int slot = 0; slot < count; slot++) {
+                    delays[slot] = (byte) simulation.getActivationDelay(slot); // At most ActivationWheel.MAX_INTERVAL - 1
+                }
+                write(channel, position, delays, count);
+            }
+        }
+    }
+
+    /**
+     * Reads a game written by save(). It plays on one thread until setParallelism is called.
+     * Throws IOException if the file is not a saved game, has another version or is damaged.
+    */
+    public static Simulation load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException(file + " is not a saved game.");
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ORDER);
+            if (header.getInt() != MAGIC) {
+                throw new IOException(file + " is not a saved game.");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException(file + " has version " + version + ", this game reads version " + VERSION + ".");
+            }
+            int width = header.getInt();
+            int height = header.getInt();
+            long seed = header.getLong();
+            long turnKey = header.getLong();
+            long turn = header.getLong();
+            long mapRandom = header.getLong();
+            long fighterRandom = header.getLong();
+            int playerX = header.getInt();
+            int playerY = header.getInt();
+            int count = header.getInt();
+            int flowInterval = header.getInt();
+            int cruiseInterval = header.getInt();
+            int knightInterval = header.getInt();
+            int monsterInterval = header.getInt();
+            if (width <= 0 || height <= 0 || (long) width * height > Integer.MAX_VALUE || count < 0 || flowInterval < 0
+                    || cruiseInterval < 0 || cruiseInterval > Simulation.MAX_CRUISE_INTERVAL
+                    || knightInterval < 0 || monsterInterval < 0 || (knightInterval > 0) != (monsterInterval > 0)) {
+                throw new IOException(file + " is damaged.");
+            }
+
+            TerrainGrid terrain = new TerrainGrid(width, height);
+            long expectedSize = HEADER_SIZE + 8L * (terrain.types.length + terrain.passable.length) + 14L * count
+                    + (flowInterval > 0 ? 2L * width * height : 0) + (knightInterval > 0 ? count : 0);
+            if (channel.size() != expectedSize) {
+                throw new IOException(file + " is damaged: " + channel.size() + " bytes instead of " + expectedSize + ".");
+            }
+            FighterStore fighters = new FighterStore(count);
+            long position = HEADER_SIZE;
+            position = read(channel, position, terrain.types, terrain.types.length);
+            position = read(channel, position, terrain.passable, terrain.passable.length);
+            position = read(channel, position, fighters.x, count);
+            position = read(channel, position, fighters.y, count);
+            position = read(channel, position, fighters.team, count);
+            position = read(channel, position, fighters.health, count);
+            position = read(channel, position, fighters.attackPower, count);
+            position = read(channel, position, fighters.defence, count);
+            position = read(channel, position, fighters.medicine, count);
+            position = read(channel, position, fighters.moveMark, count);
+            fighters.setSize(count);
+            for (int slot = 0; slot < count; slot++) {
+                // A living fighter of one of the teams, whose attacks and heals cannot go negative
+                if (fighters.team[slot] != FighterStore.KNIGHT && fighters.team[slot] != FighterStore.MONSTER
+                        || fighters.health[slot] <= 0 || fighters.attackPower[slot] < 0 || fighters.defence[slot] < 0
+                        || fighters.medicine[slot] < 0) {
+                    throw new IOException(file + " is damaged: fighter " + slot + " has a team or stats out of range.");
+                }
+            }
+            FlowField flowField = null;
+            if (flowInterval > 0) {
+                flowField = new FlowField(terrain);
+                position = read(channel, position, flowField.knightMoves, flowField.knightMoves.length);
+                position = read(channel, position, flowField.monsterMoves, flowField.monsterMoves.length);
+            }
+            byte[] delays = null;
+            if (knightInterval > 0) {
+                delays = new byte[count];
+                read(channel, position, delays, count);
+            }
+
+            Player player = null;
+            if (playerX >= 0) {
+                player = new Player(playerX, playerY);
+            }
+            Map map;
+            try {
+                map = new Map(terrain, fighters, player, new GameRandom(mapRandom));
+            } catch (IllegalArgumentException e) {
+                throw new IOException(file + " is damaged: " + e.getMessage());
+            }
+            if (player == null) {
+                player = new Player(-1, -1); // The player had left the map: it stays off the map
+            }
+            Simulation simulation = new Simulation(map, player, seed, turnKey, new GameRandom(fighterRandom), turn);
+            simulation.setFlowField(flowField, flowInterval);
+            simulation.setCruiseInterval(cruiseInterval);
+            if (delays != null) {
+                int[] activationDelays = new int[count];
+                for (int slot = 0; slot < count; slot++) {
+                    activationDelays[slot] = delays[slot];
+                }
+                try {
+                    simulation.setActivations(knightInterval, monsterInterval, activationDelays);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(file + " is damaged: " + e.getMessage());
+                }
+            }
+            return simulation;
+        }
+    }
+
+    // Bulk copies between the arrays and mapped regions of the file. Each returns the position after the copied values.
+    private static long write(FileChannel channel, long position, long[] values, int count) throws IOException {
+        for (int from = 0; from < count; ) {
+            int length = Math.min(count - from, REGION_SIZE / 8);
+            map(channel, FileChannel.MapMode.READ_WRITE, position, 8L * length).asLongBuffer().put(values, from, length);
+            from += length;
+            position += 8L * length;
+        }
+        return position;
+    }
+
+    private static long write(FileChannel channel, long position, int[] values, int count) throws IOException {
+        for (int from = 0; from < count; ) {
+            int length = Math.min(count - from, REGION_SIZE / 4);
+            map(channel, FileChannel.MapMode.READ_WRITE, position, 4L * length).asIntBuffer().put(values, from, length);
+            from += length;
+            position += 4L * length;
+        }
+        return position;
+    }
+
+    private static long write(FileChannel channel, long position, byte[] values, int count) throws IOException {
+        for (int from = 0; from < count; ) {
+            int length = Math.min(count - from, REGION_SIZE);
+            map(channel, FileChannel.MapMode.READ_WRITE, position, length).put(values, from, length);
+            from += length;
+            position += length;
+        }
+        return position;
+    }
+
+    private static long read(FileChannel channel, long position, long[] values, int count) throws IOException {
+        for (int from = 0; from < count; ) {
+            int length = Math.min(count - from, REGION_SIZE / 8);
+            map(channel, FileChannel.MapMode.READ_ONLY, position, 8L * length).asLongBuffer().get(values, from, length);
+            from += length;
+            position += 8L * length;
+        }
+        return position;
+    }
+
+    private static long read(FileChannel channel, long position, int[] values, int count) throws IOException {
+        for (int from = 0; from < count; ) {
+            int length = Math.min(count - from, REGION_SIZE / 4);
+            map(channel, FileChannel.MapMode.READ_ONLY, position, 4L * length).asIntBuffer().get(values, from, length);
+            from += length;
+            position += 4L * length;
+        }
+        return position;
+    }
+
+    private static long read(FileChannel channel, long position, byte[] values, int count) throws IOException {
+        for (int from = 0; from < count; ) {
+            int length = Math.min(count - from, REGION_SIZE);
+            map(channel, FileChannel.MapMode.READ_ONLY, position, length).get(values, from, length);
+            from += length;
+            position += length;
+        }
+        return position;
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, FileChannel.MapMode mode, long position, long size)
+            throws IOException {
+        MappedByteBuffer buffer = channel.map(mode, position, size);
+        buffer.order(ORDER);
+        return buffer;
+    }
+}
@@ -0,0 +1,964 @@
+/**
+ * Headless core of the game. It owns the map, the player and the fighters and runs the turns.
+ * It does not read input and prints nothing, so it can run unattended (for example for balancing runs).
+ * The terminal (Game) and Swing (GameGUI) front ends are thin clients of this class.
+ *
+ * The fighters are kept in the map's FighterStore (primitive columns) and the turn loop works on
+ * their slots directly, so it creates no objects and does no class checks; a team byte tells
+ * Knights and Monsters apart.
+ *
+ * Each phase of a turn walks the map tile by tile (see TileScheduler) and every random decision is
+ * derived from the seed, the turn and the cell where it happens. The order of the fighters therefore
+ * does not depend on the number of threads, and a parallel run gives exactly the same game as a
+ * sequential one with the same seed.
+ *
+ * Adjacent fighters interact in pairs, and each adjacent pair is found once: from the cell that comes first
+ * in row-major order, through its 4 later neighbours (a half-neighbourhood stencil). Within a pair both
+ * fighters act at the same time (see interactFighters). The defeated are marked in a bitset by slot and
+ * removed in one pass over it at the end of the turn.
+ * The pairs of a tile are first listed in a CombatBatch, whose damages a CombatKernel works out all at once
+ * (with the JDK Vector API when it is available), and then played in order.
+ *
+ * The fighters walk randomly, or, with setFlowInterval, follow a FlowField towards the nearest enemy
+ * that is refreshed every few turns.
+ *
+ * Tiles with no fighter on them are skipped. With setCruiseInterval, the fighters of a tile with no enemy
+ * in it or in the 8 tiles around it (so no enemy within 32 cells) cruise: they only move every few turns
+ * and do not interact, and the turn costs little more than the contested tiles where the teams meet.
+ *
+ * With setActionIntervals the turns become ticks of an event-driven schedule instead: Knights and Monsters
+ * act every few ticks, at their own pace, and each tick only the fighters due then act (see playActivations).
+ *
+ * On a chunked map (see ChunkCache) the phases walk the chunks that have fighters on them instead of the tiles,
+ * on the calling thread, so a turn costs nothing for the parts of the map nobody is in.
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class Simulation {
+    public static final int TILE_SIZE = Map.REGION_SIZE; // Side of the tiles that the turn phases are split into
+    public static final int MAX_CRUISE_INTERVAL = 255; // The move marks only tell apart turns less than 256 turns apart
+    // States of a tile in a phase (see updateTileStates)
+    private static final byte TILE_EMPTY = 0; // No fighter
+    private static final byte TILE_CRUISING = 1; // Fighters, but no enemy in the tile or the 8 tiles around it
+    private static final byte TILE_CONTESTED = 2; // Fighters with an enemy in the tile or the 8 tiles around it
+    private static final SimulationListener NO_LISTENER = new SimulationListener() {};
+    // The half-neighbourhood stencil: the 4 neighbours that come after a cell in row-major order (E, SW, S, SE),
+    // and their numbers among the 8 neighbours (1 to 8 in row-major order; the opposite of neighbour n is 9 - n)
+    private static final int[] PAIR_DX = {1, -1, 0, 1};
+    private static final int[] PAIR_DY = {0, 1, 1, 1};
+    private static final int[] PAIR_NEIGHBOUR = {5, 6, 7, 8};
+
+    private final Map map;
+    private final Player player;
+    private final FighterStore fighters; // The Knights and Monsters, owned by the map
+    private final long seed; // The seed that the map, the fighters and the turn decisions were created from
+    private final GameRandom rand; // For the fighters' stats at placement
+    private final long turnKey; // Key of the counter-based random decisions of the turns
+    private int knightsCount;
+    private int monstersCount;
+    private long turn; // Number of turns played so far
+    private SimulationListener listener; // Receives attacks, heals and defeats. Never null.
+    private CombatLog log; // Records the attacks, heals, deaths and moves as primitive events, or null
+    private ReplayRecorder recorder; // Records the player's inputs and the state hash of every turn, or null
+    private TurnMetrics metrics; // Times the phases of the turns and counts their events, or null
+    private int placementFailures; // Fighters that found no free cell when the map was filled
+    private TileScheduler tiles; // Runs the phases of a turn tile by tile, on one or more threads
+    private FlowField flowField; // Leads the fighters towards their enemies, or null for random walks
+    private int flowInterval; // Turns between two refreshes of the flow field (0 for random walks)
+    private int cruiseInterval; // Turns between two moves of the cruising fighters (0 when every fighter is active)
+    private byte[] tileStates; // The state of each tile in the current phase, or null on a chunked map
+    private byte[] tileTeams; // The teams on each tile, for working out the states
+    private CombatKernel combatKernel = CombatKernel.SCALAR; // Works out the damages of the pairs of a tile
+    // The pairs of the tile being played, one batch per thread
+    private final ThreadLocal<CombatBatch> batches = ThreadLocal.withInitial(() -> new CombatBatch(4 * TILE_SIZE * TILE_SIZE));
+    private ActivationWheel wheel; // The next activation of every fighter in the event-driven turns, or null
+    private int scheduled; // The fighters the wheel knows: the slots [0, scheduled)
+    private int knightInterval; // Ticks between two activations of a Knight (0 without event-driven turns)
+    private int monsterInterval; // Ticks between two activations of a Monster
+    private int[] due = new int[0]; // The fighters acting in the current tick
+    private long[] order = new long[0]; // Their order: a random key in the high 32 bits and the index in due in the low ones
+    private int[] defeatedSlots = new int[16]; // The fighters defeated in the current tick (the bitset is not used then)
+    private int defeatedCount;
+    private AtomicLongArray defeated; // Bit i is set when the fighter in slot i is defeated in this turn
+    private final TileScheduler.TileWork moveWork = this::moveFighters;
+    private final TileScheduler.TileWork interactWork = this::interactFighters;
+
+    /**
+     * Creates the map with the given dimensions and places the player and the fighters on it.
+     * Throws IllegalStateException if the player cannot be placed on the map.
+    */
+    public Simulation(int width, int height, long seed) {
+        this(width, height, seed, TerrainGenerator.SCATTERED);
+    }
+
+    /**
+     * Same as above, with the terrain style of the map (TerrainGenerator.SCATTERED or TerrainGenerator.NOISE).
+    */
+    public Simulation(int width, int height, long seed, int terrainStyle) {
+        this(width, height, seed, terrainStyle, 0, 0);
+    }
+
+    /**
+     * Creates a chunked map (see Map and ChunkCache) that keeps at most maxResident empty chunks, and places
+     * the player and (spawnSize * spawnSize) / 15 fighters in the square of spawnSize cells in its middle.
+     * The map can be far larger than the memory: only the chunks the fighters walk on are made.
+     * With spawnSize 0 the map is a whole one (the constructor above).
+    */
+    public Simulation(int width, int height, long seed, int terrainStyle, int spawnSize, int maxResident) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Width and height must be positive numbers.");
+        }
+        this.seed = seed;
+        // One seed, split into independent streams: terrain and placement, fighter stats, turn decisions.
+        GameRandom root = new GameRandom(seed);
+        this.map = spawnSize > 0 ? new Map(width, height, root.split(), terrainStyle, spawnSize, maxResident)
+                : new Map(width, height, root.split(), terrainStyle);
+        this.rand = root.split();
+        this.turnKey = root.nextLong();
+        this.fighters = map.getFighters();
+        this.listener = NO_LISTENER; // Listens to nothing until a front end sets its own.
+
+        // Creates and places the player avatar.
+        player = new Player(0, 0); // Initial coordinates are placeholders, placeEntityOnMap will update them.
+        if (!map.placeEntityOnMap(player)) {
+            throw new IllegalStateException("Player couldn't be placed on the map.");
+        }
+        initializeFighters(spawnSize > 0 ? spawnSize : width, spawnSize > 0 ? spawnSize : height);
+
+        tiles = map.isChunked() ? null : new TileScheduler(width, height, TILE_SIZE, 1);
+        tileStates = map.isChunked() ? null : new byte[regionCount()];
+        tileTeams = map.isChunked() ? null : new byte[regionCount()];
+        defeated = new AtomicLongArray(0);
+    }
+
+    /**
+     * Constructor for a saved game (see SaveFile): the map already holds the fighters and the player,
+     * and the generators and the turn continue where the saved game stopped. The map may be a chunked one.
+    */
+    Simulation(Map map, Player player, long seed, long turnKey, GameRandom rand, long turn) {
+        this.seed = seed;
+        this.map = map;
+        this.rand = rand;
+        this.turnKey = turnKey;
+        this.turn = turn;
+        this.fighters = map.getFighters();
+        this.listener = NO_LISTENER;
+        this.player = player;
+        for (int slot = 0; slot < fighters.size(); slot++) {
+            if (fighters.team[slot] == FighterStore.KNIGHT) {
+                knightsCount++;
+            } else {
+                monstersCount++;
+            }
+        }
+
+        tiles = map.isChunked() ? null : new TileScheduler(map.getWidth(), map.getHeight(), TILE_SIZE, 1);
+        tileStates = map.isChunked() ? null : new byte[regionCount()];
+        tileTeams = map.isChunked() ? null : new byte[regionCount()];
+        defeated = new AtomicLongArray(0);
+    }
+
+    /**
+     * Sets how many threads play the turns. 1 (the default) plays them on the calling thread.
+     * The game is the same for any number of threads, but with more than one the listener
+     * is called from several threads at once, so it has to be thread-safe.
+     * A chunked map always plays on the calling thread.
+    */
+    public void setParallelism(int parallelism) {
+        if (tiles == null) {
+            return;
+        }
+        tiles.shutdown();
+        tiles = new TileScheduler(map.getWidth(), map.getHeight(), TILE_SIZE, parallelism);
+    }
+
+    public int getParallelism() {
+        return tiles != null ? tiles.getParallelism() : 1;
+    }
+
+    /**
+     * Places Knights and Monsters on the map (on a chunked map, width and height are those of its spawn area).
+     * (width * height) / 15 ensures that the fighters take at most 1/15th of the map's total cells.
+     * It keeps the counts balanced (knightsCount <= monstersCount) by alternating Knight, Monster, Knight, ...
+     * The stats are rolled into a batch first, and the map places the whole batch in one call.
+    */
+    private void initializeFighters(int width, int height) {
+        int maxFighters = (width * height) / 15;
+        FighterStore batch = new FighterStore(maxFighters);
+        for (int i = 0; i < maxFighters; i++) {
+            byte team = i % 2 == 0 ? FighterStore.KNIGHT : FighterStore.MONSTER;
+            // Same stats as a new Fighter: health 3, attackPower [1-3], defence [1-2], medicine [0-2]
+            batch.add(team, 0, 0, 3, rand.nextInt(3) + 1, rand.nextInt(2) + 1, rand.nextInt(3));
+        }
+        int placed = map.placeFighters(batch); // Fewer than maxFighters only if the map runs out of free space
+        placementFailures = maxFighters - placed;
+        knightsCount = (placed + 1) / 2;
+        monstersCount = placed / 2;
+    }
+
+    /**
+     * Plays one turn: the fighters move, then adjacent fighters heal or attack each other,
+     * then the defeated fighters are removed. Does nothing when the game is over.
+    */
+    public void step() {
+        if (isDone()) {
+            return;
+        }
+        long start = 0;
+        long allocated = 0;
+        if (metrics != null) {
+            allocated = TurnMetrics.threadAllocatedBytes();
+            start = System.nanoTime();
+        }
+        if (defeated.length() * 64 < fighters.size()) {
+            defeated = new AtomicLongArray((fighters.size() + 63) / 64); // Only when fighters were added
+        }
+        // --- Phase 1: Fighter Movement ---
+        if (flowField != null && turn % flowInterval == 0) {
+            flowField.refresh(fighters);
+        }
+        long moved;
+        if (wheel != null) {
+            scheduleAddedFighters();
+            playActivations(); // Event-driven: the due fighters move and act in one go
+            moved = metrics != null ? System.nanoTime() : 0;
+        } else {
+            updateTileStates();
+            forEachRegion(moveWork);
+            moved = metrics != null ? System.nanoTime() : 0;
+
+            // --- Phase 2: Interactions (Attack/Heal) ---
+            updateTileStates(); // Again, so that a fighter that moved next to an enemy is on a contested tile
+            forEachRegion(interactWork);
+        }
+        long interacted = metrics != null ? System.nanoTime() : 0;
+
+        // --- Phase 3: Remove Defeated Fighters ---
+        // From the last slot down: a swap-removal moves the last fighter into the freed slot, and every
+        // defeated fighter after it has already been removed, so the moved fighter is always a living one
+        // and no slot needs to be looked at twice.
+        int deaths = 0;
+        if (wheel != null) {
+            // Only the fighters defeated in the tick, so that the tick does not cost a pass over the whole population
+            Arrays.sort(defeatedSlots, 0, defeatedCount);
+            for (int i = defeatedCount - 1; i >= 0; i--) {
+                removeDefeated(defeatedSlots[i]);
+            }
+            deaths = defeatedCount;
+            defeatedCount = 0;
+        } else {
+            // One pass over the bitset
+            for (int word = defeated.length() - 1; word >= 0; word--) {
+                long bits = defeated.get(word);
+                if (bits == 0) {
+                    continue;
+                }
+                defeated.set(word, 0);
+                while (bits != 0) {
+                    int bit = 63 - Long.numberOfLeadingZeros(bits);
+                    bits &= ~(1L << bit);
+                    removeDefeated(word * 64 + bit);
+                    deaths++;
+                }
+            }
+        }
+        turn++;
+        if (metrics != null) {
+            long end = System.nanoTime();
+            long after = allocated >= 0 ? TurnMetrics.threadAllocatedBytes() : -1;
+            metrics.recordTurn(moved - start, interacted - moved, end - interacted, after - allocated);
+            metrics.add(TurnMetrics.DEATHS, deaths);
+        }
+        if (recorder != null) {
+            recorder.turnPlayed(this);
+        }
+    }
+
+    /**
+     * Removes the defeated fighter at slot from the map and the counts (and from the wheel of the event-driven turns).
+    */
+    private void removeDefeated(int slot) {
+        if (listener != NO_LISTENER) {
+            listener.onDefeat(fighters.view(slot));
+        }
+        if (log != null) {
+            log.death(turn, fighters.team[slot], fighters.x[slot], fighters.y[slot]);
+        }
+        if (fighters.team[slot] == FighterStore.KNIGHT) {
+            knightsCount--;
+        } else {
+            monstersCount--;
+        }
+        if (wheel != null) {
+            wheel.remove(slot, fighters.size() - 1); // Before the store moves its last fighter into slot
+            scheduled--;
+        }
+        map.removeFighter(slot); // Frees the cell of the defeated fighter
+    }
+
+    private int regionCount() {
+        return ((map.getWidth() + TILE_SIZE - 1) / TILE_SIZE) * ((map.getHeight() + TILE_SIZE - 1) / TILE_SIZE);
+    }
+
+    /**
+     * Works out the state of every tile from the map's counts of Knights and Monsters per region (the tiles):
+     * O(tiles), however many fighters there are. Without a cruise interval a tile with fighters is always
+     * contested, so only the empty tiles are skipped and the game is the same as without the states.
+     * Two adjacent enemies are always on a contested tile, so no attack is missed by cruising.
+    */
+    private void updateTileStates() {
+        if (tileStates == null) {
+            return;
+        }
+        int across = (map.getWidth() + TILE_SIZE - 1) / TILE_SIZE;
+        int down = tileStates.length / across;
+        for (int tile = 0; tile < tileStates.length; tile++) {
+            // The teams on the tile: bit 0 for Knights, bit 1 for Monsters
+            tileTeams[tile] = (byte) ((map.getKnightsInRegion(tile) > 0 ? 1 : 0) | (map.getMonstersInRegion(tile) > 0 ? 2 : 0));
+        }
+        for (int tileY = 0; tileY < down; tileY++) {
+            for (int tileX = 0; tileX < across; tileX++) {
+                int tile = tileY * across + tileX;
+                int teams = tileTeams[tile];
+                if (teams == 0 || cruiseInterval == 0) {
+                    tileStates[tile] = teams == 0 ? TILE_EMPTY : TILE_CONTESTED;
+                    continue;
+                }
+                int around = 0; // The teams on the tile and the 8 tiles around it
+                for (int y = Math.max(tileY - 1, 0); y <= Math.min(tileY + 1, down - 1); y++) {
+                    for (int x = Math.max(tileX - 1, 0); x <= Math.min(tileX + 1, across - 1); x++) {
+                        around |= tileTeams[y * across + x];
+                    }
+                }
+                // Knights with Monsters around, or Monsters with Knights around
+                boolean contested = (teams & (around >> 1) & 1) != 0 || (teams & (around << 1) & 2) != 0;
+                tileStates[tile] = contested ? TILE_CONTESTED : TILE_CRUISING;
+            }
+        }
+    }
+
+    /**
+     * Runs a phase on every tile, or on every chunk with fighters on it for a chunked map.
+    */
+    private void forEachRegion(TileScheduler.TileWork work) {
+        if (tiles != null) {
+            tiles.forEachTile(work);
+        } else {
+            map.getChunks().forEachOccupiedChunk(work);
+        }
+    }
+
+    /**
+     * Moves the fighters standing on one tile, in row-major order.
+     * Without a flow field every fighter takes a random move. With one, it takes the move of the field,
+     * stays put next to an enemy it can hurt (HOLD), and takes a random move if the field's move is blocked,
+     * no enemy can be reached or it cannot hurt the enemies next to it (making room for a fighter that can).
+     * A fighter that steps onto a tile processed later in the turn is not moved again there.
+     * Moves across the tile border are safe: they reach at most 1 cell into a neighbouring tile,
+     * and neighbouring tiles are never processed at the same time.
+    */
+    private void moveFighters(int tile, int fromX, int fromY, int toX, int toY) {
+        if (tileStates != null && (tileStates[tile] == TILE_EMPTY
+                || tileStates[tile] == TILE_CRUISING && turn % cruiseInterval != 0)) {
+            return;
+        }
+        boolean logMoves = log != null && log.isEnabled(CombatLog.MOVE);
+        // A mark only tells this turn apart from the last one the fighter was visited in, which is at most a cruise
+        // interval (MAX_CRUISE_INTERVAL) earlier, so turns less than 256 turns apart: the low byte of the turn is enough
+        byte mark = (byte) turn;
+        int blocked = 0;
+        for (int y = fromY; y < toY; y++) {
+            for (int x = fromX; x < toX; x++) {
+                int slot = map.getFighterAt(x, y);
+                if (slot < 0 || fighters.moveMark[slot] == mark) {
+                    continue;
+                }
+                fighters.moveMark[slot] = mark;
+                if (!moveFighter(slot, x, y, logMoves)) {
+                    blocked++;
+                }
+            }
+        }
+        if (metrics != null) {
+            metrics.add(TurnMetrics.BLOCKED_MOVES, blocked); // Once per tile rather than once per move
+        }
+    }
+
+    /**
+     * Moves the fighter at slot, standing at (x,y), one step: randomly, or along the flow field.
+     * Returns false if the move was blocked (a fighter holding its place next to an enemy is not blocked).
+    */
+    private boolean moveFighter(int slot, int x, int y, boolean logMoves) {
+        int[] movesX = fighters.team[slot] == FighterStore.KNIGHT ? Knight.MOVES_X : Monster.MOVES_X;
+        int[] movesY = fighters.team[slot] == FighterStore.KNIGHT ? Knight.MOVES_Y : Monster.MOVES_Y;
+        int direction = roll(x, y, 0, movesX.length);
+        if (flowField != null) {
+            int flow = flowField.getMove(fighters.team[slot], y * map.getWidth() + x);
+            if (flow == FlowField.HOLD && canHurtNeighbour(slot, x, y)) {
+                return true;
+            }
+            if (flow >= 0 && map.canMoveTo(x + movesX[flow], y + movesY[flow])) {
+                direction = flow;
+            }
+        }
+        if (!map.moveFighter(slot, x + movesX[direction], y + movesY[direction])) {
+            return false;
+        }
+        if (logMoves) {
+            log.move(turn, fighters.team[slot], x, y, x + movesX[direction], y + movesY[direction]);
+        }
+        return true;
+    }
+
+    /**
+     * Plays one tick of the event-driven turns: the fighters due now act one after the other, in an order
+     * drawn from the seed and the tick (so no fighter always acts first), and are scheduled to act again
+     * after their team's interval. An activation moves the fighter (as in moveFighters), then lets it act
+     * on each of its 8 living neighbours in row-major order, on its own: it gives medicine to a wounded
+     * friend (if it has some left and a 50% roll succeeds) and attacks an enemy whose attackPower is not
+     * above its own, for attackPower - defence damage. A fighter defeated in the tick does not act any more.
+     * The fighters defeated in the tick are listed for the removal at its end.
+     * The tick costs O(k log k) for its k activations, whatever the size of the map and the population.
+    */
+    private void playActivations() {
+        int count = wheel.dueCount(turn);
+        if (due.length < count) {
+            due = new int[Math.max(count, due.length * 2)];
+            order = new long[due.length];
+        }
+        wheel.take(turn, due);
+        for (int i = 0; i < count; i++) {
+            int slot = due[i];
+            long key = GameRandom.hash(turnKey, turn, ((long) fighters.y[slot] * map.getWidth() + fighters.x[slot]) * 16 + 11, 1 << 30);
+            order[i] = key << 32 | i;
+        }
+        Arrays.sort(order, 0, count);
+
+        boolean logMoves = log != null && log.isEnabled(CombatLog.MOVE);
+        int blocked = 0;
+        int attacks = 0;
+        int heals = 0;
+        for (int i = 0; i < count; i++) {
+            int slot = due[(int) order[i]];
+            if (fighters.health[slot] <= 0) {
+                continue; // Defeated earlier in the tick: it is removed at the end of the tick
+            }
+            if (!moveFighter(slot, fighters.x[slot], fighters.y[slot], logMoves)) {
+                blocked++;
+            }
+            int x = fighters.x[slot];
+            int y = fighters.y[slot];
+            int neighbour = 0; // 1 to 8 in row-major order, as in interactFighters
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dx = -1; dx <= 1; dx++) {
+                    if (dx == 0 && dy == 0) {
+                        continue;
+                    }
+                    neighbour++;
+                    int other = map.getFighterAt(x + dx, y + dy);
+                    if (other < 0 || fighters.health[other] <= 0) {
+                        continue;
+                    }
+                    if (fighters.team[other] == fighters.team[slot]) {
+                        if (fighters.medicine[slot] > 0 && fighters.health[other] < 3 && roll(x, y, neighbour, 2) == 0) {
+                            heal(other, slot);
+                            heals++;
+                        }
+                    } else if (fighters.attackPower[slot] >= fighters.attackPower[other]) {
+                        attack(slot, other, Math.max(fighters.attackPower[slot] - fighters.defence[other], 0));
+                        attacks++;
+                    }
+                }
+            }
+            wheel.schedule(slot, turn + intervalOf(slot));
+        }
+        if (metrics != null) {
+            metrics.add(TurnMetrics.BLOCKED_MOVES, blocked);
+            metrics.add(TurnMetrics.ATTACKS, attacks);
+            metrics.add(TurnMetrics.HEALS, heals);
+        }
+    }
+
+    /**
+     * Schedules the fighters placed on the map since the wheel was last filled (they take the slots after the
+     * ones it knows), each after a random delay within its interval, as setActionIntervals does.
+     * The delay only depends on the turn and the cell, so the fighters get the same one whether they are
+     * scheduled by the next tick, the state hash or a SaveFile.
+    */
+    private void scheduleAddedFighters() {
+        if (scheduled == fighters.size()) {
+            return;
+        }
+        wheel.ensureCapacity(fighters.size());
+        for (int slot = scheduled; slot < fighters.size(); slot++) {
+            wheel.schedule(slot, turn + roll(fighters.x[slot], fighters.y[slot], 12, intervalOf(slot)));
+        }
+        scheduled = fighters.size();
+    }
+
+    private int intervalOf(int slot) {
+        return fighters.team[slot] == FighterStore.KNIGHT ? knightInterval : monsterInterval;
+    }
+
+    /**
+     * Checks if the fighter at slot, standing at (x,y), would damage one of the enemies among its 8 neighbours.
+    */
+    private boolean canHurtNeighbour(int slot, int x, int y) {
+        for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                int other = map.getFighterAt(x + dx, y + dy);
+                if (other >= 0 && fighters.team[other] != fighters.team[slot]
+                        && fighters.attackPower[slot] >= fighters.attackPower[other]
+                        && fighters.attackPower[slot] > fighters.defence[other]) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Lets the adjacent fighters interact, each pair once: every living fighter standing on one tile,
+     * in row-major order, with its living neighbours to the E, SW, S and SE (the pairs with the other
+     * 4 neighbours belong to the cells that come before it). These neighbours can be across the tile border,
+     * in tiles that are never processed at the same time.
+     *
+     * The two fighters of a pair act at the same time, both deciding from the state before the pair:
+     * - Same team: each one receives medicine from the other if it is wounded (health < 3), the other has
+     *   medicine left and its own roll succeeds (a 50% chance).
+     * - Opposite teams: each one attacks the other if its attackPower >= the other's (both do when equal,
+     *   and both can be defeated), for attackPower - the other's defence damage (see Fighter.attack).
+     * The pairs themselves are resolved one after the other: a fighter defeated in a pair takes no part in
+     * the later pairs of the turn.
+    */
+    private void interactFighters(int tile, int fromX, int fromY, int toX, int toY) {
+        if (tileStates != null && tileStates[tile] != TILE_CONTESTED) {
+            return;
+        }
+        // The positions do not change in this phase, so all the pairs of the tile can be listed first.
+        // Whether the fighters are still alive is only checked when the pair is played.
+        CombatBatch batch = batches.get();
+        batch.clear();
+        for (int y = fromY; y < toY; y++) {
+            for (int x = fromX; x < toX; x++) {
+                int slot = map.getFighterAt(x, y);
+                if (slot < 0) {
+                    continue; // An empty cell or the player
+                }
+                for (int k = 0; k < PAIR_DX.length; k++) {
+                    int other = map.getFighterAt(x + PAIR_DX[k], y + PAIR_DY[k]);
+                    if (other >= 0) {
+                        batch.add(fighters, slot, other, k);
+                    }
+                }
+            }
+        }
+        if (batch.size() == 0) {
+            return;
+        }
+        combatKernel.resolve(batch);
+
+        int attacks = 0;
+        int heals = 0;
+        for (int pair = 0; pair < batch.size(); pair++) {
+            int slot = batch.first[pair];
+            int other = batch.second[pair];
+            // A fighter defeated in an earlier pair takes no part in the later ones
+            if (fighters.health[slot] <= 0 || fighters.health[other] <= 0) {
+                continue;
+            }
+            if (fighters.team[slot] == fighters.team[other]) {
+                int k = batch.neighbour[pair];
+                boolean slotHealed = fighters.medicine[other] > 0 && fighters.health[slot] < 3
+                        && roll(fighters.x[slot], fighters.y[slot], PAIR_NEIGHBOUR[k], 2) == 0;
+                boolean otherHealed = fighters.medicine[slot] > 0 && fighters.health[other] < 3
+                        && roll(fighters.x[other], fighters.y[other], 9 - PAIR_NEIGHBOUR[k], 2) == 0;
+                if (slotHealed) {
+                    heal(slot, other);
+                    heals++;
+                }
+                if (otherHealed) {
+                    heal(other, slot);
+                    heals++;
+                }
+            } else {
+                // The damages only depend on attackPower and defence, which never change,
+                // so applying the two attacks one after the other gives the simultaneous result.
+                if (batch.firstDamage[pair] >= 0) {
+                    attack(slot, other, batch.firstDamage[pair]);
+                    attacks++;
+                }
+                if (batch.secondDamage[pair] >= 0) {
+                    attack(other, slot, batch.secondDamage[pair]);
+                    attacks++;
+                }
+            }
+        }
+        if (metrics != null) {
+            metrics.add(TurnMetrics.ATTACKS, attacks);
+            metrics.add(TurnMetrics.HEALS, heals);
+        }
+    }
+
+    /**
+     * The giver gives one unit of medicine to the receiver, whose health goes up by 1.
+    */
+    private void heal(int receiver, int giver) {
+        fighters.health[receiver]++;
+        fighters.medicine[giver]--;
+        map.markChanged(fighters.x[receiver], fighters.y[receiver]); // The receiver's health is drawn
+        if (listener != NO_LISTENER) {
+            listener.onHeal(fighters.view(giver), fighters.view(receiver));
+        }
+        if (log != null) {
+            log.heal(turn, fighters.team[receiver], fighters.x[receiver], fighters.y[receiver],
+                    fighters.x[giver], fighters.y[giver], fighters.health[receiver]);
+        }
+    }
+
+    /**
+     * The attacker hits the target for damage (attackPower - defence, at least 0, worked out by the CombatKernel).
+     * A target whose health reaches 0 is marked as defeated.
+    */
+    private void attack(int attacker, int target, int damage) {
+        fighters.health[target] = (byte) Math.max(fighters.health[target] - damage, 0);
+        if (damage > 0) {
+            map.markChanged(fighters.x[target], fighters.y[target]);
+        }
+        if (listener != NO_LISTENER) {
+            listener.onAttack(fighters.view(attacker), fighters.view(target), damage);
+        }
+        if (log != null) {
+            log.attack(turn, fighters.team[attacker], fighters.x[attacker], fighters.y[attacker], fighters.team[target],
+                    fighters.x[target], fighters.y[target], damage, fighters.health[target]);
+        }
+        if (fighters.health[target] == 0) {
+            if (wheel != null) {
+                // The event-driven turns play on one thread, and a defeated fighter is never attacked again
+                if (defeatedCount == defeatedSlots.length) {
+                    defeatedSlots = Arrays.copyOf(defeatedSlots, defeatedCount * 2);
+                }
+                defeatedSlots[defeatedCount++] = target;
+            } else {
+                // Several tiles of the same colour can mark fighters whose bits share a word
+                defeated.getAndAccumulate(target >>> 6, 1L << target, (bits, bit) -> bits | bit);
+            }
+        }
+    }
+
+    /**
+     * A random number in [0, bound) for a decision taken at cell (x,y) in the current turn.
+     * It depends only on the seed, the turn, the cell and which decision it is (salt),
+     * never on the order in which the decisions are taken.
+    */
+    private int roll(int x, int y, int salt, int bound) {
+        long cell = (long) y * map.getWidth() + x;
+        return GameRandom.hash(turnKey, turn, cell * 16 + salt, bound);
+    }
+
+    /**
+     * Plays up to n turns and stops early if the game ends. Returns the number of turns played.
+    */
+    public long stepN(long n) {
+        long played = 0;
+        while (played < n && !isDone()) {
+            step();
+            played++;
+        }
+        return played;
+    }
+
+    /**
+     * Plays turns until one team has been eliminated. Returns the number of turns played.
+     * Fighters only walk randomly, so a game where the teams can never meet does not end;
+     * use runUntilDone(maxTurns) when that matters.
+    */
+    public long runUntilDone() {
+        return runUntilDone(Long.MAX_VALUE);
+    }
+
+    /**
+     * Plays turns until one team has been eliminated or maxTurns turns were played.
+    */
+    public long runUntilDone(long maxTurns) {
+        return stepN(maxTurns);
+    }
+
+    /**
+     * Moves the player by (dx, dy). Returns false if the player cannot move there.
+    */
+    public boolean movePlayer(int dx, int dy) {
+        boolean moved = player.movePlayer(player.getX() + dx, player.getY() + dy, map);
+        if (moved && recorder != null) {
+            recorder.playerMoved(turn, dx, dy);
+        }
+        if (!moved && metrics != null) {
+            metrics.add(TurnMetrics.PLAYER_BLOCKED_MOVES, 1);
+        }
+        return moved;
+    }
+
+    /**
+     * Tells the replay recorder (if any) that a front end paused or resumed the game.
+     * The turns do not depend on it.
+    */
+    public void recordPause(boolean paused) {
+        if (recorder != null) {
+            recorder.pauseChanged(turn, paused);
+        }
+    }
+
+    /**
+     * A hash of everything the next turns depend on: the turn, the player's position and every fighter
+     * (position, stats, move mark and, in the event-driven turns, the delay until its next activation, in slot order).
+     * Two games with the same hash at a turn are the same game, so a replay compares these hashes turn by turn
+     * to catch a game that plays differently.
+     * The flow field is not hashed: between two refreshes it is the one searched from the positions at the last
+     * refresh, which were hashed then, and the search only depends on them and the terrain. This holds as long as
+     * the field is always rebuilt that way (a SaveFile restores it as it was).
+    */
+    public long getStateHash() {
+        if (wheel != null) {
+            scheduleAddedFighters();
+        }
+        long hash = GameRandom.mix64(turn) + player.getX() * 31L + player.getY();
+        for (int slot = 0; slot < fighters.size(); slot++) {
+            long position = (long) fighters.x[slot] << 32 | (fighters.y[slot] & 0xFFFFFFFFL);
+            long stats = fighters.team[slot] | fighters.health[slot] << 8 | fighters.attackPower[slot] << 16
+                    | fighters.defence[slot] << 24 | (long) fighters.medicine[slot] << 32 | (fighters.moveMark[slot] & 0xFFL) << 40;
+            if (wheel != null) {
+                stats |= (long) wheel.delayOf(slot, turn) << 48; // Below ActivationWheel.SIZE, so it fits the top byte
+            }
+            hash = (hash + position) * 0x9E3779B97F4A7C15L;
+            hash = (hash ^ stats ^ hash >>> 29) * 0xBF58476D1CE4E5B9L;
+        }
+        return GameRandom.mix64(hash);
+    }
+
+    /**
+     * The game is over when either all Knights or all Monsters have been eliminated.
+    */
+    public boolean isDone() {
+        return knightsCount == 0 || monstersCount == 0;
+    }
+
+    /**
+     * Returns the total health of all the active fighters of a team (FighterStore.KNIGHT or FighterStore.MONSTER).
+    */
+    public int getTotalHealth(byte team) {
+        int totalHealth = 0;
+        for (int slot = 0; slot < fighters.size(); slot++) {
+            if (fighters.team[slot] == team) {
+                totalHealth += fighters.health[slot];
+            }
+        }
+        return totalHealth;
+    }
+
+    // Getters
+    public Map getMap() {
+        return map;
+    }
+
+    public Player getPlayer() {
+        return player;
+    }
+
+    public FighterStore getFighters() {
+        return fighters;
+    }
+
+    public int getKnightsCount() {
+        return knightsCount;
+    }
+
+    public int getMonstersCount() {
+        return monstersCount;
+    }
+
+    public long getTurn() {
+        return turn;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getFlowInterval() {
+        return flowInterval;
+    }
+
+    public int getCruiseInterval() {
+        return cruiseInterval;
+    }
+
+    public int getKnightInterval() {
+        return knightInterval;
+    }
+
+    public int getMonsterInterval() {
+        return monsterInterval;
+    }
+
+    /**
+     * The number of ticks until the fighter at slot acts in the event-driven turns (0 if it acts in the next one),
+     * or -1 without them. A SaveFile keeps it.
+    */
+    int getActivationDelay(int slot) {
+        if (wheel == null) {
+            return -1;
+        }
+        scheduleAddedFighters();
+        return wheel.delayOf(slot, turn);
+    }
+
+    // State that a SaveFile keeps besides the map
+    FlowField getFlowField() {
+        return flowField;
+    }
+
+    long getTurnKey() {
+        return turnKey;
+    }
+
+    GameRandom getRandom() {
+        return rand;
+    }
+
+    // Setters
+    public void setListener(SimulationListener listener) {
+        this.listener = listener != null ? listener : NO_LISTENER;
+    }
+
+    /**
+     * Makes the fighters follow a flow field towards the nearest enemy, refreshed every interval turns
+     * (see FlowField), or walk randomly again with 0. The field is built at once from the current positions.
+     * Games end much sooner than with random walks, because the teams seek each other out.
+    */
+    public void setFlowInterval(int interval) {
+        if (interval < 0) {
+            throw new IllegalArgumentException("The flow interval cannot be negative.");
+        }
+        if (interval > 0 && map.isChunked()) {
+            throw new IllegalStateException("Flow fields need the whole terrain, which a chunked map does not keep.");
+        }
+        FlowField field = null;
+        if (interval > 0) {
+            field = flowField != null ? flowField : new FlowField(map.getTerrain());
+            field.refresh(fighters);
+        }
+        setFlowField(field, interval);
+    }
+
+    /**
+     * Lets the fighters far from any enemy cruise (see updateTileStates): on a tile with no enemy in it or in the
+     * 8 tiles around it, the fighters only move on the turns that are a multiple of interval, and do not heal each other.
+     * They are woken as soon as an enemy comes within a tile of theirs. 0 (the default) keeps every fighter active.
+     * Ignored on a chunked map, which plays only its occupied chunks already.
+    */
+    public void setCruiseInterval(int interval) {
+        if (interval < 0 || interval > MAX_CRUISE_INTERVAL) {
+            throw new IllegalArgumentException("The cruise interval must be between 0 and " + MAX_CRUISE_INTERVAL + ".");
+        }
+        this.cruiseInterval = interval;
+    }
+
+    /**
+     * Switches to event-driven turns (see playActivations): every turn is a tick, in which only the fighters
+     * due then act, Knights every knightInterval ticks and Monsters every monsterInterval ticks
+     * (1 to ActivationWheel.MAX_INTERVAL), so one team can be faster than the other.
+     * Each fighter first acts after a random delay within its interval, so that a team does not act all at once.
+     * 0 and 0 go back to the phases played by every fighter each turn. The cruise interval is not used meanwhile.
+    */
+    public void setActionIntervals(int knightInterval, int monsterInterval) {
+        if (knightInterval == 0 && monsterInterval == 0) {
+            setActivations(0, 0, null);
+            return;
+        }
+        int[] delays = new int[fighters.size()];
+        for (int slot = 0; slot < delays.length; slot++) {
+            int interval = fighters.team[slot] == FighterStore.KNIGHT ? knightInterval : monsterInterval;
+            delays[slot] = interval > 0 ? roll(fighters.x[slot], fighters.y[slot], 12, interval) : 0;
+        }
+        setActivations(knightInterval, monsterInterval, delays);
+    }
+
+    /**
+     * Sets the event-driven turns with the delay until the next activation of every fighter
+     * (a SaveFile restores those of the saved game), or turns them off with null.
+    */
+    void setActivations(int knightInterval, int monsterInterval, int[] delays) {
+        if (delays == null) {
+            this.wheel = null;
+            this.scheduled = 0;
+            this.knightInterval = 0;
+            this.monsterInterval = 0;
+            return;
+        }
+        if (knightInterval < 1 || knightInterval > ActivationWheel.MAX_INTERVAL
+                || monsterInterval < 1 || monsterInterval > ActivationWheel.MAX_INTERVAL) {
+            throw new IllegalArgumentException("The action intervals must be between 1 and " + ActivationWheel.MAX_INTERVAL + ".");
+        }
+        ActivationWheel newWheel = new ActivationWheel();
+        newWheel.ensureCapacity(fighters.size());
+        for (int slot = 0; slot < fighters.size(); slot++) {
+            int interval = fighters.team[slot] == FighterStore.KNIGHT ? knightInterval : monsterInterval;
+            if (delays[slot] < 0 || delays[slot] >= interval) {
+                throw new IllegalArgumentException("The delay of fighter " + slot + " is not within its interval.");
+            }
+            newWheel.schedule(slot, turn + delays[slot]);
+        }
+        this.wheel = newWheel;
+        this.scheduled = fighters.size();
+        this.knightInterval = knightInterval;
+        this.monsterInterval = monsterInterval;
+    }
+
+    /**
+     * Sets the back end that works out the damages of the attacks (CombatKernel.SCALAR by default, or
+     * CombatKernel.vectorOrScalar()). The game is the same with every back end.
+    */
+    public void setCombatKernel(CombatKernel kernel) {
+        this.combatKernel = kernel != null ? kernel : CombatKernel.SCALAR;
+    }
+
+    public CombatKernel getCombatKernel() {
+        return combatKernel;
+    }
+
+    /**
+     * Sets a flow field as it is (a SaveFile restores the one the saved game was using).
+    */
+    void setFlowField(FlowField field, int interval) {
+        this.flowField = field;
+        this.flowInterval = field != null ? interval : 0;
+    }
+
+    /**
+     * Sets the log that records the attacks, heals, deaths and moves of the turns (null for none).
+     * Unlike the listener, it is cheap enough for games with thousands of fighters in contact.
+    */
+    public void setCombatLog(CombatLog log) {
+        this.log = log;
+    }
+
+    /**
+     * Sets the recorder of the player's inputs and of the turns (null for none). See ReplayRecorder.
+    */
+    public void setRecorder(ReplayRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Sets the metrics that time the phases of the turns and count their events (null for none).
+     * The fighters that could not be placed when the map was filled are counted at once.
+    */
+    public void setMetrics(TurnMetrics metrics) {
+        this.metrics = metrics;
+        if (metrics != null) {
+            metrics.add(TurnMetrics.PLACEMENT_FAILURES, placementFailures);
+        }
+    }
+}
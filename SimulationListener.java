@@ -0,0 +1,22 @@
+/**
+ * Receives what happens during a Simulation turn (attacks, healing and defeats).
+ * The Simulation itself prints nothing, so each front end decides how to show these events.
+ * All methods do nothing by default, so a listener only overrides what it needs.
+*/
+
+public interface SimulationListener {
+    /**
+     * Called after attacker attacked target. damage is 0 when the attack dealt no damage.
+    */
+    default void onAttack(Fighter attacker, Fighter target, int damage) {}
+
+    /**
+     * Called after giver gave one unit of medicine to receiver.
+    */
+    default void onHeal(Fighter giver, Fighter receiver) {}
+
+    /**
+     * Called when a defeated fighter is removed from the map.
+    */
+    default void onDefeat(Fighter fighter) {}
+}
@@ -0,0 +1,320 @@
+/**
+ * Runs a Simulation on its own thread, so that the Swing Event Dispatch Thread never waits for a turn.
+ * Turns are played in one of three modes: at a fixed rate (ticksPerSecond), back to back (fast-forward),
+ * or one at a time (step mode, where each player move or step() plays a turn, like the original game).
+ *
+ * The GUI never touches the Simulation. Its keystrokes go into a concurrent input queue, which the
+ * simulation thread applies between turns. After every change the simulation thread fills a BoardSnapshot
+ * and publishes it through a lock-free TripleBuffer; the GUI draws the newest one at its own frame rate.
+ * Each snapshot is brought up to date by copying only the cells that changed since it was last filled.
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+public class SimulationRunner implements MapListener {
+    // Modes
+    public static final int RUNNING = 0; // A turn every 1 / ticksPerSecond seconds
+    public static final int FAST_FORWARD = 1; // Turns back to back, as fast as the simulation can play them
+    public static final int STEP = 2; // A turn for each player move or STEP input
+
+    // Inputs (small Integers are cached, so queueing them allocates nothing)
+    public static final int MOVE_UP = 0;
+    public static final int MOVE_DOWN = 1;
+    public static final int MOVE_LEFT = 2;
+    public static final int MOVE_RIGHT = 3;
+    public static final int PAUSE = 4;
+    public static final int RESUME = 5;
+    public static final int STEP_ONE = 6; // Plays one turn in step mode
+    public static final int TOGGLE_FAST_FORWARD = 7;
+    public static final int TOGGLE_STEP_MODE = 8;
+    public static final int FASTER = 9; // Doubles the tick rate
+    public static final int SLOWER = 10; // Halves the tick rate
+
+    public static final int MAX_TICKS_PER_SECOND = 1000;
+
+    private final Simulation simulation; // Only touched by the simulation thread once it has started
+    private final Map map;
+    private final ConcurrentLinkedQueue<Integer> inputs = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private volatile boolean running;
+
+    // State of the simulation thread
+    private int mode = RUNNING;
+    private boolean paused;
+    private int ticksPerSecond;
+    private int pendingSteps; // Turns requested in step mode
+    private long blockedMoves;
+    private long version;
+
+    // Snapshots and the changed cells they still have to copy
+    private final BoardSnapshot[] buffers;
+    private final TripleBuffer<BoardSnapshot> snapshots;
+    private final CellList[] stale = new CellList[3]; // For each buffer, the cells changed since it was last filled
+    private final AtomicLongArray dirty; // Bit c is set when cell c changed since the last publish (set from several threads)
+    private final AtomicLongArray dirtyWords; // Bit w is set when word w of dirty has a bit set, so publish skips clean words
+    private final CellList changes; // Cells changed since the last publish, collected from dirty by publish
+    private final CellList unseen; // Cells changed since the last snapshot the GUI took
+
+    public SimulationRunner(Simulation simulation, int ticksPerSecond) {
+        this.simulation = simulation;
+        this.map = simulation.getMap();
+        this.ticksPerSecond = Math.max(1, Math.min(ticksPerSecond, MAX_TICKS_PER_SECOND));
+        int cellCount = map.getWidth() * map.getHeight();
+        buffers = new BoardSnapshot[3];
+        for (int i = 0; i < 3; i++) {
+            buffers[i] = new BoardSnapshot(map.getWidth(), map.getHeight());
+            stale[i] = new CellList(cellCount);
+            stale[i].all = true; // Empty buffers are filled completely the first time
+        }
+        snapshots = new TripleBuffer<>(buffers[0], buffers[1], buffers[2]);
+        dirty = new AtomicLongArray((cellCount + 63) / 64);
+        dirtyWords = new AtomicLongArray((dirty.length() + 63) / 64);
+        changes = new CellList(cellCount);
+        unseen = new CellList(cellCount);
+        unseen.all = true; // The GUI has seen nothing yet
+        map.setListener(this);
+        publish(); // The GUI can draw the initial state before the thread starts
+        thread = new Thread(this::run, "simulation");
+        thread.setDaemon(true);
+    }
+
+    public void start() {
+        running = true;
+        thread.start();
+    }
+
+    /**
+     * Stops the simulation thread after the turn it is playing.
+    */
+    public void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Queues an input (MOVE_UP, PAUSE, ...) for the simulation thread. Safe to call from any thread.
+    */
+    public void offer(int input) {
+        inputs.offer(input);
+        LockSupport.unpark(thread); // Wakes the thread if it is waiting for the next tick or for input
+    }
+
+    /**
+     * The newest published snapshot. Only one thread (the GUI's) may call this; the snapshot
+     * does not change until that thread calls it again.
+    */
+    public BoardSnapshot getSnapshot() {
+        return snapshots.getReadBuffer();
+    }
+
+    /**
+     * Called by the map (on the simulation thread or the Simulation's worker threads) for every changed cell.
+     * It only sets the cell's bit; publish collects the marked cells once the turn is over.
+    */
+    @Override
+    public void cellChanged(int x, int y) {
+        int cell = y * map.getWidth() + x;
+        int word = cell >>> 6;
+        long bit = 1L << cell;
+        if ((dirty.get(word) & bit) != 0) {
+            return; // Already marked in this turn
+        }
+        long before = dirty.getAndAccumulate(word, bit, (bits, b) -> bits | b);
+        if (before == 0) {
+            dirtyWords.getAndAccumulate(word >>> 6, 1L << word, (bits, b) -> bits | b);
+        }
+    }
+
+    private void run() {
+        long nextTick = System.nanoTime();
+        while (running) {
+            boolean changed = applyInputs();
+            boolean turn = false;
+            long now = System.nanoTime();
+            if (!paused && !simulation.isDone()) {
+                if (mode == FAST_FORWARD) {
+                    turn = true;
+                } else if (mode == STEP) {
+                    turn = pendingSteps > 0;
+                    pendingSteps -= turn ? 1 : 0;
+                } else if (now - nextTick >= 0) {
+                    turn = true;
+                    long tickNanos = TimeUnit.SECONDS.toNanos(1) / ticksPerSecond;
+                    // A tick that took too long delays the next ones instead of making them catch up in a burst
+                    nextTick = Math.max(nextTick + tickNanos, now);
+                }
+            }
+            if (turn) {
+                simulation.step();
+            }
+            if (turn || changed) {
+                publish();
+            }
+            if (!turn && running) {
+                waitForWork(nextTick);
+            }
+        }
+    }
+
+    /**
+     * Waits until the next tick in RUNNING mode, or until an input arrives. Inputs wake the thread early.
+    */
+    private void waitForWork(long nextTick) {
+        if (!inputs.isEmpty()) {
+            return;
+        }
+        if (mode == RUNNING && !paused && !simulation.isDone()) {
+            LockSupport.parkNanos(this, nextTick - System.nanoTime());
+        } else {
+            LockSupport.park(this);
+        }
+    }
+
+    /**
+     * Applies the queued inputs. Returns true if the state shown to the GUI changed.
+    */
+    private boolean applyInputs() {
+        boolean changed = false;
+        Integer input;
+        while ((input = inputs.poll()) != null) {
+            changed = true;
+            switch (input) {
+                case MOVE_UP: movePlayer(0, -1); break;
+                case MOVE_DOWN: movePlayer(0, 1); break;
+                case MOVE_LEFT: movePlayer(-1, 0); break;
+                case MOVE_RIGHT: movePlayer(1, 0); break;
+                case PAUSE: paused = true; simulation.recordPause(true); break;
+                case RESUME: paused = false; simulation.recordPause(false); break;
+                case STEP_ONE: pendingSteps += mode == STEP && !paused ? 1 : 0; break;
+                case TOGGLE_FAST_FORWARD: mode = mode == FAST_FORWARD ? RUNNING : FAST_FORWARD; break;
+                case TOGGLE_STEP_MODE: mode = mode == STEP ? RUNNING : STEP; pendingSteps = 0; break;
+                case FASTER: ticksPerSecond = Math.min(ticksPerSecond * 2, MAX_TICKS_PER_SECOND); break;
+                case SLOWER: ticksPerSecond = Math.max(ticksPerSecond / 2, 1); break;
+                default: changed = false;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Moves the player (ignored while paused or after the game ended). In step mode a move plays a turn.
+    */
+    private void movePlayer(int dx, int dy) {
+        if (paused || simulation.isDone()) {
+            return;
+        }
+        if (simulation.movePlayer(dx, dy)) {
+            pendingSteps += mode == STEP ? 1 : 0;
+        } else {
+            blockedMoves++;
+        }
+    }
+
+    /**
+     * Fills the write buffer with the current state and publishes it.
+    */
+    private void publish() {
+        BoardSnapshot snapshot = snapshots.getWriteBuffer();
+        collectChanges();
+        CellList changed = changes;
+        for (int i = 0; i < 3; i++) {
+            if (buffers[i] == snapshot) {
+                stale[i].addAll(changed);
+                stale[i].copyInto(snapshot, map);
+                stale[i].clear();
+            } else {
+                stale[i].addAll(changed); // Copied when that buffer is filled next
+            }
+        }
+        if (!snapshots.isUnread()) {
+            unseen.clear(); // The GUI took the previous snapshot, with everything before it
+        }
+        unseen.addAll(changed);
+        snapshot.setChanged(unseen.cells, unseen.count, unseen.all);
+        snapshot.setCounters(simulation, paused);
+        snapshot.setRunnerState(++version, blockedMoves, paused, mode, ticksPerSecond);
+        changed.clear();
+        snapshots.publish();
+    }
+
+    /**
+     * Moves the cells marked in dirty into changes and clears their bits. No turn is running,
+     * so no other thread marks cells now.
+    */
+    private void collectChanges() {
+        for (int summary = 0; summary < dirtyWords.length(); summary++) {
+            long words = dirtyWords.get(summary);
+            if (words == 0) {
+                continue;
+            }
+            dirtyWords.set(summary, 0);
+            while (words != 0) {
+                int word = summary * 64 + Long.numberOfTrailingZeros(words);
+                words &= words - 1;
+                long bits = dirty.get(word);
+                dirty.set(word, 0);
+                while (bits != 0) {
+                    changes.add(word * 64 + Long.numberOfTrailingZeros(bits));
+                    bits &= bits - 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * A list of cells that gives up and means "every cell" once it holds a quarter of the map.
+    */
+    private static class CellList {
+        private final int limit;
+        private int[] cells = new int[64];
+        private int count;
+        private boolean all;
+
+        CellList(int cellCount) {
+            this.limit = Math.max(cellCount / 4, 1);
+        }
+
+        void add(int cell) {
+            if (all) {
+                return;
+            }
+            if (count == limit) {
+                all = true;
+                return;
+            }
+            if (count == cells.length) {
+                cells = Arrays.copyOf(cells, Math.min(count * 2, limit));
+            }
+            cells[count++] = cell;
+        }
+
+        void addAll(CellList other) {
+            if (other.all) {
+                all = true;
+                return;
+            }
+            for (int i = 0; i < other.count && !all; i++) {
+                add(other.cells[i]);
+            }
+        }
+
+        void copyInto(BoardSnapshot snapshot, Map map) {
+            if (all) {
+                snapshot.copyAll(map);
+                return;
+            }
+            for (int i = 0; i < count; i++) {
+                snapshot.copyCell(map, cells[i]);
+            }
+        }
+
+        void clear() {
+            count = 0;
+            all = false;
+        }
+    }
+}
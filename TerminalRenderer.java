@@ -0,0 +1,181 @@
+/**
+ * Draws a Map on a terminal. Each frame is built into one reusable byte buffer (the map's symbols,
+ * then a footer with the game information) and sent with a single write to a channel.
+ * It has three modes:
+ * FULL clears the screen and draws the whole map (the clear escape is part of the same write),
+ * DIFF only moves the cursor to the cells that changed since the previous frame and redraws them
+ * (ANSI escapes; it only works if nothing else prints between frames),
+ * PLAIN draws the whole map without any escape (for consoles that do not understand ANSI).
+ * awaitNextFrame() limits the frame rate.
+ */
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+public class TerminalRenderer {
+    public static final int FULL = 0;
+    public static final int DIFF = 1;
+    public static final int PLAIN = 2;
+
+    private static final byte[] CLEAR = {27, '[', 'H', 27, '[', '2', 'J'}; // ESC[H ESC[2J: cursor home, clear screen
+    private static final byte[] CLEAR_BELOW = {27, '[', 'J'}; // ESC[J: clears from the cursor to the end of the screen
+    private static final int CURSOR_MOVE_LENGTH = 24; // Longest ESC[row;colH
+
+    private final Map map;
+    private final WritableByteChannel out;
+    private final int mode;
+    private final long frameNanos; // Shortest time between two frames, 0 for no limit
+
+    private byte[] buffer; // The frame being built, reused by every frame
+    private int length;
+    private final int mapFrameLength; // Bytes of the map part of a whole frame: every row and its new line
+    private byte[] previous; // The symbols of the last frame (DIFF mode), or null before the first one
+    private long lastFrame; // System.nanoTime() of the last frame
+
+    public TerminalRenderer(Map map, WritableByteChannel out, int mode, int maxFramesPerSecond) {
+        this.map = map;
+        this.out = out;
+        this.mode = mode;
+        this.frameNanos = maxFramesPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / maxFramesPerSecond : 0;
+        this.mapFrameLength = (map.getWidth() + 1) * map.getHeight();
+        this.buffer = new byte[CLEAR.length + mapFrameLength + 256];
+        this.lastFrame = System.nanoTime() - frameNanos;
+    }
+
+    /**
+     * A channel on the process's standard output. Writes to it bypass System.out and its per-call locking.
+    */
+    public static WritableByteChannel standardOutput() {
+        return new FileOutputStream(FileDescriptor.out).getChannel();
+    }
+
+    /**
+     * Draws the map followed by the footer (one or more lines of text, no ANSI codes) in a single write.
+    */
+    public void render(CharSequence footer) throws IOException {
+        length = 0;
+        if (mode != DIFF || previous == null || !appendDiff()) {
+            length = 0;
+            if (mode != PLAIN) {
+                append(CLEAR);
+            }
+            appendMap();
+        }
+        ensureCapacity(footer.length() + 1);
+        buffer[length++] = '\n'; // An empty line between the map and the footer, as Map.display prints
+        for (int i = 0; i < footer.length(); i++) {
+            char c = footer.charAt(i);
+            buffer[length++] = (byte) (c < 128 ? c : '?');
+        }
+        System.out.flush(); // Text printed through System.out comes out before the frame
+        ByteBuffer frame = ByteBuffer.wrap(buffer, 0, length);
+        while (frame.hasRemaining()) {
+            out.write(frame);
+        }
+        lastFrame = System.nanoTime();
+    }
+
+    /**
+     * Waits until 1 / maxFramesPerSecond seconds have passed since the last frame (does not wait without a limit).
+    */
+    public void awaitNextFrame() throws InterruptedException {
+        long wait = lastFrame + frameNanos - System.nanoTime();
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    /**
+     * Appends every row of the map. In DIFF mode it also remembers the symbols for the next frame.
+    */
+    private void appendMap() {
+        int width = map.getWidth();
+        if (mode == DIFF && previous == null) {
+            previous = new byte[width * map.getHeight()];
+        }
+        for (int y = 0; y < map.getHeight(); y++) {
+            for (int x = 0; x < width; x++) {
+                byte symbol = (byte) map.getSymbolAt(x, y);
+                buffer[length++] = symbol;
+                if (previous != null) {
+                    previous[y * width + x] = symbol;
+                }
+            }
+            buffer[length++] = '\n';
+        }
+    }
+
+    /**
+     * Appends a cursor move and the new symbols for each run of changed cells, then moves the cursor
+     * below the map and clears the old footer.
+     * Returns false (and leaves previous partly updated, which the whole frame then fixes) when
+     * the diff would be longer than a whole frame.
+    */
+    private boolean appendDiff() {
+        int width = map.getWidth();
+        for (int y = 0; y < map.getHeight(); y++) {
+            int x = 0;
+            while (x < width) {
+                byte symbol = (byte) map.getSymbolAt(x, y);
+                if (symbol == previous[y * width + x]) {
+                    x++;
+                    continue;
+                }
+                if (length + CURSOR_MOVE_LENGTH + (width - x) > mapFrameLength) {
+                    return false; // So many cells changed that the whole frame is shorter
+                }
+                appendCursorMove(y, x);
+                // Writes the run of changed cells; the cursor advances by itself after each symbol
+                do {
+                    previous[y * width + x] = symbol;
+                    buffer[length++] = symbol;
+                    x++;
+                } while (x < width && (symbol = (byte) map.getSymbolAt(x, y)) != previous[y * width + x]);
+            }
+        }
+        ensureCapacity(CURSOR_MOVE_LENGTH + CLEAR_BELOW.length);
+        appendCursorMove(map.getHeight(), 0);
+        append(CLEAR_BELOW);
+        return true;
+    }
+
+    /**
+     * Appends ESC[row;colH for the 0-based (row, col).
+    */
+    private void appendCursorMove(int row, int col) {
+        buffer[length++] = 27;
+        buffer[length++] = '[';
+        appendNumber(row + 1);
+        buffer[length++] = ';';
+        appendNumber(col + 1);
+        buffer[length++] = 'H';
+    }
+
+    private void appendNumber(int value) {
+        int digits = 1;
+        for (int v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        for (int i = length + digits - 1; i >= length; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+    }
+
+    private void append(byte[] bytes) {
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(length + extra, buffer.length * 2));
+        }
+    }
+}
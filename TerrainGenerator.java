@@ -0,0 +1,216 @@
+/**
+ * Fills a TerrainGrid with earth, trees and water, fast enough for maps of hundreds of millions of cells.
+ * SCATTERED gives every cell its own roll (70% earth, 20% trees, 10% water), NOISE shapes the same
+ * proportions into lakes and forests with coherent value noise.
+ *
+ * Every cell is a function of the key and its coordinates only: each row has its own random stream
+ * (a GameRandom seeded from the key and the row, advanced to the column where a block starts; each
+ * number gives the rolls of 4 cells), and the
+ * noise lattice is hashed with GameRandom.mix64. The grid is filled in blocks of whole words of the
+ * TerrainGrid, on all cores, and each word is built in a register and written once, so the result is
+ * the same whatever the number of threads.
+ */
+
+import java.util.stream.IntStream;
+
+public class TerrainGenerator {
+    // Terrain styles
+    public static final int SCATTERED = 0; // Independent cells
+    public static final int NOISE = 1; // Lakes and forests
+
+    private static final int BLOCK_WORDS = 1024; // Passability words (64 cells each) filled by one task
+    private static final long ROW_GAMMA = 0xC2B2AE3D27D4EB4FL; // Spreads the row numbers over the seeds of the row streams
+
+    // Value noise: OCTAVES layers of random values on lattices of 64, 16 and 4 cells,
+    // interpolated smoothly in between and weighted 1, 1/2, 1/4, ...
+    private static final int OCTAVES = 3;
+    private static final int NOISE_SHIFT = 6; // NOISE_SIZE = 64 cells
+    private static final float[][] SMOOTH = new float[OCTAVES][]; // smooth(i / size) for each offset i in a lattice cell
+    static {
+        for (int octave = 0; octave < OCTAVES; octave++) {
+            int size = 1 << (NOISE_SHIFT - 2 * octave);
+            SMOOTH[octave] = new float[size];
+            for (int i = 0; i < size; i++) {
+                SMOOTH[octave][i] = smooth((float) i / size);
+            }
+        }
+    }
+    private static final float NOISE_SCALE = 1 / 1.75f; // 1 / the sum of the weights, so the noise is 0 to 1
+    // Thresholds on the noise (0 to 1) that give about 10% water and 20% trees
+    private static final float WATER_BELOW = 0.32f;
+    private static final float TREES_ABOVE = 0.62f;
+
+    private final long key;
+    private final int style;
+
+    public TerrainGenerator(long key, int style) {
+        if (style != SCATTERED && style != NOISE) {
+            throw new IllegalArgumentException("Unknown terrain style " + style);
+        }
+        this.key = key;
+        this.style = style;
+    }
+
+    /**
+     * Fills the whole grid, replacing what it held.
+    */
+    public void fill(TerrainGrid terrain) {
+        int words = terrain.passable.length;
+        int blocks = (words + BLOCK_WORDS - 1) / BLOCK_WORDS;
+        IntStream range = IntStream.range(0, blocks);
+        (blocks > 1 ? range.parallel() : range).forEach(
+                block -> fillWords(terrain, block * BLOCK_WORDS, Math.min((block + 1) * BLOCK_WORDS, words)));
+    }
+
+    /**
+     * Fills the cells of the passability words [fromWord, toWord) and the two type words of each.
+     * A passability word and its type words hold the same 64 cells, so blocks never share a word.
+    */
+    private void fillWords(TerrainGrid terrain, int fromWord, int toWord) {
+        int width = terrain.getWidth();
+        long cells = (long) width * terrain.getHeight();
+        long[] types = terrain.types;
+        long[] passable = terrain.passable;
+        long first = (long) fromWord << 6;
+        int y = (int) (first / width);
+        int x = (int) (first - (long) y * width);
+        Row row = new Row();
+        row.start(y, x);
+
+        for (int word = fromWord; word < toWord; word++) {
+            long end = Math.min(((long) word << 6) + 64, cells);
+            long typeBits = 0; // The 2-bit types of the 32 cells of the current type word
+            long passableBits = 0;
+            int bit = 0;
+            for (long cell = (long) word << 6; cell < end; cell++, bit++) {
+                byte type = row.next(x);
+                typeBits |= (long) type << ((bit & 31) << 1);
+                passableBits |= (long) ((type - 1) >>> 31) << bit; // 1 for EARTH (0) only
+                if (bit == 31) {
+                    types[word << 1] = typeBits;
+                    typeBits = 0;
+                }
+                if (++x == width) {
+                    x = 0;
+                    row.start(++y, 0);
+                }
+            }
+            if (bit > 32) {
+                types[(word << 1) + 1] = typeBits;
+            } else if (bit < 32) {
+                types[word << 1] = typeBits; // The last word of the grid, with less than 32 cells
+            }
+            passable[word] = passableBits;
+        }
+    }
+
+    /**
+     * Fills one chunk of a chunked map (see ChunkCache): the cells fromX <= x < toX, fromY <= y < toY,
+     * at most 64 by 64. Row r of the chunk gets its passability word passable[r] and its type words
+     * types[2 * r] and types[2 * r + 1], with bit (x - fromX) for cell x, as in a TerrainGrid 64 cells wide.
+     * The cells are the same as those of a whole grid filled with the same key.
+    */
+    public void fillChunk(long[] types, long[] passable, int fromX, int fromY, int toX, int toY) {
+        Row row = new Row();
+        for (int y = fromY; y < toY; y++) {
+            row.start(y, fromX);
+            int r = y - fromY;
+            long passableBits = 0;
+            for (int x = fromX; x < toX; x++) {
+                int bit = x - fromX;
+                byte type = row.next(x);
+                types[(r << 1) + (bit >>> 5)] |= (long) type << ((bit & 31) << 1);
+                passableBits |= (long) ((type - 1) >>> 31) << bit; // 1 for EARTH (0) only
+            }
+            passable[r] = passableBits;
+        }
+    }
+
+    /**
+     * Generates the cells of one row from left to right, starting at any column.
+    */
+    private class Row {
+        private final GameRandom stream = new GameRandom(0); // SCATTERED: the stream of the row
+        private long bits; // SCATTERED: the random bits of the next cells (16 per cell, 4 cells per number of the stream)
+        // NOISE: per octave, the lattice row above and below, where the row lies between them (smoothed),
+        // and the lattice column left of the last cell with the values left and right of it (interpolated vertically)
+        private final int[] latticeY = new int[OCTAVES];
+        private final float[] rowWeight = new float[OCTAVES];
+        private final int[] latticeX = new int[OCTAVES];
+        private final float[] left = new float[OCTAVES];
+        private final float[] right = new float[OCTAVES];
+
+        void start(int y, int x) {
+            if (style == SCATTERED) {
+                stream.setState(GameRandom.mix64(key + y * ROW_GAMMA));
+                stream.advance(x >> 2); // The numbers before column x belong to the cells before it
+                if ((x & 3) != 0) {
+                    bits = stream.nextLong() >>> ((x & 3) << 4);
+                }
+                return;
+            }
+            for (int octave = 0; octave < OCTAVES; octave++) {
+                int shift = NOISE_SHIFT - 2 * octave;
+                latticeY[octave] = y >> shift;
+                rowWeight[octave] = SMOOTH[octave][y & ((1 << shift) - 1)];
+                latticeX[octave] = Integer.MIN_VALUE; // Looked up again at the first cell
+            }
+        }
+
+        /**
+         * The terrain of the cell at column x, the one after the previous call (or the column given to start).
+        */
+        byte next(int x) {
+            if (style == SCATTERED) {
+                if ((x & 3) == 0) {
+                    bits = stream.nextLong();
+                }
+                int roll = (int) (((bits & 0xFFFF) * 10) >>> 16); // 0 to 9
+                bits >>>= 16;
+                // 0-6: EARTH (0), 7-8: TREES (1), 9: WATER (2), without branches that the random rolls would mispredict
+                return (byte) (((6 - roll) >>> 31) + ((8 - roll) >>> 31));
+            }
+            float noise = 0;
+            float weight = 1;
+            for (int octave = 0; octave < OCTAVES; octave++) {
+                int shift = NOISE_SHIFT - 2 * octave;
+                int column = x >> shift;
+                if (column != latticeX[octave]) {
+                    // Moving one lattice column to the right keeps the right value as the new left one
+                    left[octave] = column == latticeX[octave] + 1 ? right[octave] : column(octave, column);
+                    right[octave] = column(octave, column + 1);
+                    latticeX[octave] = column;
+                }
+                float t = SMOOTH[octave][x & ((1 << shift) - 1)];
+                noise += weight * (left[octave] + (right[octave] - left[octave]) * t);
+                weight *= 0.5f;
+            }
+            noise *= NOISE_SCALE;
+            return noise < WATER_BELOW ? Map.WATER : noise > TREES_ABOVE ? Map.TREES : Map.EARTH;
+        }
+
+        /**
+         * The value of a lattice column at the current row: its lattice points above and below, interpolated.
+        */
+        private float column(int octave, int column) {
+            float above = lattice(octave, column, latticeY[octave]);
+            float below = lattice(octave, column, latticeY[octave] + 1);
+            return above + (below - above) * rowWeight[octave];
+        }
+    }
+
+    /**
+     * The random value (0 to 1) of a lattice point of an octave.
+    */
+    private float lattice(int octave, int column, int row) {
+        long hash = GameRandom.mix64(key + octave * 0x9E3779B97F4A7C15L + column * ROW_GAMMA + row * 0xD6E8FEB86659FD93L);
+        return (hash >>> 40) * 0x1.0p-24f;
+    }
+
+    /**
+     * Smoothstep: eases t (0 to 1) so the noise has no visible creases at the lattice lines.
+    */
+    private static float smooth(float t) {
+        return t * t * (3 - 2 * t);
+    }
+}
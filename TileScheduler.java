@@ -0,0 +1,138 @@
+/**
+ * Splits the map into square tiles and runs work on them, tile by tile.
+ * Tiles get one of four colours like a 2x2 checkerboard, so two tiles of the same colour never touch:
+ * there is always a whole tile (at least 2 cells) between them.
+ * The colours are processed one after the other. With parallelism above 1, the tiles of one colour
+ * are processed at the same time on a ForkJoinPool.
+ *
+ * Work that only reads and writes cells at most 1 step away from the tile it processes
+ * (a move of 1 cell, or an attack/heal on an adjacent cell) can then never see another thread's work,
+ * so the result does not depend on how many threads are used.
+ */
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class TileScheduler {
+    public static final int MIN_TILE_SIZE = 2; // Smaller tiles would let same-colour tiles reach the same cell
+
+    /**
+     * Work done for one tile. The tile covers the cells fromX <= x < toX and fromY <= y < toY.
+    */
+    public interface TileWork {
+        void process(int tile, int fromX, int fromY, int toX, int toY);
+    }
+
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    private final int tilesAcross; // Number of tile columns
+    private final int tileCount;
+    private final int[][] tilesByColour; // Tile indices of each colour, in row-major order
+    private final ForkJoinPool pool; // null when the tiles run on the calling thread
+
+    public TileScheduler(int width, int height, int tileSize, int parallelism) {
+        if (tileSize < MIN_TILE_SIZE) {
+            throw new IllegalArgumentException("Tile size must be at least " + MIN_TILE_SIZE);
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        this.tilesAcross = (width + tileSize - 1) / tileSize;
+        int tilesDown = (height + tileSize - 1) / tileSize;
+        this.tileCount = tilesAcross * tilesDown;
+
+        // Counts the tiles of each colour, then fills the index arrays in row-major order.
+        int[] counts = new int[4];
+        for (int tile = 0; tile < tileCount; tile++) {
+            counts[colourOf(tile)]++;
+        }
+        tilesByColour = new int[4][];
+        for (int colour = 0; colour < 4; colour++) {
+            tilesByColour[colour] = new int[counts[colour]];
+            counts[colour] = 0;
+        }
+        for (int tile = 0; tile < tileCount; tile++) {
+            int colour = colourOf(tile);
+            tilesByColour[colour][counts[colour]++] = tile;
+        }
+        this.pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+    }
+
+    /**
+     * Runs the work on every tile: colour after colour, and the tiles of a colour concurrently
+     * when a pool is used. Returns when all tiles are done.
+    */
+    public void forEachTile(TileWork work) {
+        for (int[] tiles : tilesByColour) {
+            if (pool == null || tiles.length < 2) {
+                for (int tile : tiles) {
+                    runTile(work, tile);
+                }
+            } else {
+                pool.invoke(new TileTask(work, tiles, 0, tiles.length));
+            }
+        }
+    }
+
+    private void runTile(TileWork work, int tile) {
+        int fromX = (tile % tilesAcross) * tileSize;
+        int fromY = (tile / tilesAcross) * tileSize;
+        work.process(tile, fromX, fromY, Math.min(fromX + tileSize, width), Math.min(fromY + tileSize, height));
+    }
+
+    private int colourOf(int tile) {
+        int tileX = tile % tilesAcross;
+        int tileY = tile / tilesAcross;
+        return (tileX & 1) + 2 * (tileY & 1);
+    }
+
+    // Getters
+    public int getTileCount() {
+        return tileCount;
+    }
+
+    public int getParallelism() {
+        return pool == null ? 1 : pool.getParallelism();
+    }
+
+    /**
+     * Stops the worker threads of the pool (if any).
+    */
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Splits a range of same-colour tiles in halves until a single tile is left.
+    */
+    private class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final TileWork work;
+        private final int[] tiles;
+        private final int from;
+        private final int to;
+
+        TileTask(TileWork work, int[] tiles, int from, int to) {
+            this.work = work;
+            this.tiles = tiles;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                runTile(work, tiles[from]);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new TileTask(work, tiles, from, middle), new TileTask(work, tiles, middle, to));
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Lock-free triple buffer between one writer thread and one reader thread.
+ * The writer fills the back buffer and publishes it; the reader takes the newest published buffer.
+ * Neither side ever waits for the other: the writer always has a buffer of its own to fill,
+ * and the buffer the reader holds is not touched until the reader asks for the next one.
+ * Publishing and taking are a single atomic swap, which also makes everything the writer
+ * wrote into a buffer visible to the reader that takes it.
+ */
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TripleBuffer<T> {
+    private static final int UNREAD = 4; // Set in middle when it holds a published buffer the reader has not taken yet
+    private static final int INDEX = 3; // The bits of middle with the index of the buffer
+
+    private final Object[] buffers;
+    private final AtomicInteger middle; // The last published buffer, shared by both sides
+    private int back; // The buffer the writer fills, owned by the writer
+    private int front; // The buffer the reader holds, owned by the reader
+
+    public TripleBuffer(T first, T second, T third) {
+        this.buffers = new Object[] {first, second, third};
+        this.front = 0;
+        this.middle = new AtomicInteger(1);
+        this.back = 2;
+    }
+
+    /**
+     * The buffer the writer fills next. Only the writer thread may call this.
+    */
+    @SuppressWarnings("unchecked")
+    public T getWriteBuffer() {
+        return (T) buffers[back];
+    }
+
+    /**
+     * Publishes the write buffer and gives the writer another one. Only the writer thread may call this.
+    */
+    public void publish() {
+        back = middle.getAndSet(back | UNREAD) & INDEX;
+    }
+
+    /**
+     * Checks if a buffer was published since the reader last took one.
+    */
+    public boolean isUnread() {
+        return (middle.get() & UNREAD) != 0;
+    }
+
+    /**
+     * The newest published buffer. It stays the reader's until its next call. Only the reader thread may call this.
+    */
+    @SuppressWarnings("unchecked")
+    public T getReadBuffer() {
+        if (isUnread()) {
+            front = middle.getAndSet(front) & INDEX; // Only the writer sets UNREAD, so it is still set here
+        }
+        return (T) buffers[front];
+    }
+}
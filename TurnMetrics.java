@@ -0,0 +1,247 @@
+/**
+ * Built-in instrumentation of the turn pipeline: a LatencyHistogram for each phase of a turn
+ * (movement, attacks and heals, removal of the defeated, the whole turn) and for the frames the front ends draw,
+ * counters of what happened (attacks, heals, deaths, blocked moves, placement failures)
+ * and the bytes allocated by the turns.
+ *
+ * A Simulation records into it when set with Simulation.setMetrics. Each turn costs a few System.nanoTime()
+ * calls and atomic additions, and the turn loop counts its events locally and adds them once per tile,
+ * so the metrics can stay on in normal games. One TurnMetrics can be shared by several simulations
+ * (the games of a batch) and written from several threads.
+ * The values can be read through JMX (register) and printed as text (format, startDump).
+ */
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+public class TurnMetrics implements TurnMetricsMBean {
+    // Phases
+    public static final int TURN = 0; // A whole turn
+    public static final int MOVE = 1; // Phase 1: the fighters move
+    public static final int INTERACT = 2; // Phase 2: the fighters attack or heal their neighbours
+    public static final int REMOVE = 3; // Phase 3: the defeated fighters are removed
+    public static final int RENDER = 4; // A frame drawn by a front end
+    private static final String[] PHASE_NAMES = {"turn", "move", "interact", "remove", "render"};
+
+    // Counters
+    public static final int TURNS = 0;
+    public static final int ATTACKS = 1;
+    public static final int HEALS = 2;
+    public static final int DEATHS = 3;
+    public static final int BLOCKED_MOVES = 4; // Fighter moves onto a cell that was not free
+    public static final int PLAYER_BLOCKED_MOVES = 5;
+    public static final int PLACEMENT_FAILURES = 6; // Fighters that found no free cell when the map was filled
+    public static final int ALLOCATED_BYTES = 7; // Bytes allocated by the threads that called step()
+    private static final int COUNTER_COUNT = 8;
+
+    private static final String DOMAIN = "MonstersVSKnights";
+    private static final java.lang.management.ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final LatencyHistogram[] phases = new LatencyHistogram[PHASE_NAMES.length];
+    private final AtomicLongArray counters = new AtomicLongArray(COUNTER_COUNT);
+    private final long created = System.nanoTime();
+    private Thread dumper;
+
+    public TurnMetrics() {
+        for (int phase = 0; phase < phases.length; phase++) {
+            phases[phase] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Records the durations of the phases of one turn and the bytes the turn allocated (negative if unknown).
+    */
+    public void recordTurn(long moveNanos, long interactNanos, long removeNanos, long allocatedBytes) {
+        phases[MOVE].record(moveNanos);
+        phases[INTERACT].record(interactNanos);
+        phases[REMOVE].record(removeNanos);
+        phases[TURN].record(moveNanos + interactNanos + removeNanos);
+        counters.incrementAndGet(TURNS);
+        if (allocatedBytes > 0) {
+            counters.addAndGet(ALLOCATED_BYTES, allocatedBytes);
+        }
+    }
+
+    /**
+     * Records the time a front end took to draw a frame.
+    */
+    public void recordRender(long nanos) {
+        phases[RENDER].record(nanos);
+    }
+
+    /**
+     * Adds n to a counter (ATTACKS, HEALS, ...).
+    */
+    public void add(int counter, long n) {
+        if (n != 0) {
+            counters.addAndGet(counter, n);
+        }
+    }
+
+    public long get(int counter) {
+        return counters.get(counter);
+    }
+
+    public LatencyHistogram getPhase(int phase) {
+        return phases[phase];
+    }
+
+    /**
+     * Bytes allocated so far by the calling thread, or -1 if the JVM cannot tell.
+     * Only counts the calling thread: with parallel tiles, the worker threads' allocations are not included.
+    */
+    public static long threadAllocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) THREADS;
+            if (hotspot.isThreadAllocatedMemoryEnabled()) {
+                return hotspot.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Registers these metrics and their phase histograms with the platform MBean server, as
+     * MonstersVSKnights:type=TurnMetrics,name=<name> and MonstersVSKnights:type=PhaseLatency,metrics=<name>,name=<phase>.
+     * Metrics already registered under the same name are replaced. Returns false if JMX refused them.
+    */
+    public boolean register(String name) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            registerMBean(server, this, new ObjectName(DOMAIN + ":type=TurnMetrics,name=" + name));
+            for (int phase = 0; phase < phases.length; phase++) {
+                registerMBean(server, phases[phase],
+                        new ObjectName(DOMAIN + ":type=PhaseLatency,metrics=" + name + ",name=" + PHASE_NAMES[phase]));
+            }
+            return true;
+        } catch (JMException e) {
+            System.err.println("Metrics not registered in JMX: " + e);
+            return false;
+        }
+    }
+
+    private static void registerMBean(MBeanServer server, Object bean, ObjectName name) throws JMException {
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(bean, name);
+    }
+
+    /**
+     * Prints format() to out every periodSeconds seconds, from a daemon thread, until stopDump().
+    */
+    public synchronized void startDump(PrintStream out, long periodSeconds) {
+        stopDump();
+        long periodNanos = TimeUnit.SECONDS.toNanos(Math.max(periodSeconds, 1));
+        dumper = new Thread(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    TimeUnit.NANOSECONDS.sleep(periodNanos);
+                    out.print(format());
+                    out.flush();
+                }
+            } catch (InterruptedException e) {
+                // Stopped
+            }
+        }, "metrics-dump");
+        dumper.setDaemon(true);
+        dumper.start();
+    }
+
+    public synchronized void stopDump() {
+        if (dumper != null) {
+            dumper.interrupt();
+            dumper = null;
+        }
+    }
+
+    /**
+     * The metrics as text: a line of latencies (microseconds) per phase that was recorded, then the counters.
+    */
+    public String format() {
+        StringBuilder text = new StringBuilder(1024);
+        double seconds = (System.nanoTime() - created) / 1e9;
+        long turns = counters.get(TURNS);
+        text.append(String.format("--- Metrics after %.1f s: %d turns (%.1f turns/s) ---%n", seconds, turns,
+                seconds > 0 ? turns / seconds : 0.0));
+        text.append(String.format("%-10s %10s %10s %10s %10s %10s %10s %10s%n", "phase (us)", "count", "mean", "p50",
+                "p90", "p99", "p99.9", "max"));
+        for (int phase = 0; phase < phases.length; phase++) {
+            LatencyHistogram histogram = phases[phase];
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            text.append(String.format("%-10s %10d %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f%n", PHASE_NAMES[phase],
+                    histogram.getCount(), histogram.getMeanMicros(), histogram.getP50Micros(), histogram.getP90Micros(),
+                    histogram.getP99Micros(), histogram.getP999Micros(), histogram.getMaxMicros()));
+        }
+        text.append(String.format("Attacks: %d, heals: %d, deaths: %d, blocked moves: %d (player: %d), placement failures: %d%n",
+                counters.get(ATTACKS), counters.get(HEALS), counters.get(DEATHS), counters.get(BLOCKED_MOVES),
+                counters.get(PLAYER_BLOCKED_MOVES), counters.get(PLACEMENT_FAILURES)));
+        text.append(String.format("Allocated: %.1f bytes per turn%n", getAllocatedBytesPerTurn()));
+        return text.toString();
+    }
+
+    // Attributes shown through JMX
+    @Override
+    public long getTurns() {
+        return counters.get(TURNS);
+    }
+
+    @Override
+    public long getAttacks() {
+        return counters.get(ATTACKS);
+    }
+
+    @Override
+    public long getHeals() {
+        return counters.get(HEALS);
+    }
+
+    @Override
+    public long getDeaths() {
+        return counters.get(DEATHS);
+    }
+
+    @Override
+    public long getBlockedMoves() {
+        return counters.get(BLOCKED_MOVES);
+    }
+
+    @Override
+    public long getPlayerBlockedMoves() {
+        return counters.get(PLAYER_BLOCKED_MOVES);
+    }
+
+    @Override
+    public long getPlacementFailures() {
+        return counters.get(PLACEMENT_FAILURES);
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return counters.get(ALLOCATED_BYTES);
+    }
+
+    @Override
+    public double getAllocatedBytesPerTurn() {
+        long turns = counters.get(TURNS);
+        return turns > 0 ? (double) counters.get(ALLOCATED_BYTES) / turns : 0.0;
+    }
+
+    @Override
+    public double getTurnsPerSecond() {
+        double seconds = (System.nanoTime() - created) / 1e9;
+        return seconds > 0 ? counters.get(TURNS) / seconds : 0.0;
+    }
+
+    @Override
+    public String getReport() {
+        return format();
+    }
+}
@@ -0,0 +1,28 @@
+/**
+ * The attributes of a TurnMetrics shown through JMX (for example in JConsole).
+ * The latencies of each phase are separate MBeans (LatencyHistogramMBean).
+*/
+
+public interface TurnMetricsMBean {
+    long getTurns();
+
+    long getAttacks();
+
+    long getHeals();
+
+    long getDeaths();
+
+    long getBlockedMoves();
+
+    long getPlayerBlockedMoves();
+
+    long getPlacementFailures();
+
+    long getAllocatedBytes();
+
+    double getAllocatedBytesPerTurn();
+
+    double getTurnsPerSecond();
+
+    String getReport(); // The same text as a periodic dump
+}
@@ -0,0 +1,59 @@
+/**
+ * Default-package side of the benchmarks: it builds the game objects that benchmarks.Workloads describes.
+ * It lives in the same package as the game, so it can also reach package-private classes such as BoardPanel.
+ */
+
+import benchmarks.Workloads;
+import java.awt.Graphics2D;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+
+public class BenchmarkWorkloads implements Workloads {
+
+    @Override
+    public Runnable turn(int width, int height, long seed) {
+        return new Runnable() {
+            private long nextSeed = seed;
+            private Simulation simulation = new Simulation(width, height, nextSeed);
+
+            @Override
+            public void run() {
+                if (simulation.isDone()) { // Small maps end quickly; keep measuring turns of a running game.
+                    simulation = new Simulation(width, height, ++nextSeed);
+                }
+                simulation.step();
+            }
+        };
+    }
+
+    @Override
+    public IntSupplier population(int width, int height, long seed) {
+        Map map = new Map(width, height, seed);
+        GameRandom rand = new GameRandom(seed);
+        return () -> {
+            // Same placement as the Simulation: the player first, then balanced Knights and Monsters.
+            map.placeEntityOnMap(new Player(0, 0));
+            int maxFighters = (width * height) / 15;
+            FighterStore batch = new FighterStore(maxFighters);
+            for (int i = 0; i < maxFighters; i++) {
+                byte team = i % 2 == 0 ? FighterStore.KNIGHT : FighterStore.MONSTER;
+                batch.add(team, 0, 0, 3, rand.nextInt(3) + 1, rand.nextInt(2) + 1, rand.nextInt(3));
+            }
+            return map.placeFighters(batch);
+        };
+    }
+
+    @Override
+    public Runnable display(int width, int height, long seed) {
+        Simulation simulation = new Simulation(width, height, seed);
+        return () -> simulation.getMap().display();
+    }
+
+    @Override
+    public Consumer<Graphics2D> paintBoard(int width, int height, long seed) {
+        Simulation simulation = new Simulation(width, height, seed);
+        BoardPanel boardPanel = new BoardPanel(simulation.getMap());
+        boardPanel.setSnapshot(BoardSnapshot.capture(simulation));
+        return boardPanel::paintComponent;
+    }
+}
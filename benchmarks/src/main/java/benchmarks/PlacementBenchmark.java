@@ -0,0 +1,54 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time of the initial population of a map: placing the player and (width * height) / 15 fighters
+ * with Map.placeEntityOnMap. Every invocation gets a freshly generated, empty map, which is not measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PlacementBenchmark {
+
+    @Param({"20x15", "100x100", "512x512", "1024x1024", "4096x4096"})
+    public String mapSize;
+
+    @Param({"42"})
+    public long seed;
+
+    private Workloads workloads;
+    private IntSupplier population;
+
+    @Setup(Level.Trial)
+    public void loadWorkloads() {
+        workloads = Workloads.load();
+    }
+
+    @Setup(Level.Invocation)
+    public void newMap() {
+        int[] size = Workloads.parseSize(mapSize);
+        population = workloads.population(size[0], size[1], seed);
+    }
+
+    @Benchmark
+    public int placeEntities() {
+        return population.getAsInt();
+    }
+}
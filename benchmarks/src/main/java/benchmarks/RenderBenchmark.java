@@ -0,0 +1,83 @@
+package benchmarks;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time of drawing one frame: the terminal frame (Map.display, printed into a discarding stream)
+ * and the Swing frame (BoardPanel.paintComponent into an offscreen BufferedImage).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RenderBenchmark {
+    // The offscreen image is capped at a full HD frame; like Swing, the board is clipped to it.
+    private static final int MAX_IMAGE_WIDTH = 1920;
+    private static final int MAX_IMAGE_HEIGHT = 1080;
+    private static final int TILE_SIZE = 40; // Same as GameGUI.TILE_SIZE
+
+    @Param({"20x15", "100x100", "512x512", "1024x1024", "4096x4096"})
+    public String mapSize;
+
+    @Param({"42"})
+    public long seed;
+
+    private Runnable terminalFrame;
+    private Consumer<Graphics2D> paintBoard;
+    private BufferedImage image;
+    private Graphics2D graphics;
+    private PrintStream originalOut;
+
+    @Setup
+    public void setUp() {
+        int[] size = Workloads.parseSize(mapSize);
+        Workloads workloads = Workloads.load();
+        terminalFrame = workloads.display(size[0], size[1], seed);
+        paintBoard = workloads.paintBoard(size[0], size[1], seed);
+
+        image = new BufferedImage(Math.min(size[0] * TILE_SIZE, MAX_IMAGE_WIDTH),
+                Math.min(size[1] * TILE_SIZE, MAX_IMAGE_HEIGHT), BufferedImage.TYPE_INT_RGB);
+        graphics = image.createGraphics();
+        graphics.setClip(0, 0, image.getWidth(), image.getHeight());
+
+        // Map.display prints on System.out; the frames go to a stream that discards them.
+        originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(originalOut);
+        graphics.dispose();
+    }
+
+    @Benchmark
+    public void terminalFrame() {
+        terminalFrame.run();
+    }
+
+    @Benchmark
+    public BufferedImage paintBoard() {
+        paintBoard.accept(graphics);
+        return image;
+    }
+}
@@ -0,0 +1,45 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time of one fighters' turn (movement, interactions and removal of the defeated) on a running game.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class TurnBenchmark {
+
+    @Param({"20x15", "100x100", "512x512", "1024x1024", "4096x4096"})
+    public String mapSize;
+
+    @Param({"42"})
+    public long seed;
+
+    private Runnable turn;
+
+    @Setup
+    public void setUp() {
+        int[] size = Workloads.parseSize(mapSize);
+        turn = Workloads.load().turn(size[0], size[1], seed);
+    }
+
+    @Benchmark
+    public void fightersTurn() {
+        turn.run();
+    }
+}
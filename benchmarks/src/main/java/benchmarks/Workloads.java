@@ -0,0 +1,55 @@
+package benchmarks;
+
+import java.awt.Graphics2D;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+
+/**
+ * The game operations that the benchmarks measure.
+ * The game classes live in the default package, which cannot be imported from a named package
+ * (and JMH only accepts benchmarks in a named package), so they are reached through this interface.
+ * The implementation is the default-package class BenchmarkWorkloads.
+ */
+public interface Workloads {
+    /**
+     * Returns an action that plays one turn of a game on a width x height map.
+     * When the game ends, the next call starts a new game with the next seed.
+     */
+    Runnable turn(int width, int height, long seed);
+
+    /**
+     * Creates a new map (terrain only). The returned supplier places the player (Map.placeEntityOnMap) and
+     * the fighters (Map.placeFighter) on it and returns how many fighters were placed.
+     */
+    IntSupplier population(int width, int height, long seed);
+
+    /**
+     * Returns an action that prints the map with its entities (Map.display).
+     * Printing goes to whatever System.out is at the time of the call.
+     */
+    Runnable display(int width, int height, long seed);
+
+    /**
+     * Returns an action that paints the Swing board of a game (BoardPanel.paintComponent) on the given graphics.
+     */
+    Consumer<Graphics2D> paintBoard(int width, int height, long seed);
+
+    /**
+     * Loads the default-package implementation.
+     */
+    static Workloads load() {
+        try {
+            return (Workloads) Class.forName("BenchmarkWorkloads").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("BenchmarkWorkloads is missing from the classpath", e);
+        }
+    }
+
+    /**
+     * Parses a map size written as "WIDTHxHEIGHT" (for example "20x15").
+     */
+    static int[] parseSize(String size) {
+        String[] parts = size.split("x");
+        return new int[] {Integer.parseInt(parts[0]), Integer.parseInt(parts[1])};
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * Checks the chunked map (see ChunkCache): a chunked map plays the same game as a whole map that starts from
+ * the same terrain, fighters and player, and dropping the least recently used chunks never drops a chunk
+ * with an entity on it or the chunk that was just looked at.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class ChunkedMapTest {
+    // One tile of the whole map and one chunk of the chunked map, so that both walk the cells in the same order
+    private static final int SIZE = Simulation.TILE_SIZE;
+    private static final long SEED = 11;
+    private static final long TURN_KEY = 5;
+    private static final int TURNS = 300;
+
+    @Test
+    void sameGameAsTheWholeMap() {
+        for (int style : new int[] {TerrainGenerator.SCATTERED, TerrainGenerator.NOISE}) {
+            // The chunked map places its entities by trying random cells, which a whole map does not do,
+            // so the whole map is given the chunked map's fighters and player
+            Map chunked = new Map(SIZE, SIZE, new GameRandom(SEED), style, SIZE, 4);
+            Player player = new Player(0, 0);
+            assertTrue(chunked.placeEntityOnMap(player), "Style " + style);
+            GameRandom stats = new GameRandom(SEED);
+            FighterStore batch = new FighterStore(0);
+            for (int i = 0; i < SIZE * SIZE / 15; i++) {
+                batch.add(i % 2 == 0 ? FighterStore.KNIGHT : FighterStore.MONSTER, 0, 0, 3,
+                        stats.nextInt(3) + 1, stats.nextInt(2) + 1, stats.nextInt(3));
+            }
+            chunked.placeFighters(batch);
+            FighterStore fighters = chunked.getFighters();
+            FighterStore copy = new FighterStore(fighters.size());
+            for (int slot = 0; slot < fighters.size(); slot++) {
+                copy.add(fighters.team[slot], fighters.x[slot], fighters.y[slot], fighters.health[slot],
+                        fighters.attackPower[slot], fighters.defence[slot], fighters.medicine[slot]);
+            }
+            // The whole map made from the same generator has the same terrain (see TerrainGenerationTest)
+            TerrainGrid terrain = new Map(SIZE, SIZE, new GameRandom(SEED), style).getTerrain();
+            Map whole = new Map(terrain, copy, new Player(player.getX(), player.getY()), new GameRandom(SEED));
+
+            Simulation onChunks = new Simulation(chunked, player, SEED, TURN_KEY, new GameRandom(SEED), 0);
+            Simulation onWhole = new Simulation(whole, whole.getPlayer(), SEED, TURN_KEY, new GameRandom(SEED), 0);
+            int fighterCount = onWhole.getKnightsCount() + onWhole.getMonstersCount();
+            assertEquals(onWhole.getStateHash(), onChunks.getStateHash(), "Style " + style + ", at the start");
+            for (int turn = 1; turn <= TURNS && !onWhole.isDone(); turn++) {
+                onChunks.step();
+                onWhole.step();
+                assertEquals(onWhole.getStateHash(), onChunks.getStateHash(), "Style " + style + ", turn " + turn);
+            }
+            assertTrue(onWhole.getKnightsCount() + onWhole.getMonstersCount() < fighterCount,
+                    "Style " + style + ": the teams did not fight");
+        }
+    }
+
+    @Test
+    void droppingChunksKeepsTheOccupiedAndTheLastOne() {
+        int size = ChunkCache.CHUNK_SIZE;
+        ChunkCache chunks = new ChunkCache(size * 8, size, new TerrainGenerator(SEED, TerrainGenerator.SCATTERED), 1);
+        chunks.setOccupant(0, 0, 1); // Chunk 0 has a fighter on it
+        assertEquals(1, chunks.getResidentCount());
+
+        // Chunk 1 takes the resident chunks above 1, but chunk 0 is occupied and chunk 1 was just looked at
+        chunks.isPassable(size, 0);
+        assertEquals(2, chunks.getResidentCount());
+        assertEquals(0, chunks.getDroppedCount());
+
+        // Chunk 2 drops chunk 1, the least recently used one nobody stands on, and nothing else
+        for (int chunk = 2; chunk < 8; chunk++) {
+            chunks.isPassable(chunk * size, 0);
+            assertEquals(2, chunks.getResidentCount(), "Chunk " + chunk);
+            assertEquals(chunk - 1, chunks.getDroppedCount(), "Chunk " + chunk);
+        }
+        assertEquals(1, chunks.getOccupant(0, 0), "The occupied chunk was dropped");
+        long made = chunks.getMadeCount();
+        chunks.isPassable(7 * size + 3, 5); // The chunk looked at last is still resident
+        chunks.isPassable(5, 7); // And so is the occupied one
+        assertEquals(made, chunks.getMadeCount());
+
+        // Once its fighter leaves, the chunk can be dropped like any other
+        chunks.setOccupant(0, 0, Map.EMPTY);
+        chunks.isPassable(size, 0);
+        assertEquals(1, chunks.getResidentCount());
+        assertEquals(0, chunks.getOccupant(0, 0));
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * Checks the cruising fighters (see Simulation.setCruiseInterval): the game is the same on any number of threads
+ * and after a save and load, and a tile with an enemy in a neighbouring tile is contested, so its fighters
+ * move every turn, while a tile with no enemy around only moves every cruise interval.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CruiseTest {
+    private static final int CRUISE_INTERVAL = 4;
+    private static final int TURNS = 200;
+    private static final long SEED = 7;
+
+    /**
+     * A map of earth only, with the given fighters (team, x, y) at health 3 and the player in its bottom-right corner.
+    */
+    private static Simulation game(int width, int height, int[][] fighters) {
+        TerrainGrid terrain = new TerrainGrid(width, height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                terrain.set(x, y, Map.EARTH);
+            }
+        }
+        GameRandom stats = new GameRandom(SEED);
+        FighterStore store = new FighterStore(fighters.length);
+        for (int[] fighter : fighters) {
+            store.add((byte) fighter[0], fighter[1], fighter[2], 3, stats.nextInt(3) + 1, stats.nextInt(2) + 1, stats.nextInt(3));
+        }
+        Player player = new Player(width - 1, height - 1);
+        Map map = new Map(terrain, store, player, new GameRandom(SEED));
+        return new Simulation(map, player, SEED, SEED, new GameRandom(SEED), 0);
+    }
+
+    /**
+     * Knights on the left quarter of the map and Monsters on the right one, which the flow fields bring together:
+     * the tiles between them cruise until the teams come within a tile of each other.
+    */
+    private static Simulation separatedGame(int threads) {
+        int width = 192;
+        int height = 96;
+        int[][] fighters = new int[2 * ((width / 4 + 2) / 3) * ((height + 2) / 3)][]; // Every third cell, both ways
+        int count = 0;
+        for (int y = 0; y < height; y += 3) {
+            for (int x = 0; x < width / 4; x += 3) {
+                fighters[count++] = new int[] {FighterStore.KNIGHT, x, y};
+                fighters[count++] = new int[] {FighterStore.MONSTER, width - 1 - x, y};
+            }
+        }
+        Simulation simulation = game(width, height, fighters);
+        simulation.setFlowInterval(4);
+        simulation.setCruiseInterval(CRUISE_INTERVAL);
+        simulation.setParallelism(threads);
+        return simulation;
+    }
+
+    @Test
+    void sameGameOnAnyNumberOfThreads() {
+        Simulation sequential = separatedGame(1);
+        Simulation parallel = separatedGame(4);
+        int knights = sequential.getKnightsCount();
+        for (int turn = 1; turn <= TURNS; turn++) {
+            sequential.step();
+            parallel.step();
+            assertEquals(sequential.getStateHash(), parallel.getStateHash(), "Turn " + turn);
+        }
+        parallel.setParallelism(1); // Stops the worker threads
+        assertTrue(sequential.getKnightsCount() < knights, "The teams did not meet");
+    }
+
+    @Test
+    void sameGameAfterSaveAndLoad(@TempDir Path directory) throws Exception {
+        Simulation straight = separatedGame(1);
+        Simulation saved = separatedGame(1);
+        straight.stepN(TURNS / 2);
+        saved.stepN(TURNS / 2);
+        Path file = directory.resolve("game.kvms");
+        SaveFile.save(saved, file);
+        Simulation loaded = SaveFile.load(file);
+        assertEquals(CRUISE_INTERVAL, loaded.getCruiseInterval());
+        assertEquals(straight.getStateHash(), loaded.getStateHash(), "At the save");
+        for (int turn = TURNS / 2 + 1; turn <= TURNS; turn++) {
+            straight.step();
+            loaded.step();
+            assertEquals(straight.getStateHash(), loaded.getStateHash(), "Turn " + turn);
+        }
+    }
+
+    @Test
+    void enemyInANeighbouringTileContestsTheTile() {
+        int tile = Simulation.TILE_SIZE;
+        // A row of 5 tiles: a Knight in tile 0 and a Monster in tile 1, 12 cells apart (not adjacent),
+        // and a lone Knight in tile 4, whose only neighbouring tile (3) is empty
+        Simulation simulation = game(5 * tile, tile, new int[][] {
+            {FighterStore.KNIGHT, tile - 4, tile / 2},
+            {FighterStore.MONSTER, tile + 8, tile / 2},
+            {FighterStore.KNIGHT, 4 * tile + tile / 2, tile / 2},
+        });
+        simulation.setCruiseInterval(CRUISE_INTERVAL);
+        simulation.step(); // Turn 0 is a multiple of the interval, so every fighter moves
+        FighterStore fighters = simulation.getFighters();
+        for (int turn = 1; turn < CRUISE_INTERVAL; turn++) {
+            int[] before = positions(simulation);
+            simulation.step();
+            int[] after = positions(simulation);
+            assertNotEquals(before[0], after[0], "Turn " + turn + ": the Knight next to the Monster's tile cruised");
+            assertNotEquals(before[1], after[1], "Turn " + turn + ": the Monster next to the Knight's tile cruised");
+            assertEquals(before[2], after[2], "Turn " + turn + ": the lone Knight moved");
+        }
+        int lone = positions(simulation)[2];
+        simulation.step(); // Turn CRUISE_INTERVAL: the lone Knight moves as well
+        assertNotEquals(lone, positions(simulation)[2], "The lone Knight did not move on its cruise turn");
+        assertEquals(3, fighters.size());
+    }
+
+    /**
+     * The cells of the first Knight, the Monster and the lone Knight, told apart by their team and column.
+    */
+    private static int[] positions(Simulation simulation) {
+        FighterStore fighters = simulation.getFighters();
+        int width = simulation.getMap().getWidth();
+        int[] cells = new int[3];
+        for (int slot = 0; slot < fighters.size(); slot++) {
+            int cell = fighters.y[slot] * width + fighters.x[slot];
+            if (fighters.team[slot] == FighterStore.MONSTER) {
+                cells[1] = cell;
+            } else {
+                cells[fighters.x[slot] < 2 * Simulation.TILE_SIZE ? 0 : 2] = cell;
+            }
+        }
+        return cells;
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * Checks the event-driven turns (see Simulation.setActionIntervals and ActivationWheel): the game is the same
+ * on any number of threads and after a save and load, the defeated fighters leave the wheel, and every
+ * fighter acts exactly once per interval of its team.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class EventDrivenTurnsTest {
+    private static final int KNIGHT_INTERVAL = 2;
+    private static final int MONSTER_INTERVAL = 5;
+    private static final int TICKS = 200;
+
+    private static Simulation eventDrivenGame(int threads) {
+        Simulation simulation = new Simulation(160, 96, 7);
+        simulation.setFlowInterval(4); // The teams meet at once, so fighters are defeated in most ticks
+        simulation.setActionIntervals(KNIGHT_INTERVAL, MONSTER_INTERVAL);
+        simulation.setParallelism(threads);
+        return simulation;
+    }
+
+    private static int intervalOf(FighterStore fighters, int slot) {
+        return fighters.getTeam(slot) == FighterStore.KNIGHT ? KNIGHT_INTERVAL : MONSTER_INTERVAL;
+    }
+
+    @Test
+    void sameGameOnAnyNumberOfThreads() {
+        Simulation sequential = eventDrivenGame(1);
+        Simulation parallel = eventDrivenGame(4);
+        for (int tick = 1; tick <= TICKS; tick++) {
+            sequential.step();
+            parallel.step();
+            assertEquals(sequential.getStateHash(), parallel.getStateHash(), "Tick " + tick);
+        }
+        parallel.setParallelism(1); // Stops the worker threads
+    }
+
+    @Test
+    void sameGameAfterSaveAndLoad(@TempDir Path directory) throws Exception {
+        Simulation straight = eventDrivenGame(1);
+        Simulation saved = eventDrivenGame(1);
+        straight.stepN(TICKS / 2);
+        saved.stepN(TICKS / 2);
+        Path file = directory.resolve("game.kvms");
+        SaveFile.save(saved, file);
+        Simulation loaded = SaveFile.load(file);
+        assertEquals(KNIGHT_INTERVAL, loaded.getKnightInterval());
+        assertEquals(MONSTER_INTERVAL, loaded.getMonsterInterval());
+        assertEquals(straight.getStateHash(), loaded.getStateHash(), "At the save");
+        for (int tick = TICKS / 2 + 1; tick <= TICKS; tick++) {
+            straight.step();
+            loaded.step();
+            assertEquals(straight.getStateHash(), loaded.getStateHash(), "Tick " + tick);
+        }
+    }
+
+    @Test
+    void defeatedFightersLeaveTheWheel() {
+        Simulation simulation = eventDrivenGame(1);
+        int fightersAtStart = simulation.getFighters().size();
+        for (int tick = 1; tick <= TICKS && !simulation.isDone(); tick++) {
+            simulation.step();
+            FighterStore fighters = simulation.getFighters();
+            for (int slot = 0; slot < fighters.size(); slot++) {
+                // A slot the wheel lost, or one left with the activation of a removed fighter, is out of range
+                int delay = simulation.getActivationDelay(slot);
+                assertTrue(delay >= 0 && delay < intervalOf(fighters, slot), "Tick " + tick + ", slot " + slot + ": delay " + delay);
+                assertTrue(fighters.getHealth(slot) > 0, "Tick " + tick + ": a defeated fighter is left in slot " + slot);
+            }
+        }
+        assertTrue(simulation.getFighters().size() < fightersAtStart, "No fighter was defeated");
+    }
+
+    @Test
+    void swapRemoveKeepsTheMovedActivation() {
+        ActivationWheel wheel = new ActivationWheel();
+        wheel.ensureCapacity(4);
+        for (int slot = 0; slot < 4; slot++) {
+            wheel.schedule(slot, 10 + slot); // Slot i acts at tick 10 + i
+        }
+        wheel.remove(1, 3); // The store moves the fighter of slot 3 into slot 1
+        assertEquals(3, wheel.delayOf(1, 10), "The moved fighter keeps its activation");
+        assertEquals(0, wheel.dueCount(11), "The removed fighter's activation is gone");
+        assertEquals(1, wheel.dueCount(13));
+        int[] due = new int[1];
+        assertEquals(1, wheel.take(13, due));
+        assertEquals(1, due[0], "The moved fighter is due under its new slot");
+        wheel.remove(2, 2); // The last fighter
+        assertEquals(0, wheel.dueCount(12));
+    }
+
+    @Test
+    void eachTeamActsOncePerInterval() {
+        Simulation simulation = new Simulation(160, 96, 7);
+        FighterStore fighters = simulation.getFighters();
+        for (int slot = 0; slot < fighters.size(); slot++) {
+            fighters.attackPower[slot] = 0; // Every attack does 0 damage, so nobody is defeated and the slots stay
+        }
+        simulation.setActionIntervals(KNIGHT_INTERVAL, MONSTER_INTERVAL);
+        int window = KNIGHT_INTERVAL * MONSTER_INTERVAL;
+        int[] activations = new int[2]; // Knights and Monsters that acted in the current window
+        for (int tick = 1; tick <= 4 * window; tick++) {
+            int[] delays = new int[fighters.size()];
+            for (int slot = 0; slot < fighters.size(); slot++) {
+                delays[slot] = simulation.getActivationDelay(slot);
+            }
+            simulation.step();
+            for (int slot = 0; slot < fighters.size(); slot++) {
+                // A fighter due in the tick acted and waits a whole interval again; the others came one tick closer
+                int expected = delays[slot] == 0 ? intervalOf(fighters, slot) - 1 : delays[slot] - 1;
+                assertEquals(expected, simulation.getActivationDelay(slot), "Tick " + tick + ", slot " + slot);
+                activations[fighters.getTeam(slot)] += delays[slot] == 0 ? 1 : 0;
+            }
+            if (tick % window == 0) {
+                assertEquals(simulation.getKnightsCount() * (window / KNIGHT_INTERVAL), activations[FighterStore.KNIGHT], "Tick " + tick);
+                assertEquals(simulation.getMonstersCount() * (window / MONSTER_INTERVAL), activations[FighterStore.MONSTER], "Tick " + tick);
+                activations[FighterStore.KNIGHT] = 0;
+                activations[FighterStore.MONSTER] = 0;
+            }
+        }
+    }
+}
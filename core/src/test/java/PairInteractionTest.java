@@ -0,0 +1,54 @@
+/**
+ * Checks the interactions played pair by pair and the removal of the defeated in one pass (see Simulation):
+ * with flow fields the teams meet at once, so most pairs fight, many across tile borders.
+ * The game must be the same on any number of threads, and after every turn the map, the FighterStore
+ * and the team counts must agree, with no defeated fighter left.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class PairInteractionTest {
+    private static final int TURNS = 150;
+
+    private static Simulation fightingGame(int threads) {
+        Simulation simulation = new Simulation(160, 96, 7);
+        simulation.setFlowInterval(4);
+        simulation.setParallelism(threads);
+        return simulation;
+    }
+
+    @Test
+    void sameFightsOnAnyNumberOfThreads() {
+        Simulation sequential = fightingGame(1);
+        Simulation parallel = fightingGame(3);
+        int knights = sequential.getKnightsCount();
+        for (int turn = 1; turn <= TURNS; turn++) {
+            sequential.step();
+            parallel.step();
+            assertEquals(sequential.getStateHash(), parallel.getStateHash(), "Turn " + turn);
+        }
+        parallel.setParallelism(1); // Stops the worker threads
+        assertTrue(sequential.getKnightsCount() < knights, "The teams did not fight");
+    }
+
+    @Test
+    void defeatedFightersAreRemoved() {
+        Simulation simulation = fightingGame(1);
+        for (int turn = 1; turn <= TURNS && !simulation.isDone(); turn++) {
+            simulation.step();
+            FighterStore fighters = simulation.getFighters();
+            Map map = simulation.getMap();
+            int knights = 0;
+            for (int slot = 0; slot < fighters.size(); slot++) {
+                assertTrue(fighters.getHealth(slot) > 0, "Turn " + turn + ": a defeated fighter is left in slot " + slot);
+                assertEquals(slot, map.getFighterAt(fighters.getX(slot), fighters.getY(slot)), "Turn " + turn + ": slot " + slot);
+                knights += fighters.getTeam(slot) == FighterStore.KNIGHT ? 1 : 0;
+            }
+            assertEquals(simulation.getKnightsCount(), knights, "Turn " + turn);
+            assertEquals(simulation.getMonstersCount(), fighters.size() - knights, "Turn " + turn);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/**
+ * Checks that the turns played tile by tile give the same game on any number of threads (see TileScheduler):
+ * the same seed is played on 1 thread and on several, and the state hashes must match after every turn.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class ParallelTurnsTest {
+    private static final int TURNS = 200;
+
+    /**
+     * Plays a game of the given size and seed for TURNS turns on the given number of threads
+     * and returns the state hash after every turn.
+    */
+    static long[] hashes(int width, int height, long seed, int threads) {
+        Simulation simulation = new Simulation(width, height, seed);
+        simulation.setParallelism(threads);
+        long[] hashes = new long[TURNS];
+        for (int turn = 0; turn < TURNS; turn++) {
+            simulation.step();
+            hashes[turn] = simulation.getStateHash();
+        }
+        simulation.setParallelism(1); // Stops the worker threads
+        return hashes;
+    }
+
+    @Test
+    void sameGameOnAnyNumberOfThreads() {
+        // 300x200 is not a multiple of the tile size, so the last tiles of each row and column are partial
+        long[] sequential = hashes(300, 200, 11, 1);
+        for (int threads : new int[] {2, 4}) {
+            long[] parallel = hashes(300, 200, 11, threads);
+            for (int turn = 0; turn < TURNS; turn++) {
+                assertEquals(sequential[turn], parallel[turn], "Turn " + (turn + 1) + " on " + threads + " threads");
+            }
+        }
+    }
+}
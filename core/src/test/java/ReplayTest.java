@@ -0,0 +1,54 @@
+/**
+ * Checks the replays (see ReplayRecorder and ReplayPlayer): seeking any turn of a recorded game, before, on or
+ * after a keyframe, gives the game as it was then, with the player's moves played back, and a turn that was
+ * not recorded cannot be sought.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ReplayTest {
+    private static final int KEYFRAME_INTERVAL = 20;
+    private static final int TURNS = 70;
+
+    @Test
+    void seekReproducesTheRecordedTurns(@TempDir Path directory) throws Exception {
+        Simulation simulation = new Simulation(120, 90, 99);
+        ReplayRecorder recorder = new ReplayRecorder(directory, simulation, KEYFRAME_INTERVAL);
+        simulation.setRecorder(recorder);
+        long[] hashes = new long[TURNS + 1]; // The state hash when the game reached each turn
+        hashes[0] = simulation.getStateHash();
+        GameRandom moves = new GameRandom(3);
+        for (int turn = 1; turn <= TURNS; turn++) {
+            // The player tries a move in most turns; moves into a wall or a fighter are refused and not recorded
+            if (moves.nextInt(4) != 0) {
+                int direction = moves.nextInt(4);
+                simulation.movePlayer(direction == 0 ? 1 : direction == 1 ? -1 : 0, direction == 2 ? 1 : direction == 3 ? -1 : 0);
+            }
+            simulation.step();
+            hashes[turn] = simulation.getStateHash();
+        }
+        recorder.close();
+
+        ReplayPlayer player = new ReplayPlayer(directory);
+        assertEquals(TURNS, player.getLastTurn());
+        assertEquals(TURNS / KEYFRAME_INTERVAL + 1, player.getKeyframeCount());
+        assertTrue(player.getMoveCount() > 0, "No player move was recorded");
+        for (long turn : new long[] {0, 1, 19, 20, 21, 39, 40, 41, 59, 60, 61, TURNS}) {
+            assertEquals(hashes[(int) turn], player.getHash(turn), "Recorded hash of turn " + turn);
+            for (int threads : new int[] {1, 3}) {
+                Simulation sought = player.seek(turn, threads);
+                sought.setParallelism(1); // Stops the worker threads
+                assertEquals(turn, sought.getTurn());
+                assertEquals(hashes[(int) turn], sought.getStateHash(), "Turn " + turn + " on " + threads + " threads");
+            }
+        }
+        assertThrows(IllegalArgumentException.class, () -> player.seek(TURNS + 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> player.seek(-1, 1));
+    }
+}
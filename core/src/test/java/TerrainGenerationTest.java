@@ -0,0 +1,66 @@
+/**
+ * Checks that the terrain only depends on the key and the cell (see TerrainGenerator): a grid filled in
+ * parallel blocks of words, whose row streams are advanced to wherever a block starts, must match the same
+ * grid filled on one thread and the 64 by 64 chunks of a chunked map, whose rows all start at their own column.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Test;
+
+class TerrainGenerationTest {
+    // 1000 is not a multiple of 64, so the blocks of words start in the middle of rows,
+    // and the 300000 cells make several blocks
+    private static final int WIDTH = 1000;
+    private static final int HEIGHT = 300;
+    private static final long KEY = 42;
+
+    private static TerrainGrid fill(int style, int threads) throws Exception {
+        TerrainGrid terrain = new TerrainGrid(WIDTH, HEIGHT);
+        TerrainGenerator generator = new TerrainGenerator(KEY, style);
+        ForkJoinPool pool = new ForkJoinPool(threads); // The parallel blocks run on the pool they are started from
+        try {
+            pool.submit(() -> generator.fill(terrain)).get();
+        } finally {
+            pool.shutdown();
+        }
+        return terrain;
+    }
+
+    @Test
+    void sameTerrainOnAnyNumberOfThreads() throws Exception {
+        for (int style : new int[] {TerrainGenerator.SCATTERED, TerrainGenerator.NOISE}) {
+            TerrainGrid sequential = fill(style, 1);
+            TerrainGrid parallel = fill(style, 4);
+            assertArrayEquals(sequential.types, parallel.types, "Style " + style);
+            assertArrayEquals(sequential.passable, parallel.passable, "Style " + style);
+        }
+    }
+
+    @Test
+    void chunksMatchTheWholeGrid() throws Exception {
+        for (int style : new int[] {TerrainGenerator.SCATTERED, TerrainGenerator.NOISE}) {
+            TerrainGrid whole = fill(style, 4);
+            TerrainGenerator generator = new TerrainGenerator(KEY, style);
+            int size = ChunkCache.CHUNK_SIZE;
+            for (int fromY = 0; fromY < HEIGHT; fromY += size) {
+                for (int fromX = 0; fromX < WIDTH; fromX += size) {
+                    long[] types = new long[size * 2];
+                    long[] passable = new long[size];
+                    generator.fillChunk(types, passable, fromX, fromY, Math.min(fromX + size, WIDTH), Math.min(fromY + size, HEIGHT));
+                    for (int y = fromY; y < Math.min(fromY + size, HEIGHT); y++) {
+                        for (int x = fromX; x < Math.min(fromX + size, WIDTH); x++) {
+                            int bit = x - fromX;
+                            int type = (int) (types[((y - fromY) << 1) + (bit >>> 5)] >>> ((bit & 31) << 1) & 3);
+                            assertEquals(whole.get(x, y), type, "Style " + style + ", cell (" + x + "," + y + ")");
+                            assertEquals(whole.isPassable(x, y), (passable[y - fromY] >>> bit & 1) != 0,
+                                    "Style " + style + ", cell (" + x + "," + y + ")");
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * Checks that the vector back end of the attacks gives the same damages as CombatKernel.SCALAR,
+ * pair by pair and over whole games, so the game does not depend on the back end.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class VectorCombatKernelTest {
+    private static final CombatKernel VECTOR = new VectorCombatKernel();
+
+    @Test
+    void sameDamagesAsScalar() {
+        // Stats from 0 to 4, so that equal powers, zero damages and defences above the power all come up;
+        // the sizes cover empty batches, partial vectors and batches that grow
+        GameRandom rand = new GameRandom(3);
+        FighterStore fighters = new FighterStore(64);
+        for (int i = 0; i < 64; i++) {
+            fighters.add(FighterStore.KNIGHT, 0, 0, 3, rand.nextInt(5), rand.nextInt(5), 0);
+        }
+        for (int size = 0; size <= 80; size++) {
+            CombatBatch scalar = new CombatBatch(16);
+            CombatBatch vector = new CombatBatch(16);
+            for (int pair = 0; pair < size; pair++) {
+                int a = rand.nextInt(64);
+                int b = rand.nextInt(64);
+                scalar.add(fighters, a, b, 0);
+                vector.add(fighters, a, b, 0);
+            }
+            CombatKernel.SCALAR.resolve(scalar);
+            VECTOR.resolve(vector);
+            for (int pair = 0; pair < size; pair++) {
+                assertEquals(scalar.firstDamage[pair], vector.firstDamage[pair], "Batch of " + size + ", pair " + pair);
+                assertEquals(scalar.secondDamage[pair], vector.secondDamage[pair], "Batch of " + size + ", pair " + pair);
+            }
+        }
+    }
+
+    @Test
+    void sameGameAsScalar() {
+        for (int threads : new int[] {1, 2}) {
+            Simulation scalar = new Simulation(160, 96, 7);
+            Simulation vector = new Simulation(160, 96, 7);
+            vector.setCombatKernel(VECTOR);
+            for (Simulation simulation : new Simulation[] {scalar, vector}) {
+                simulation.setFlowInterval(4); // The teams meet at once, so most turns have fights
+                simulation.setParallelism(threads);
+            }
+            for (int turn = 1; turn <= 150; turn++) {
+                scalar.step();
+                vector.step();
+                assertEquals(scalar.getStateHash(), vector.getStateHash(), "Turn " + turn + " on " + threads + " thread(s)");
+            }
+            scalar.setParallelism(1); // Stops the worker threads
+            vector.setParallelism(1);
+        }
+    }
+}